@@ -1,19 +1,37 @@
 package com.back.cryptotool.crypto;
 
 import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 import javax.crypto.spec.IvParameterSpec;
-import java.security.SecureRandom;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.Arrays;
 import java.util.Base64;
 
 /**
  * Реализация AES (Advanced Encryption Standard) с поддержкой разных длин ключей
+ * и режимов работы (CBC, CTR, GCM)
  */
 public class AesCipher implements CryptoService {
 
     private static final String ALGORITHM = "AES";
-    private static final String TRANSFORMATION = "AES/CBC/PKCS5Padding";
-    private static final int IV_LENGTH = 16; // 128 бит для AES
+    private static final int BUFFER_SIZE = 8192;
+    private static final int GCM_TAG_BITS = 128;
+    private static final String KEY_WRAP_TRANSFORMATION = "AESWrap";
+
+    // Сигнатура формата: за ней следуют версия, идентификатор режима, IV и шифртекст.
+    // Данные без сигнатуры - старый формат CBC, где IV идет с первого байта.
+    // Случайный IV старого формата совпадает с сигнатурой и версией с вероятностью 2^-40.
+    private static final byte[] FORMAT_MAGIC = {(byte) 0xAE, 'A', 'E', 'S'};
+    private static final byte FORMAT_VERSION = 1;
+    private static final int HEADER_LENGTH = FORMAT_MAGIC.length + 2;
 
     // Поддерживаемые размеры ключей в битах
     public enum KeySize {
@@ -31,126 +49,343 @@ public class AesCipher implements CryptoService {
 
         public int getBits() { return bits; }
         public int getBytes() { return bytes; }
+
+        /**
+         * Возвращает размер ключа по количеству бит
+         */
+        public static KeySize fromBits(int bits) throws CryptoException {
+            for (KeySize size : values()) {
+                if (size.bits == bits) {
+                    return size;
+                }
+            }
+            throw new CryptoException("Неподдерживаемый размер ключа AES: " + bits + " бит");
+        }
+    }
+
+    // Поддерживаемые режимы работы блочного шифра
+    public enum Mode {
+        CBC(1, "AES/CBC/PKCS5Padding", 16, "Режим CBC с PKCS5Padding - совместим с прежними версиями."),
+        CTR(2, "AES/CTR/NoPadding", 16, "Режим CTR - без дополнения, блоки обрабатываются независимо."),
+        GCM(3, "AES/GCM/NoPadding", 12, "Режим GCM - аутентифицированное шифрование за один проход.");
+
+        private final int id;
+        private final String transformation;
+        private final int ivLength;
+        private final String description;
+
+        // Инициализированные шифры по ключам, отдельно для каждого потока
+        private final CipherCache ciphers;
+
+        Mode(int id, String transformation, int ivLength, String description) {
+            this.id = id;
+            this.transformation = transformation;
+            this.ivLength = ivLength;
+            this.description = description;
+            this.ciphers = new CipherCache(transformation, ALGORITHM);
+        }
+
+        public int getId() { return id; }
+        public String getTransformation() { return transformation; }
+        public int getIvLength() { return ivLength; }
+        public String getDescription() { return description; }
+
+        private AlgorithmParameterSpec parameters(byte[] iv) {
+            return this == GCM ? new GCMParameterSpec(GCM_TAG_BITS, iv) : new IvParameterSpec(iv);
+        }
+
+        /**
+         * Возвращает режим по идентификатору из шифртекста
+         */
+        public static Mode fromId(int id) throws CryptoException {
+            for (Mode mode : values()) {
+                if (mode.id == id) {
+                    return mode;
+                }
+            }
+            throw CryptoException.corruptedData();
+        }
+    }
+
+    // Конфигурация неизменяема: один экземпляр можно использовать из многих потоков
+    private final KeySize keySize;
+    private final Mode mode;
+
+    /**
+     * Создает шифр с настройками по умолчанию: AES-128 в режиме CBC
+     */
+    public AesCipher() {
+        this(KeySize.AES_128, Mode.CBC);
     }
 
-    private KeySize currentKeySize = KeySize.AES_128; // По умолчанию 128 бит
+    public AesCipher(KeySize keySize, Mode mode) {
+        this.keySize = keySize;
+        this.mode = mode;
+    }
 
     @Override
-    public String encrypt(String data, String key) throws CryptoException {
-        if (!isValidKey(key)) {
-            throw CryptoException.invalidKey("AES");
+    public void encrypt(InputStream input, OutputStream output, String key) throws CryptoException, IOException {
+        prepare(key).encrypt(input, output);
+    }
+
+    @Override
+    public void encrypt(InputStream input, OutputStream output, String key, byte[] iv)
+            throws CryptoException, IOException {
+        prepare(key).encrypt(input, output, iv);
+    }
+
+    @Override
+    public void decrypt(InputStream input, OutputStream output, String key) throws CryptoException, IOException {
+        prepare(key).decrypt(input, output);
+    }
+
+    @Override
+    public void decrypt(InputStream input, OutputStream output, String key, byte[] iv)
+            throws CryptoException, IOException {
+        prepare(key).decrypt(input, output, iv);
+    }
+
+    /**
+     * Проверяет ключ и переводит его в байты один раз
+     */
+    @Override
+    public PreparedKey prepare(String key) throws CryptoException {
+        return new Key(prepareKey(key));
+    }
+
+    private static void encrypt(InputStream input, OutputStream output, byte[] keyBytes, Mode cipherMode, byte[] iv)
+            throws CryptoException, IOException {
+        try {
+            // Берем шифр для этого ключа из кэша потока и инициализируем в режиме шифрования
+            Cipher cipher = cipherMode.ciphers.init(Cipher.ENCRYPT_MODE, keyBytes, cipherMode.parameters(iv));
+
+            process(cipher, input, output);
+
+        } catch (GeneralSecurityException e) {
+            throw new CryptoException("Ошибка AES шифрования: " + e.getMessage(), e);
         }
+    }
 
+    private static void decrypt(InputStream input, OutputStream output, byte[] keyBytes, Mode cipherMode, byte[] iv)
+            throws CryptoException, IOException {
         try {
-            // Подготавливаем ключ нужной длины
-            byte[] keyBytes = prepareKey(key);
-            SecretKeySpec secretKey = new SecretKeySpec(keyBytes, ALGORITHM);
+            // Инициализируем шифр в режиме дешифрования
+            Cipher cipher = cipherMode.ciphers.init(Cipher.DECRYPT_MODE, keyBytes, cipherMode.parameters(iv));
 
-            // Генерируем случайный вектор инициализации (IV)
-            byte[] iv = new byte[IV_LENGTH];
-            SecureRandom random = new SecureRandom();
-            random.nextBytes(iv);
-            IvParameterSpec ivSpec = new IvParameterSpec(iv);
+            process(cipher, input, output);
+
+        } catch (GeneralSecurityException e) {
+            throw new CryptoException("Ошибка AES дешифрования: " + e.getMessage(), e);
+        }
+    }
 
-            // Инициализируем шифр в режиме шифрования
-            Cipher cipher = Cipher.getInstance(TRANSFORMATION);
-            cipher.init(Cipher.ENCRYPT_MODE, secretKey, ivSpec);
+    /**
+     * Шифрует массив за один вызов doFinal: заголовок (сигнатура, версия, режим, IV) и
+     * шифртекст пишутся в один массив результата
+     */
+    private static byte[] encrypt(byte[] data, byte[] keyBytes, Mode cipherMode) throws CryptoException {
+        byte[] iv = NonceGenerator.getInstance().nextBytes(cipherMode.getIvLength());
+        int headerLength = HEADER_LENGTH + iv.length;
 
-            // Шифруем данные
-            byte[] encryptedData = cipher.doFinal(data.getBytes("UTF-8"));
+        try {
+            Cipher cipher = cipherMode.ciphers.init(Cipher.ENCRYPT_MODE, keyBytes, cipherMode.parameters(iv));
 
-            // Объединяем IV и зашифрованные данные для хранения
-            byte[] combined = new byte[iv.length + encryptedData.length];
-            System.arraycopy(iv, 0, combined, 0, iv.length);
-            System.arraycopy(encryptedData, 0, combined, iv.length, encryptedData.length);
+            byte[] result = new byte[headerLength + cipher.getOutputSize(data.length)];
+            System.arraycopy(header(cipherMode), 0, result, 0, HEADER_LENGTH);
+            System.arraycopy(iv, 0, result, HEADER_LENGTH, iv.length);
 
-            // Возвращаем в Base64 для удобства хранения
-            return Base64.getEncoder().encodeToString(combined);
+            int written = cipher.doFinal(data, 0, data.length, result, headerLength);
+            return headerLength + written == result.length ? result : Arrays.copyOf(result, headerLength + written);
 
-        } catch (Exception e) {
+        } catch (GeneralSecurityException e) {
             throw new CryptoException("Ошибка AES шифрования: " + e.getMessage(), e);
         }
     }
 
-    @Override
-    public String decrypt(String encryptedData, String key) throws CryptoException {
-        if (!isValidKey(key)) {
-            throw CryptoException.invalidKey("AES");
+    /**
+     * Дешифрует массив в формате {@link #encrypt(byte[], byte[], Mode)} (или старом формате CBC)
+     */
+    private static byte[] decrypt(byte[] data, byte[] keyBytes) throws CryptoException {
+        if (data.length == 0) {
+            throw CryptoException.corruptedData();
+        }
+
+        if (hasHeader(data)) {
+            return decrypt(data, HEADER_LENGTH, Mode.fromId(data[HEADER_LENGTH - 1]), keyBytes);
+        }
+        // Старый формат: IV режима CBC начинается с первого байта
+        return decrypt(data, 0, Mode.CBC, keyBytes);
+    }
+
+    private static byte[] decrypt(byte[] data, int ivOffset, Mode dataMode, byte[] keyBytes) throws CryptoException {
+        int dataOffset = ivOffset + dataMode.getIvLength();
+        if (data.length < dataOffset) {
+            throw CryptoException.corruptedData();
         }
 
         try {
-            // Декодируем из Base64
-            byte[] combined = Base64.getDecoder().decode(encryptedData);
+            AlgorithmParameterSpec parameters = dataMode == Mode.GCM
+                    ? new GCMParameterSpec(GCM_TAG_BITS, data, ivOffset, dataMode.getIvLength())
+                    : new IvParameterSpec(data, ivOffset, dataMode.getIvLength());
+            Cipher cipher = dataMode.ciphers.init(Cipher.DECRYPT_MODE, keyBytes, parameters);
 
-            // Извлекаем IV (первые 16 байт)
-            byte[] iv = new byte[IV_LENGTH];
-            System.arraycopy(combined, 0, iv, 0, iv.length);
-            IvParameterSpec ivSpec = new IvParameterSpec(iv);
+            return cipher.doFinal(data, dataOffset, data.length - dataOffset);
 
-            // Извлекаем зашифрованные данные (остальные байты)
-            byte[] encryptedBytes = new byte[combined.length - IV_LENGTH];
-            System.arraycopy(combined, IV_LENGTH, encryptedBytes, 0, encryptedBytes.length);
+        } catch (GeneralSecurityException e) {
+            throw new CryptoException("Ошибка AES дешифрования: " + e.getMessage(), e);
+        }
+    }
 
-            // Подготавливаем ключ
-            byte[] keyBytes = prepareKey(key);
-            SecretKeySpec secretKey = new SecretKeySpec(keyBytes, ALGORITHM);
+    private static byte[] header(Mode cipherMode) {
+        byte[] header = Arrays.copyOf(FORMAT_MAGIC, HEADER_LENGTH);
+        header[FORMAT_MAGIC.length] = FORMAT_VERSION;
+        header[FORMAT_MAGIC.length + 1] = (byte) cipherMode.getId();
+        return header;
+    }
 
-            // Инициализируем шифр в режиме дешифрования
-            Cipher cipher = Cipher.getInstance(TRANSFORMATION);
-            cipher.init(Cipher.DECRYPT_MODE, secretKey, ivSpec);
+    private static boolean hasHeader(byte[] data) {
+        return data.length >= HEADER_LENGTH
+                && Arrays.equals(data, 0, FORMAT_MAGIC.length, FORMAT_MAGIC, 0, FORMAT_MAGIC.length)
+                && data[FORMAT_MAGIC.length] == FORMAT_VERSION;
+    }
+
+    /**
+     * Пропускает поток через инициализированный шифр порциями по BUFFER_SIZE байт
+     * (используется и другими потоковыми AEAD-шифрами пакета)
+     */
+    static void process(Cipher cipher, InputStream input, OutputStream output)
+            throws IOException, GeneralSecurityException {
 
-            // Дешифруем данные
-            byte[] decryptedData = cipher.doFinal(encryptedBytes);
-            return new String(decryptedData, "UTF-8");
+        byte[] buffer = new byte[BUFFER_SIZE];
+        byte[] result = new byte[cipher.getOutputSize(BUFFER_SIZE)];
+        int read;
 
-        } catch (Exception e) {
-            throw new CryptoException("Ошибка AES дешифрования: " + e.getMessage(), e);
+        while ((read = input.read(buffer)) != -1) {
+            result = ensureCapacity(result, cipher.getOutputSize(read));
+            int written = cipher.update(buffer, 0, read, result);
+            output.write(result, 0, written);
         }
+
+        // GCM при дешифровании накапливает данные до проверки тега и отдает их здесь
+        result = ensureCapacity(result, cipher.getOutputSize(0));
+        int written = cipher.doFinal(result, 0);
+        output.write(result, 0, written);
+    }
+
+    private static byte[] ensureCapacity(byte[] buffer, int required) {
+        return buffer.length >= required ? buffer : new byte[Math.max(required, buffer.length * 2)];
     }
 
     /**
-     * Подготавливает ключ нужной длины в зависимости от выбранного размера
+     * Проверяет ключ и возвращает его байты. Длина должна совпадать с выбранным размером.
      */
     private byte[] prepareKey(String key) throws CryptoException {
-        byte[] keyBytes = key.getBytes();
-        int requiredLength = currentKeySize.getBytes();
+        byte[] keyBytes = key == null ? null : key.getBytes(StandardCharsets.UTF_8);
 
-        if (keyBytes.length == requiredLength) {
-            return keyBytes;
+        if (keyBytes == null || keyBytes.length != keySize.getBytes()) {
+            throw CryptoException.invalidKey("AES");
         }
+        return keyBytes;
+    }
+
+    /**
+     * Проверяет ключ и создает из него ключ AES для использования с {@link Cipher} напрямую
+     * (например, в других режимах при параллельной обработке файлов)
+     */
+    public SecretKeySpec createSecretKey(String key) throws CryptoException {
+        return new SecretKeySpec(prepareKey(key), ALGORITHM);
+    }
 
-        // Если ключ неправильной длины - выбрасываем исключение
-        throw new CryptoException(
-                String.format("Ключ должен быть длиной %d символов (%d бит). Получено: %d символов.",
-                        requiredLength, currentKeySize.getBits(), keyBytes.length)
-        );
+    /**
+     * Оборачивает ключ данных ключом пользователя по алгоритму AES Key Wrap (RFC 3394).
+     * Результат на 8 байт длиннее ключа данных и содержит контрольное значение.
+     *
+     * @param key ключ пользователя текущего размера
+     * @param dataKey ключ данных (кратен 8 байтам, не короче 16)
+     */
+    public byte[] wrapKey(String key, byte[] dataKey) throws CryptoException {
+        return wrapKey(createSecretKey(key), dataKey);
     }
 
     /**
-     * Устанавливает размер ключа для AES
+     * Оборачивает ключ данных готовым ключом обертки (например, полученным из пароля)
      */
-    public void setKeySize(KeySize keySize) {
-        this.currentKeySize = keySize;
+    public static byte[] wrapKey(SecretKey wrappingKey, byte[] dataKey) throws CryptoException {
+        try {
+            Cipher cipher = Cipher.getInstance(KEY_WRAP_TRANSFORMATION);
+            cipher.init(Cipher.WRAP_MODE, wrappingKey);
+            return cipher.wrap(new SecretKeySpec(dataKey, ALGORITHM));
+        } catch (GeneralSecurityException e) {
+            throw new CryptoException("Ошибка упаковки ключа: " + e.getMessage(), e);
+        }
     }
 
     /**
-     * Возвращает текущий размер ключа
+     * Разворачивает ключ данных, обернутый {@link #wrapKey}
+     *
+     * @throws CryptoException если ключ пользователя не тот, которым ключ был обернут
+     */
+    public byte[] unwrapKey(String key, byte[] wrappedKey) throws CryptoException {
+        return unwrapKey(createSecretKey(key), wrappedKey);
+    }
+
+    /**
+     * Разворачивает ключ данных готовым ключом обертки
+     *
+     * @throws CryptoException если ключ обертки не тот, которым ключ был обернут
+     */
+    public static byte[] unwrapKey(SecretKey wrappingKey, byte[] wrappedKey) throws CryptoException {
+        try {
+            Cipher cipher = Cipher.getInstance(KEY_WRAP_TRANSFORMATION);
+            cipher.init(Cipher.UNWRAP_MODE, wrappingKey);
+            return cipher.unwrap(wrappedKey, ALGORITHM, Cipher.SECRET_KEY).getEncoded();
+        } catch (InvalidKeyException e) {
+            // Контрольное значение не сошлось - ключ пользователя неверен
+            throw CryptoException.invalidKey("AES");
+        } catch (GeneralSecurityException e) {
+            throw new CryptoException("Ошибка распаковки ключа: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Возвращает шифр с тем же режимом и другим размером ключа
+     */
+    public AesCipher withKeySize(KeySize keySize) {
+        return keySize == this.keySize ? this : new AesCipher(keySize, mode);
+    }
+
+    /**
+     * Возвращает шифр с тем же размером ключа и другим режимом шифрования.
+     * При дешифровании режим берется из шифртекста.
+     */
+    public AesCipher withMode(Mode mode) {
+        return mode == this.mode ? this : new AesCipher(keySize, mode);
+    }
+
+    /**
+     * Возвращает размер ключа
      */
     public KeySize getCurrentKeySize() {
-        return currentKeySize;
+        return keySize;
+    }
+
+    /**
+     * Возвращает режим работы
+     */
+    public Mode getCurrentMode() {
+        return mode;
     }
 
     @Override
     public String getName() {
-        return String.format("AES-%d Encryption", currentKeySize.getBits());
+        return String.format("AES-%d Encryption", keySize.getBits());
     }
 
     @Override
     public String getDescription() {
         return String.format("Промышленный стандарт симметричного шифрования. " +
-                        "Использует размер блока 128 бит и ключ %d бит. " +
-                        "Режим CBC с PKCS5Padding обеспечивает высокую стойкость.",
-                currentKeySize.getBits());
+                        "Использует размер блока 128 бит и ключ %d бит. %s",
+                keySize.getBits(), mode.getDescription());
     }
 
     @Override
@@ -158,6 +393,16 @@ public class AesCipher implements CryptoService {
         return true;
     }
 
+    @Override
+    public int getNonceLength() {
+        return mode.getIvLength();
+    }
+
+    @Override
+    public int getKeyBits() {
+        return keySize.getBits();
+    }
+
     @Override
     public boolean isValidKey(String key) {
         if (key == null || key.isEmpty()) {
@@ -165,14 +410,93 @@ public class AesCipher implements CryptoService {
         }
 
         // Проверяем, что ключ имеет правильную длину
-        int keyLength = key.getBytes().length;
-        return keyLength == currentKeySize.getBytes();
+        int keyLength = key.getBytes(StandardCharsets.UTF_8).length;
+        return keyLength == keySize.getBytes();
     }
 
     @Override
     public String getKeyRequirements() {
         return String.format("Ключ длиной %d символов (%d бит)",
-                currentKeySize.getBytes(), currentKeySize.getBits());
+                keySize.getBytes(), keySize.getBits());
+    }
+
+    /**
+     * Подготовленный ключ: байты ключа уже проверены, размер и режим зафиксированы
+     */
+    private final class Key implements PreparedKey {
+        private final byte[] keyBytes;
+
+        Key(byte[] keyBytes) {
+            this.keyBytes = keyBytes;
+        }
+
+        @Override
+        public CryptoService getAlgorithm() {
+            return AesCipher.this;
+        }
+
+        @Override
+        public void encrypt(InputStream input, OutputStream output) throws CryptoException, IOException {
+            // Генерируем случайный вектор инициализации (IV)
+            byte[] iv = NonceGenerator.getInstance().nextBytes(mode.getIvLength());
+
+            // Перед зашифрованными данными записываем сигнатуру, версию, режим и IV
+            output.write(header(mode));
+            output.write(iv);
+            AesCipher.encrypt(input, output, keyBytes, mode, iv);
+        }
+
+        @Override
+        public void encrypt(InputStream input, OutputStream output, byte[] iv) throws CryptoException, IOException {
+            AesCipher.encrypt(input, output, keyBytes, mode, iv);
+        }
+
+        @Override
+        public void decrypt(InputStream input, OutputStream output) throws CryptoException, IOException {
+            byte[] header = input.readNBytes(HEADER_LENGTH);
+            if (header.length == 0) {
+                throw CryptoException.corruptedData();
+            }
+
+            Mode dataMode;
+            byte[] iv;
+
+            if (hasHeader(header)) {
+                // Режим записан в шифртексте
+                dataMode = Mode.fromId(header[HEADER_LENGTH - 1]);
+                iv = input.readNBytes(dataMode.getIvLength());
+            } else {
+                // Старый формат: IV режима CBC начинается с первого байта, прочитанные
+                // байты заголовка - начало IV
+                dataMode = Mode.CBC;
+                iv = Arrays.copyOf(header, dataMode.getIvLength());
+                int remaining = iv.length - header.length;
+                if (input.readNBytes(iv, header.length, remaining) != remaining) {
+                    throw CryptoException.corruptedData();
+                }
+            }
+
+            if (iv.length != dataMode.getIvLength()) {
+                throw CryptoException.corruptedData();
+            }
+
+            AesCipher.decrypt(input, output, keyBytes, dataMode, iv);
+        }
+
+        @Override
+        public void decrypt(InputStream input, OutputStream output, byte[] iv) throws CryptoException, IOException {
+            AesCipher.decrypt(input, output, keyBytes, mode, iv);
+        }
+
+        @Override
+        public byte[] encrypt(byte[] data) throws CryptoException {
+            return AesCipher.encrypt(data, keyBytes, mode);
+        }
+
+        @Override
+        public byte[] decrypt(byte[] data) throws CryptoException {
+            return AesCipher.decrypt(data, keyBytes);
+        }
     }
 
     /**
@@ -180,8 +504,7 @@ public class AesCipher implements CryptoService {
      */
     public String generateKey() throws CryptoException {
         try {
-            byte[] key = new byte[currentKeySize.getBytes()];
-            new SecureRandom().nextBytes(key);
+            byte[] key = NonceGenerator.getInstance().nextBytes(keySize.getBytes());
             return Base64.getEncoder().encodeToString(key);
         } catch (Exception e) {
             throw new CryptoException("Ошибка генерации ключа: " + e.getMessage(), e);
@@ -194,10 +517,10 @@ public class AesCipher implements CryptoService {
     public String generateReadableKey() throws CryptoException {
         try {
             String chars = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789";
-            SecureRandom random = new SecureRandom();
+            NonceGenerator random = NonceGenerator.getInstance();
             StringBuilder sb = new StringBuilder();
 
-            for (int i = 0; i < currentKeySize.getBytes(); i++) {
+            for (int i = 0; i < keySize.getBytes(); i++) {
                 sb.append(chars.charAt(random.nextInt(chars.length())));
             }
 
@@ -0,0 +1,295 @@
+package com.back.cryptotool.crypto;
+
+import com.sun.management.HotSpotDiagnosticMXBean;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Результат калибровки: скорость шифрования каждого варианта, из которых выбирает
+ * {@link CryptoManager#AUTO}, на этом компьютере.
+ *
+ * Варианты обозначаются строками вида "AES-256/GCM" (алгоритм, размер ключа и режим)
+ * или "CHACHA20". Скорость измеряется короткими раундами на пакете данных, пока она
+ * не перестанет расти: JIT компилирует горячие методы и подключает аппаратные
+ * инструкции не сразу. Варианты измеряются по очереди, раунд за раундом, поэтому
+ * прогреваются одновременно, а вся калибровка укладывается примерно в секунду.
+ *
+ * Результат сохраняется в файл рядом с домашним каталогом пользователя и
+ * привязан к отпечатку компьютера (архитектура, число ядер, JVM, наличие
+ * инструкций AES), поэтому калибровка выполняется один раз на компьютер.
+ * Каталог можно изменить свойством -Dcryptotool.calibration.dir.
+ */
+public final class AlgorithmCalibration {
+
+    private static final String DIRECTORY_PROPERTY = "cryptotool.calibration.dir";
+    private static final int DATA_SIZE = 256 * 1024;
+    private static final long ROUND_NANOS = 10_000_000L;
+    private static final long TOTAL_NANOS = 1_000_000_000L;
+    // Меняется при изменении набора вариантов, чтобы старые результаты измерялись заново
+    private static final String FORMAT = "1";
+    // Прогрев окончен, если несколько раундов подряд скорость выросла меньше чем на 5%
+    private static final double PLATEAU_GAIN = 1.05;
+    private static final int STABLE_ROUNDS = 3;
+
+    private final List<Result> ranking;
+    private final boolean aesAccelerated;
+    private final String fingerprint;
+    private final long timestamp;
+
+    private AlgorithmCalibration(List<Result> ranking, boolean aesAccelerated, String fingerprint, long timestamp) {
+        List<Result> sorted = new ArrayList<>(ranking);
+        sorted.sort(Comparator.comparingDouble(Result::getThroughput).reversed());
+
+        this.ranking = Collections.unmodifiableList(sorted);
+        this.aesAccelerated = aesAccelerated;
+        this.fingerprint = fingerprint;
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * Измеряет скорость шифрования каждого варианта
+     *
+     * @param candidates варианты и подготовленные для них ключи
+     */
+    static AlgorithmCalibration measure(Map<String, PreparedKey> candidates) throws CryptoException {
+        byte[] data = NonceGenerator.getInstance().nextBytes(DATA_SIZE);
+        String[] ids = candidates.keySet().toArray(new String[0]);
+        PreparedKey[] keys = candidates.values().toArray(new PreparedKey[0]);
+        double[] best = new double[ids.length];
+        int[] stableRounds = new int[ids.length];
+
+        // Общий бюджет делится между вариантами: раунд каждого по очереди, пока скорость
+        // всех не перестанет расти или не кончится время. Первый раунд выполняется всегда.
+        long deadline = System.nanoTime() + TOTAL_NANOS;
+        boolean measuring = true;
+        while (measuring) {
+            measuring = false;
+            for (int i = 0; i < ids.length; i++) {
+                if (stableRounds[i] >= STABLE_ROUNDS || (best[i] > 0 && System.nanoTime() >= deadline)) {
+                    continue;
+                }
+                double throughput = measureRound(keys[i], data);
+                stableRounds[i] = throughput > best[i] * PLATEAU_GAIN ? 0 : stableRounds[i] + 1;
+                best[i] = Math.max(best[i], throughput);
+                measuring = System.nanoTime() < deadline;
+            }
+        }
+
+        List<Result> results = new ArrayList<>(ids.length);
+        for (int i = 0; i < ids.length; i++) {
+            results.add(new Result(ids[i], best[i]));
+        }
+
+        return new AlgorithmCalibration(results, detectAesIntrinsics(), currentFingerprint(), System.currentTimeMillis());
+    }
+
+    /**
+     * Один раунд измерения: скорость шифрования в МБ/с
+     */
+    private static double measureRound(PreparedKey key, byte[] data) throws CryptoException {
+        long start = System.nanoTime();
+        long elapsed;
+        int iterations = 0;
+        do {
+            key.encrypt(data);
+            iterations++;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < ROUND_NANOS);
+
+        return (double) iterations * data.length / elapsed * 1e9 / (1024 * 1024);
+    }
+
+    /**
+     * Загружает сохраненную калибровку этого компьютера
+     *
+     * @return калибровка или null, если ее нет, она повреждена или снята на другом оборудовании
+     */
+    static AlgorithmCalibration load() {
+        Path file = storageFile();
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+
+        Properties properties = new Properties();
+        try (InputStream input = Files.newInputStream(file)) {
+            properties.load(input);
+        } catch (IOException e) {
+            return null;
+        }
+
+        String fingerprint = currentFingerprint();
+        if (!fingerprint.equals(properties.getProperty("fingerprint"))) {
+            return null;
+        }
+
+        try {
+            List<Result> results = new ArrayList<>();
+            for (String id : properties.getProperty("ranking", "").split(",")) {
+                if (!id.isEmpty()) {
+                    results.add(new Result(id, Double.parseDouble(properties.getProperty("throughput." + id))));
+                }
+            }
+            if (results.isEmpty()) {
+                return null;
+            }
+
+            return new AlgorithmCalibration(results,
+                    Boolean.parseBoolean(properties.getProperty("aesAccelerated")),
+                    fingerprint, Long.parseLong(properties.getProperty("timestamp", "0")));
+
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Сохраняет калибровку. Ошибка записи не мешает работе: калибровка
+     * просто будет выполнена заново при следующем запуске.
+     */
+    void save() {
+        Properties properties = new Properties();
+        properties.setProperty("fingerprint", fingerprint);
+        properties.setProperty("aesAccelerated", Boolean.toString(aesAccelerated));
+        properties.setProperty("timestamp", Long.toString(timestamp));
+
+        StringBuilder ids = new StringBuilder();
+        for (Result result : ranking) {
+            if (ids.length() > 0) {
+                ids.append(',');
+            }
+            ids.append(result.getId());
+            properties.setProperty("throughput." + result.getId(), String.format(Locale.ROOT, "%.1f", result.getThroughput()));
+        }
+        properties.setProperty("ranking", ids.toString());
+
+        Path file = storageFile();
+        try {
+            Files.createDirectories(file.getParent());
+            try (OutputStream output = Files.newOutputStream(file)) {
+                properties.store(output, "Crypto Tool calibration");
+            }
+        } catch (IOException e) {
+            // Калибровка останется только в памяти
+        }
+    }
+
+    /**
+     * Проверяет, использует ли JVM аппаратные инструкции AES (флаг HotSpot UseAESIntrinsics)
+     */
+    static boolean detectAesIntrinsics() {
+        try {
+            HotSpotDiagnosticMXBean hotSpot = ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class);
+            return hotSpot != null && Boolean.parseBoolean(hotSpot.getVMOption("UseAESIntrinsics").getValue());
+        } catch (RuntimeException | LinkageError e) {
+            // Не HotSpot или модуль управления недоступен
+            return false;
+        }
+    }
+
+    private static String currentFingerprint() {
+        return String.join("|",
+                "format=" + FORMAT,
+                System.getProperty("os.arch"),
+                Integer.toString(Runtime.getRuntime().availableProcessors()),
+                System.getProperty("java.vm.name") + " " + System.getProperty("java.vm.version"),
+                "aes=" + detectAesIntrinsics());
+    }
+
+    private static Path storageFile() {
+        String directory = System.getProperty(DIRECTORY_PROPERTY);
+        Path base = directory != null
+                ? Paths.get(directory)
+                : Paths.get(System.getProperty("user.home"), ".cryptotool");
+        return base.resolve("calibration-" + hostName() + ".properties");
+    }
+
+    /**
+     * Имя компьютера из окружения: разрешение имени через сеть может надолго
+     * заблокировать запуск, а для имени файла достаточно переменной окружения
+     */
+    private static String hostName() {
+        String name = System.getenv("COMPUTERNAME");
+        if (name == null || name.isEmpty()) {
+            name = System.getenv("HOSTNAME");
+        }
+        if (name == null || name.isEmpty()) {
+            return "localhost";
+        }
+        return name.replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+
+    /**
+     * Варианты от самого быстрого к самому медленному
+     */
+    public List<Result> getRanking() {
+        return ranking;
+    }
+
+    /**
+     * Использует ли JVM аппаратные инструкции AES на этом компьютере
+     */
+    public boolean isAesAccelerated() {
+        return aesAccelerated;
+    }
+
+    /**
+     * Время калибровки (мс с начала эпохи)
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder("AES-NI: ").append(aesAccelerated ? "да" : "нет");
+        for (Result result : ranking) {
+            text.append(", ").append(result);
+        }
+        return text.toString();
+    }
+
+    /**
+     * Скорость одного варианта
+     */
+    public static final class Result {
+        private final String id;
+        private final double throughput;
+
+        Result(String id, double throughput) {
+            this.id = id;
+            this.throughput = throughput;
+        }
+
+        /**
+         * Обозначение варианта: "AES-128/GCM", "AES-256/GCM" и т.п. или "CHACHA20"
+         */
+        public String getId() {
+            return id;
+        }
+
+        /**
+         * Скорость шифрования в МБ/с
+         */
+        public double getThroughput() {
+            return throughput;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s %.0f МБ/с", id, throughput);
+        }
+    }
+}
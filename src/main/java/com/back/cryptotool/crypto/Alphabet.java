@@ -0,0 +1,176 @@
+package com.back.cryptotool.crypto;
+
+import java.util.Arrays;
+
+/**
+ * Алфавит для шифров Цезаря и Виженера.
+ *
+ * Для каждого сдвига заранее строится таблица подстановки по коду символа:
+ * буква алфавита заменяется сдвинутой буквой того же регистра, остальные
+ * символы переходят сами в себя. Шифрование - одно обращение к массиву на
+ * символ, без проверки диапазонов и регистра. Символы с кодом больше
+ * максимального в алфавите не меняются.
+ *
+ * Экземпляры неизменяемы и могут использоваться из нескольких потоков.
+ */
+public final class Alphabet {
+
+    /**
+     * Латинский алфавит (26 букв). Единственный алфавит, который обрабатывается
+     * побайтно и векторно; остальные алфавиты работают с символами UTF-8.
+     */
+    public static final Alphabet LATIN = new Alphabet("Латиница",
+            "abcdefghijklmnopqrstuvwxyz",
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZ");
+
+    /**
+     * Русский алфавит (33 буквы, Ё после Е)
+     */
+    public static final Alphabet CYRILLIC = new Alphabet("Кириллица",
+            "абвгдеёжзийклмнопрстуфхцчшщъыьэюя",
+            "АБВГДЕЁЖЗИЙКЛМНОПРСТУФХЦЧШЩЪЫЬЭЮЯ");
+
+    private final String name;
+    private final String lowercase;
+    private final String uppercase;
+
+    // Позиция буквы в алфавите по коду символа, -1 для остальных символов
+    private final short[] indices;
+
+    // Таблицы подстановки для каждого сдвига
+    private final char[][] tables;
+
+    private Alphabet(String name, String lowercase, String uppercase) {
+        this.name = name;
+        this.lowercase = lowercase;
+        this.uppercase = uppercase;
+
+        int size = lowercase.length();
+        int maxChar = 0;
+        for (int i = 0; i < size; i++) {
+            maxChar = Math.max(maxChar, Math.max(lowercase.charAt(i), uppercase.charAt(i)));
+        }
+
+        indices = new short[maxChar + 1];
+        Arrays.fill(indices, (short) -1);
+        for (int i = 0; i < size; i++) {
+            indices[lowercase.charAt(i)] = (short) i;
+            indices[uppercase.charAt(i)] = (short) i;
+        }
+
+        tables = new char[size][maxChar + 1];
+        for (int shift = 0; shift < size; shift++) {
+            char[] table = tables[shift];
+            for (int i = 0; i < table.length; i++) {
+                table[i] = (char) i;
+            }
+            for (int i = 0; i < size; i++) {
+                int shifted = (i + shift) % size;
+                table[lowercase.charAt(i)] = lowercase.charAt(shifted);
+                table[uppercase.charAt(i)] = uppercase.charAt(shifted);
+            }
+        }
+    }
+
+    /**
+     * Создает алфавит без деления на регистры
+     *
+     * @param name название
+     * @param letters буквы в порядке алфавита, без повторов
+     */
+    public static Alphabet of(String name, String letters) throws CryptoException {
+        return of(name, letters, letters);
+    }
+
+    /**
+     * Создает алфавит со строчными и прописными буквами
+     *
+     * @param name название
+     * @param lowercase строчные буквы в порядке алфавита
+     * @param uppercase прописные буквы в том же порядке
+     */
+    public static Alphabet of(String name, String lowercase, String uppercase) throws CryptoException {
+        if (lowercase.length() < 2 || lowercase.length() != uppercase.length()) {
+            throw new CryptoException("Алфавит должен содержать не менее двух букв, строчных и прописных поровну");
+        }
+
+        String all = lowercase.equals(uppercase) ? lowercase : lowercase + uppercase;
+        if (all.chars().distinct().count() != all.length()) {
+            throw new CryptoException("Буквы алфавита не должны повторяться");
+        }
+        // Половинки суррогатной пары нельзя сдвигать по отдельности
+        if (all.chars().anyMatch(character -> Character.isSurrogate((char) character))) {
+            throw new CryptoException("Алфавит может содержать только символы до U+FFFF");
+        }
+
+        return new Alphabet(name, lowercase, uppercase);
+    }
+
+    /**
+     * Возвращает стандартный алфавит с такими буквами или создает новый
+     * (например, при чтении алфавита из заголовка файла)
+     */
+    public static Alphabet forLetters(String lowercase, String uppercase) throws CryptoException {
+        for (Alphabet standard : new Alphabet[]{LATIN, CYRILLIC}) {
+            if (standard.lowercase.equals(lowercase) && standard.uppercase.equals(uppercase)) {
+                return standard;
+            }
+        }
+        return of("Пользовательский", lowercase, uppercase);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Строчные буквы в порядке алфавита
+     */
+    public String getLowercase() {
+        return lowercase;
+    }
+
+    /**
+     * Прописные буквы в том же порядке (совпадают со строчными у алфавита без регистров)
+     */
+    public String getUppercase() {
+        return uppercase;
+    }
+
+    /**
+     * Количество букв в алфавите
+     */
+    public int size() {
+        return lowercase.length();
+    }
+
+    /**
+     * Возвращает позицию буквы в алфавите (без учета регистра) или -1
+     */
+    public int indexOf(char character) {
+        return character < indices.length ? indices[character] : -1;
+    }
+
+    public boolean contains(char character) {
+        return indexOf(character) >= 0;
+    }
+
+    /**
+     * Таблица подстановки для сдвига (сдвиг приводится к диапазону алфавита)
+     */
+    char[] table(int shift) {
+        return tables[Math.floorMod(shift, size())];
+    }
+
+    /**
+     * Возвращает 1 для буквы алфавита и 0 для остальных символов
+     */
+    int letter(char character) {
+        return character < indices.length ? (indices[character] >>> 31) ^ 1 : 0;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
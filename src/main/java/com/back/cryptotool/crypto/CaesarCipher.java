@@ -1,54 +1,120 @@
 package com.back.cryptotool.crypto;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+
 /**
  * Реализация шифра Цезаря - классический шифр замены с фиксированным сдвигом
  */
 public class CaesarCipher implements CryptoService {
 
-    private static final int ALPHABET_SIZE = 26;
+    private final Alphabet alphabet;
+
+    /**
+     * Создает шифр для латинского алфавита
+     */
+    public CaesarCipher() {
+        this(Alphabet.LATIN);
+    }
+
+    public CaesarCipher(Alphabet alphabet) {
+        this.alphabet = alphabet;
+    }
 
     @Override
-    public String encrypt(String data, String key) throws CryptoException {
+    public void encrypt(InputStream input, OutputStream output, String key) throws CryptoException, IOException {
+        prepare(key).encrypt(input, output);
+    }
+
+    @Override
+    public void decrypt(InputStream input, OutputStream output, String key) throws CryptoException, IOException {
+        prepare(key).decrypt(input, output);
+    }
+
+    /**
+     * Проверяет ключ и разбирает сдвиг один раз
+     */
+    @Override
+    public PreparedTextKey prepare(String key) throws CryptoException {
         if (!isValidKey(key)) {
             throw CryptoException.invalidKey("Caesar");
         }
 
-        int shift = Integer.parseInt(key);
-        StringBuilder result = new StringBuilder();
-
-        for (char character : data.toCharArray()) {
-            if (Character.isLetter(character)) {
-                char base = Character.isLowerCase(character) ? 'a' : 'A';
-                int originalPosition = character - base;
-                int newPosition = (originalPosition + shift) % ALPHABET_SIZE;
-                character = (char) (base + newPosition);
-            }
-            result.append(character);
-        }
+        int shift = Integer.parseInt(key.trim());
+        return new Key(shift);
+    }
 
-        return result.toString();
+    /**
+     * Возвращает шифр для другого алфавита
+     */
+    public CaesarCipher withAlphabet(Alphabet alphabet) {
+        return alphabet == this.alphabet ? this : new CaesarCipher(alphabet);
     }
 
-    @Override
-    public String decrypt(String encryptedData, String key) throws CryptoException {
-        if (!isValidKey(key)) {
-            throw CryptoException.invalidKey("Caesar");
+    public Alphabet getAlphabet() {
+        return alphabet;
+    }
+
+    /**
+     * Подготовленный ключ: сдвиги для обоих направлений уже разобраны
+     */
+    private final class Key implements PreparedTextKey {
+        private final ShiftKey encryptKey;
+        private final ShiftKey decryptKey;
+
+        Key(int shift) {
+            this.encryptKey = ShiftKey.of(shift, alphabet);
+            // Дешифрование - это сдвиг в обратную сторону
+            this.decryptKey = encryptKey.inverse();
+        }
+
+        @Override
+        public CryptoService getAlgorithm() {
+            return CaesarCipher.this;
+        }
+
+        @Override
+        public void encrypt(InputStream input, OutputStream output) throws IOException {
+            ShiftEngine.getInstance().transform(input, output, encryptKey);
+        }
+
+        @Override
+        public void decrypt(InputStream input, OutputStream output) throws IOException {
+            ShiftEngine.getInstance().transform(input, output, decryptKey);
+        }
+
+        @Override
+        public String encrypt(String data) {
+            return ShiftEngine.getInstance().transform(data, encryptKey);
+        }
+
+        @Override
+        public String decrypt(String encryptedData) {
+            return ShiftEngine.getInstance().transform(encryptedData, decryptKey);
+        }
+
+        @Override
+        public void encrypt(Reader input, Writer output) throws IOException {
+            ShiftEngine.getInstance().transform(input, output, encryptKey, 0);
+        }
+
+        @Override
+        public void decrypt(Reader input, Writer output) throws IOException {
+            ShiftEngine.getInstance().transform(input, output, decryptKey, 0);
         }
 
-        int shift = Integer.parseInt(key);
-        StringBuilder result = new StringBuilder();
-
-        for (char character : encryptedData.toCharArray()) {
-            if (Character.isLetter(character)) {
-                char base = Character.isLowerCase(character) ? 'a' : 'A';
-                int originalPosition = character - base;
-                int newPosition = (originalPosition - shift + ALPHABET_SIZE) % ALPHABET_SIZE;
-                character = (char) (base + newPosition);
-            }
-            result.append(character);
+        @Override
+        public TextTransformer encryptor() {
+            return new TextTransformer(ShiftEngine.getInstance(), encryptKey);
         }
 
-        return result.toString();
+        @Override
+        public TextTransformer decryptor() {
+            return new TextTransformer(ShiftEngine.getInstance(), decryptKey);
+        }
     }
 
     @Override
@@ -74,7 +140,7 @@ public class CaesarCipher implements CryptoService {
 
         try {
             int shift = Integer.parseInt(key.trim());
-            return shift >= 1 && shift <= 25;
+            return shift >= 1 && shift < alphabet.size();
         } catch (NumberFormatException e) {
             return false;
         }
@@ -82,6 +148,6 @@ public class CaesarCipher implements CryptoService {
 
     @Override
     public String getKeyRequirements() {
-        return "Целое число от 1 до 25 (сдвиг)";
+        return String.format("Целое число от 1 до %d (сдвиг)", alphabet.size() - 1);
     }
 }
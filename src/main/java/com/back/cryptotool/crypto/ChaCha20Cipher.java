@@ -0,0 +1,224 @@
+package com.back.cryptotool.crypto;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+
+/**
+ * Реализация ChaCha20-Poly1305 (RFC 8439) - аутентифицированного потокового шифра.
+ *
+ * Не использует аппаратные инструкции AES и на процессорах без них работает
+ * в несколько раз быстрее программного AES. Ключ 256 бит, nonce 96 бит,
+ * тег аутентификации 128 бит.
+ */
+public class ChaCha20Cipher implements CryptoService {
+
+    public static final String ALGORITHM = "ChaCha20";
+    public static final int KEY_LENGTH = 32;
+    public static final int NONCE_LENGTH = 12;
+
+    private static final String TRANSFORMATION = "ChaCha20-Poly1305";
+    private static final int TAG_LENGTH = 16;
+
+    // Маркер формата текстового шифртекста: за ним следуют nonce и шифртекст с тегом
+    private static final byte FORMAT_MARKER = (byte) 0xCC;
+
+    // Инициализированные шифры по ключам, отдельно для каждого потока
+    private static final CipherCache CIPHERS = new CipherCache(TRANSFORMATION, ALGORITHM);
+
+    @Override
+    public void encrypt(InputStream input, OutputStream output, String key) throws CryptoException, IOException {
+        prepare(key).encrypt(input, output);
+    }
+
+    @Override
+    public void encrypt(InputStream input, OutputStream output, String key, byte[] nonce)
+            throws CryptoException, IOException {
+        prepare(key).encrypt(input, output, nonce);
+    }
+
+    @Override
+    public void decrypt(InputStream input, OutputStream output, String key) throws CryptoException, IOException {
+        prepare(key).decrypt(input, output);
+    }
+
+    @Override
+    public void decrypt(InputStream input, OutputStream output, String key, byte[] nonce)
+            throws CryptoException, IOException {
+        prepare(key).decrypt(input, output, nonce);
+    }
+
+    /**
+     * Проверяет ключ и переводит его в байты один раз
+     */
+    @Override
+    public PreparedKey prepare(String key) throws CryptoException {
+        return new Key(prepareKey(key));
+    }
+
+    /**
+     * Проверяет ключ и создает из него ключ ChaCha20 для использования с {@link Cipher} напрямую
+     * (например, при сегментном шифровании файлов)
+     */
+    public SecretKeySpec createSecretKey(String key) throws CryptoException {
+        return new SecretKeySpec(prepareKey(key), ALGORITHM);
+    }
+
+    private static byte[] prepareKey(String key) throws CryptoException {
+        byte[] keyBytes = key == null ? null : key.getBytes(StandardCharsets.UTF_8);
+
+        if (keyBytes == null || keyBytes.length != KEY_LENGTH) {
+            throw CryptoException.invalidKey("ChaCha20-Poly1305");
+        }
+        return keyBytes;
+    }
+
+    /**
+     * Проверяет, начинается ли шифртекст с маркера формата ChaCha20-Poly1305
+     */
+    static boolean hasFormatMarker(int firstByte) {
+        return (byte) firstByte == FORMAT_MARKER;
+    }
+
+    private static Cipher initCipher(int mode, byte[] keyBytes, byte[] nonce, int nonceOffset)
+            throws GeneralSecurityException {
+        return CIPHERS.init(mode, keyBytes, new IvParameterSpec(nonce, nonceOffset, NONCE_LENGTH));
+    }
+
+    @Override
+    public String getName() {
+        return "ChaCha20-Poly1305 Encryption";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Современный аутентифицированный потоковый шифр (RFC 8439). Ключ 256 бит. " +
+                "Быстр на процессорах без аппаратной поддержки AES.";
+    }
+
+    @Override
+    public boolean requiresBase64() {
+        return true;
+    }
+
+    @Override
+    public int getNonceLength() {
+        return NONCE_LENGTH;
+    }
+
+    @Override
+    public int getKeyBits() {
+        return KEY_LENGTH * 8;
+    }
+
+    @Override
+    public boolean isValidKey(String key) {
+        return key != null && key.getBytes(StandardCharsets.UTF_8).length == KEY_LENGTH;
+    }
+
+    @Override
+    public String getKeyRequirements() {
+        return String.format("Ключ длиной %d символов (%d бит)", KEY_LENGTH, KEY_LENGTH * 8);
+    }
+
+    /**
+     * Подготовленный ключ: байты ключа уже проверены
+     */
+    private final class Key implements PreparedKey {
+        private final byte[] keyBytes;
+
+        Key(byte[] keyBytes) {
+            this.keyBytes = keyBytes;
+        }
+
+        @Override
+        public CryptoService getAlgorithm() {
+            return ChaCha20Cipher.this;
+        }
+
+        @Override
+        public void encrypt(InputStream input, OutputStream output) throws CryptoException, IOException {
+            byte[] nonce = NonceGenerator.getInstance().nextBytes(NONCE_LENGTH);
+
+            // Перед зашифрованными данными записываем маркер и nonce
+            output.write(FORMAT_MARKER);
+            output.write(nonce);
+            encrypt(input, output, nonce);
+        }
+
+        @Override
+        public void encrypt(InputStream input, OutputStream output, byte[] nonce) throws CryptoException, IOException {
+            process(Cipher.ENCRYPT_MODE, input, output, nonce);
+        }
+
+        @Override
+        public void decrypt(InputStream input, OutputStream output) throws CryptoException, IOException {
+            if (input.read() != (FORMAT_MARKER & 0xFF)) {
+                throw CryptoException.corruptedData();
+            }
+
+            byte[] nonce = input.readNBytes(NONCE_LENGTH);
+            if (nonce.length != NONCE_LENGTH) {
+                throw CryptoException.corruptedData();
+            }
+            decrypt(input, output, nonce);
+        }
+
+        @Override
+        public void decrypt(InputStream input, OutputStream output, byte[] nonce) throws CryptoException, IOException {
+            process(Cipher.DECRYPT_MODE, input, output, nonce);
+        }
+
+        @Override
+        public byte[] encrypt(byte[] data) throws CryptoException {
+            byte[] result = new byte[1 + NONCE_LENGTH + data.length + TAG_LENGTH];
+            result[0] = FORMAT_MARKER;
+            System.arraycopy(NonceGenerator.getInstance().nextBytes(NONCE_LENGTH), 0, result, 1, NONCE_LENGTH);
+
+            try {
+                Cipher cipher = initCipher(Cipher.ENCRYPT_MODE, keyBytes, result, 1);
+                cipher.doFinal(data, 0, data.length, result, 1 + NONCE_LENGTH);
+                return result;
+            } catch (GeneralSecurityException e) {
+                throw new CryptoException("Ошибка шифрования ChaCha20-Poly1305: " + e.getMessage(), e);
+            }
+        }
+
+        @Override
+        public byte[] decrypt(byte[] data) throws CryptoException {
+            if (data.length < 1 + NONCE_LENGTH + TAG_LENGTH || data[0] != FORMAT_MARKER) {
+                throw CryptoException.corruptedData();
+            }
+
+            try {
+                Cipher cipher = initCipher(Cipher.DECRYPT_MODE, keyBytes, data, 1);
+                return cipher.doFinal(data, 1 + NONCE_LENGTH, data.length - 1 - NONCE_LENGTH);
+            } catch (AEADBadTagException e) {
+                throw CryptoException.corruptedData();
+            } catch (GeneralSecurityException e) {
+                throw new CryptoException("Ошибка дешифрования ChaCha20-Poly1305: " + e.getMessage(), e);
+            }
+        }
+
+        private void process(int mode, InputStream input, OutputStream output, byte[] nonce)
+                throws CryptoException, IOException {
+            if (nonce.length != NONCE_LENGTH) {
+                throw new CryptoException("Неверная длина вектора инициализации: " + nonce.length);
+            }
+
+            try {
+                AesCipher.process(initCipher(mode, keyBytes, nonce, 0), input, output);
+            } catch (AEADBadTagException e) {
+                throw CryptoException.corruptedData();
+            } catch (GeneralSecurityException e) {
+                throw new CryptoException("Ошибка ChaCha20-Poly1305: " + e.getMessage(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.back.cryptotool.crypto;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Кэш объектов {@link Cipher} для одного преобразования (например, "AES/CBC/PKCS5Padding").
+ *
+ * У каждого потока свой набор шифров, поэтому синхронизация не нужна.
+ * Шифры хранятся по отпечатку ключа, при повторной инициализации тем же
+ * ключом провайдер не выполняет поиск реализации и не разворачивает ключ заново.
+ * Размер кэша ограничен, самые давно использованные ключи вытесняются (LRU).
+ *
+ * Ключ кэша - не сам ключ, а его отпечаток: HMAC-SHA256 со случайным ключом
+ * экземпляра, как в {@link KeyDerivation}. Байты ключа хранятся только в записи
+ * кэша и затираются, когда запись вытесняется.
+ *
+ * Возвращенный шифр можно использовать только в текущем потоке и только до
+ * следующего вызова {@link #init} с тем же ключом.
+ */
+public class CipherCache {
+
+    private static final int DEFAULT_MAX_ENTRIES = 16;
+
+    private final String transformation;
+    private final String keyAlgorithm;
+    private final int maxEntries;
+    private final byte[] fingerprintKey;
+
+    private final ThreadLocal<Map<KeyFingerprint, CachedCipher>> ciphers;
+    private final ThreadLocal<Mac> macs = new ThreadLocal<>();
+    private final ThreadLocal<Cipher> oneTimeCiphers = new ThreadLocal<>();
+
+    public CipherCache(String transformation, String keyAlgorithm) {
+        this(transformation, keyAlgorithm, DEFAULT_MAX_ENTRIES);
+    }
+
+    public CipherCache(String transformation, String keyAlgorithm, int maxEntries) {
+        this.transformation = transformation;
+        this.keyAlgorithm = keyAlgorithm;
+        this.maxEntries = maxEntries;
+        this.fingerprintKey = NonceGenerator.getInstance().nextBytes(32);
+        this.ciphers = ThreadLocal.withInitial(() -> new LinkedHashMap<>(maxEntries, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<KeyFingerprint, CachedCipher> eldest) {
+                if (size() <= CipherCache.this.maxEntries) {
+                    return false;
+                }
+                eldest.getValue().key.destroy();
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Возвращает шифр текущего потока для ключа, инициализированный с указанными параметрами
+     *
+     * @param mode Cipher.ENCRYPT_MODE или Cipher.DECRYPT_MODE
+     * @param keyBytes ключ
+     * @param params параметры (IV, nonce)
+     * @return готовый к работе шифр
+     */
+    public Cipher init(int mode, byte[] keyBytes, AlgorithmParameterSpec params) throws GeneralSecurityException {
+        Map<KeyFingerprint, CachedCipher> cache = ciphers.get();
+        KeyFingerprint fingerprint = fingerprint(keyBytes);
+
+        CachedCipher cached = cache.get(fingerprint);
+        if (cached == null) {
+            cached = new CachedCipher(Cipher.getInstance(transformation), new CachedKey(keyBytes, keyAlgorithm));
+            cache.put(fingerprint, cached);
+        }
+
+        cached.cipher = init(cached.cipher, mode, cached.key, params);
+        return cached.cipher;
+    }
+
+    /**
+     * Возвращает шифр текущего потока для ключа, который используется один раз
+     * (например, ключа сегмента файла). Такой ключ не попадает в кэш и не вытесняет
+     * из него повторяющиеся ключи; переиспользуется только сам объект {@link Cipher}.
+     */
+    public Cipher initOneTime(int mode, byte[] keyBytes, AlgorithmParameterSpec params) throws GeneralSecurityException {
+        Cipher cipher = oneTimeCiphers.get();
+        if (cipher == null) {
+            cipher = Cipher.getInstance(transformation);
+        }
+
+        cipher = init(cipher, mode, new SecretKeySpec(keyBytes, keyAlgorithm), params);
+        oneTimeCiphers.set(cipher);
+        return cipher;
+    }
+
+    /**
+     * Инициализирует шифр. ChaCha20 запрещает повторную инициализацию тем же ключом
+     * и nonce, что и предыдущая, даже для дешифрования - например, когда данные
+     * расшифровываются сразу после шифрования в том же потоке. Для дешифрования
+     * повтор безопасен, поэтому в этом случае берется новый объект шифра.
+     */
+    private Cipher init(Cipher cipher, int mode, Key key, AlgorithmParameterSpec params)
+            throws GeneralSecurityException {
+        try {
+            cipher.init(mode, key, params);
+            return cipher;
+        } catch (InvalidKeyException e) {
+            if (mode != Cipher.DECRYPT_MODE) {
+                throw e;
+            }
+            Cipher fresh = Cipher.getInstance(transformation);
+            fresh.init(mode, key, params);
+            return fresh;
+        }
+    }
+
+    /**
+     * Число ключей в кэше текущего потока
+     */
+    public int size() {
+        return ciphers.get().size();
+    }
+
+    private KeyFingerprint fingerprint(byte[] keyBytes) throws GeneralSecurityException {
+        Mac mac = macs.get();
+        if (mac == null) {
+            mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(fingerprintKey, "HmacSHA256"));
+            macs.set(mac);
+        }
+        return new KeyFingerprint(mac.doFinal(keyBytes));
+    }
+
+    /**
+     * Отпечаток ключа - сравнение по содержимому массива
+     */
+    private static final class KeyFingerprint {
+        private final byte[] value;
+        private final int hash;
+
+        KeyFingerprint(byte[] value) {
+            this.value = value;
+            this.hash = Arrays.hashCode(value);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof KeyFingerprint && Arrays.equals(value, ((KeyFingerprint) other).value);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final class CachedCipher {
+        private Cipher cipher;
+        private final CachedKey key;
+
+        CachedCipher(Cipher cipher, CachedKey key) {
+            this.cipher = cipher;
+            this.key = key;
+        }
+    }
+
+    /**
+     * Ключ записи кэша. В отличие от {@link SecretKeySpec} его байты можно затереть.
+     */
+    private static final class CachedKey implements SecretKey {
+        private static final long serialVersionUID = 1L;
+
+        private final byte[] key;
+        private final String algorithm;
+        private boolean destroyed;
+
+        CachedKey(byte[] key, String algorithm) {
+            this.key = key.clone();
+            this.algorithm = algorithm;
+        }
+
+        @Override
+        public String getAlgorithm() {
+            return algorithm;
+        }
+
+        @Override
+        public String getFormat() {
+            return "RAW";
+        }
+
+        @Override
+        public byte[] getEncoded() {
+            return key.clone();
+        }
+
+        @Override
+        public void destroy() {
+            Arrays.fill(key, (byte) 0);
+            destroyed = true;
+        }
+
+        @Override
+        public boolean isDestroyed() {
+            return destroyed;
+        }
+    }
+}
@@ -1,33 +1,94 @@
 package com.back.cryptotool.crypto;
 
-import java.util.HashMap;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 /**
  * Фасад для управления всеми доступными алгоритмами шифрования.
  * Предоставляет единую точку доступа к функциональности шифрования.
+ *
+ * Потокобезопасен: реализации алгоритмов неизменяемы, а смена настроек AES
+ * атомарно заменяет экземпляр в реестре. Каждая операция берет экземпляр
+ * один раз и работает с ним до конца, поэтому параллельная смена настроек
+ * не влияет на уже начатые операции.
+ *
+ * Бинарные алгоритмы (AES) возвращают сырые байты, а текстовое представление
+ * получается одним шагом кодирования ({@link TextCodec}) здесь, в менеджере.
+ *
+ * Менеджер владеет пулом потоков пакетной обработки, который останавливается
+ * методом {@link #close()}.
  */
-public class CryptoManager {
+public class CryptoManager implements AutoCloseable {
+
+    /**
+     * Автоматический выбор: самый быстрый на этом компьютере аутентифицированный
+     * шифр, которому подходит ключ (по результатам {@link #getCalibration()})
+     */
+    public static final String AUTO = "AUTO";
+
+    // Варианты, из которых выбирает AUTO: только шифры с проверкой целостности -
+    // AES/GCM с размером ключа пользователя и ChaCha20-Poly1305
+    private static final AesCipher.Mode AUTO_AES_MODE = AesCipher.Mode.GCM;
+    private static final String AUTO_STREAM_CIPHER = "CHACHA20";
 
     private final Map<String, CryptoService> algorithms;
 
+    // Пакеты меньше двух частей такого размера обрабатываются в одном потоке
+    private static final int MIN_BATCH_PART = 512;
+
+    // Кодировка текстового представления шифртекста бинарных алгоритмов
+    private volatile TextCodec textCodec = TextCodec.BASE64;
+
+    // Результат калибровки, загружается или измеряется при первом обращении
+    private volatile AlgorithmCalibration calibration;
+
+    // Пул для параллельной обработки пакетов значений (потоки создаются по требованию)
+    private final ForkJoinPool batchPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
     /**
      * Создает менеджер и регистрирует все доступные алгоритмы
      */
     public CryptoManager() {
-        algorithms = new HashMap<>();
+        algorithms = new ConcurrentHashMap<>();
         registerAlgorithms();
     }
 
+    /**
+     * Останавливает пул пакетной обработки. Начатые пакеты дорабатываются,
+     * новые пакетные операции после закрытия недоступны.
+     */
+    @Override
+    public void close() {
+        batchPool.shutdown();
+    }
+
     /**
      * Регистрирует все доступные алгоритмы шифрования
      */
     private void registerAlgorithms() {
-        // Эти классы мы создадим следующими
         algorithms.put("CAESAR", new CaesarCipher());
-        algorithms.put("VIGENERE", new VigenereCipher());
+        // Параллельный Виженер обрабатывает на всех ядрах только большие тексты
+        algorithms.put("VIGENERE", new VigenereCipher(Alphabet.LATIN, true));
         algorithms.put("AES", new AesCipher());
+        algorithms.put("CHACHA20", new ChaCha20Cipher());
         // Можно добавить больше алгоритмов позже
     }
 
@@ -41,20 +102,28 @@ public class CryptoManager {
      * @throws CryptoException если алгоритм не найден или произошла ошибка шифрования
      */
     public String encrypt(String algorithmName, String data, String key) throws CryptoException {
-        CryptoService algorithm = getAlgorithm(algorithmName);
-
-        if (!algorithm.isValidKey(key)) {
-            throw CryptoException.invalidKey(algorithmName);
-        }
+        return encrypt(prepare(algorithmName, key), data);
+    }
 
-        String encrypted = algorithm.encrypt(data, key);
+    /**
+     * Шифрует текст заранее подготовленным ключом.
+     * Формат результата тот же, что у {@link #encrypt(String, String, String)}:
+     * бинарный шифртекст кодируется один раз выбранной кодировкой ({@link #setTextCodec}).
+     *
+     * @param key ключ, полученный из {@link #prepare}
+     * @param data данные для шифрования
+     * @return зашифрованные данные
+     * @throws CryptoException если произошла ошибка шифрования
+     */
+    public String encrypt(PreparedKey key, String data) throws CryptoException {
+        return encryptValue(key, textCodec, data);
+    }
 
-        // Если алгоритм требует Base64 кодирования - применяем его
-        if (algorithm.requiresBase64()) {
-            return java.util.Base64.getEncoder().encodeToString(encrypted.getBytes());
+    private static String encryptValue(PreparedKey key, TextCodec codec, String data) throws CryptoException {
+        if (!key.getAlgorithm().requiresBase64()) {
+            return key.encrypt(data);
         }
-
-        return encrypted;
+        return codec.getPrefix() + codec.encode(key.encrypt(data.getBytes(StandardCharsets.UTF_8)));
     }
 
     /**
@@ -67,25 +136,612 @@ public class CryptoManager {
      * @throws CryptoException если алгоритм не найден или произошла ошибка дешифрования
      */
     public String decrypt(String algorithmName, String encryptedData, String key) throws CryptoException {
+        return decrypt(prepare(algorithmName, key), encryptedData);
+    }
+
+    /**
+     * Дешифрует текст заранее подготовленным ключом
+     *
+     * @param key ключ, полученный из {@link #prepare}
+     * @param encryptedData зашифрованные данные
+     * @return расшифрованные данные
+     * @throws CryptoException если произошла ошибка дешифрования
+     */
+    public String decrypt(PreparedKey key, String encryptedData) throws CryptoException {
+        return decryptValue(key, encryptedData);
+    }
+
+    private static String decryptValue(PreparedKey key, String encryptedData) throws CryptoException {
+        if (!key.getAlgorithm().requiresBase64()) {
+            return key.decrypt(encryptedData);
+        }
+
+        byte[] bytes = decodeText(encryptedData.trim());
+
+        // Старый формат с двойным Base64: пробуем его, только если после первого
+        // декодирования снова получился текст Base64, и при неудаче расшифровываем как есть
+        if (isBase64Text(bytes)) {
+            try {
+                byte[] legacy = TextCodec.BASE64.decode(new String(bytes, StandardCharsets.US_ASCII));
+                return new String(key.decrypt(legacy), StandardCharsets.UTF_8);
+            } catch (CryptoException e) {
+                // Не старый формат
+            }
+        }
+        return new String(key.decrypt(bytes), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Шифрует список значений одним ключом.
+     * Алгоритм и ключ разбираются один раз, шифры берутся из кэша потока,
+     * значения null переносятся в результат без изменений.
+     *
+     * @param algorithmName название алгоритма
+     * @param values значения для шифрования
+     * @param key ключ шифрования
+     * @param parallel обрабатывать большие пакеты на всех ядрах
+     * @return зашифрованные значения в том же порядке
+     * @throws CryptoException если ключ неверен или не удалось зашифровать одно из значений
+     */
+    public List<String> encryptAll(String algorithmName, List<String> values, String key, boolean parallel)
+            throws CryptoException {
+        return Arrays.asList(encryptAll(prepare(algorithmName, key), values.toArray(new String[0]), parallel));
+    }
+
+    /**
+     * Шифрует массив значений одним ключом
+     *
+     * @see #encryptAll(String, List, String, boolean)
+     */
+    public String[] encryptAll(String algorithmName, String[] values, String key, boolean parallel)
+            throws CryptoException {
+        return encryptAll(prepare(algorithmName, key), values, parallel);
+    }
+
+    /**
+     * Шифрует все значения потока одним ключом. Поток читается целиком.
+     *
+     * @see #encryptAll(String, List, String, boolean)
+     */
+    public List<String> encryptAll(String algorithmName, Stream<String> values, String key, boolean parallel)
+            throws CryptoException {
+        PreparedKey preparedKey = prepare(algorithmName, key);
+        return Arrays.asList(encryptAll(preparedKey, values.toArray(String[]::new), parallel));
+    }
+
+    /**
+     * Шифрует массив значений заранее подготовленным ключом
+     *
+     * @see #encryptAll(String, List, String, boolean)
+     */
+    public String[] encryptAll(PreparedKey key, String[] values, boolean parallel) throws CryptoException {
+        TextCodec codec = textCodec;
+        return processAll(values, parallel, value -> encryptValue(key, codec, value));
+    }
+
+    /**
+     * Дешифрует список значений одним ключом
+     *
+     * @param algorithmName название алгоритма
+     * @param values зашифрованные значения
+     * @param key ключ шифрования
+     * @param parallel обрабатывать большие пакеты на всех ядрах
+     * @return расшифрованные значения в том же порядке
+     * @throws CryptoException если ключ неверен или одно из значений повреждено
+     */
+    public List<String> decryptAll(String algorithmName, List<String> values, String key, boolean parallel)
+            throws CryptoException {
+        return Arrays.asList(decryptAll(prepare(algorithmName, key), values.toArray(new String[0]), parallel));
+    }
+
+    /**
+     * Дешифрует массив значений одним ключом
+     *
+     * @see #decryptAll(String, List, String, boolean)
+     */
+    public String[] decryptAll(String algorithmName, String[] values, String key, boolean parallel)
+            throws CryptoException {
+        return decryptAll(prepare(algorithmName, key), values, parallel);
+    }
+
+    /**
+     * Дешифрует все значения потока одним ключом. Поток читается целиком.
+     *
+     * @see #decryptAll(String, List, String, boolean)
+     */
+    public List<String> decryptAll(String algorithmName, Stream<String> values, String key, boolean parallel)
+            throws CryptoException {
+        PreparedKey preparedKey = prepare(algorithmName, key);
+        return Arrays.asList(decryptAll(preparedKey, values.toArray(String[]::new), parallel));
+    }
+
+    /**
+     * Дешифрует массив значений заранее подготовленным ключом
+     *
+     * @see #decryptAll(String, List, String, boolean)
+     */
+    public String[] decryptAll(PreparedKey key, String[] values, boolean parallel) throws CryptoException {
+        return processAll(values, parallel, value -> decryptValue(key, value));
+    }
+
+    /**
+     * Применяет операцию ко всем значениям. Большие пакеты делятся на
+     * непрерывные части, каждая часть обрабатывается в своем потоке пула.
+     */
+    private String[] processAll(String[] values, boolean parallel, ValueOperation operation)
+            throws CryptoException {
+        String[] results = new String[values.length];
+
+        int parts = parallel ? Math.min(batchPool.getParallelism() * 4, values.length / MIN_BATCH_PART) : 1;
+        if (parts <= 1) {
+            processRange(values, results, 0, values.length, operation);
+            return results;
+        }
+
+        try {
+            batchPool.invoke(ForkJoinTask.adapt(() -> IntStream.range(0, parts).parallel().forEach(part -> {
+                int from = (int) ((long) values.length * part / parts);
+                int to = (int) ((long) values.length * (part + 1) / parts);
+                try {
+                    processRange(values, results, from, to, operation);
+                } catch (CryptoException e) {
+                    throw new BatchException(e);
+                }
+            })));
+        } catch (RuntimeException e) {
+            // Пул может обернуть исключение повторно - ищем исходную причину
+            Throwable cause = e;
+            while (cause != null && !(cause instanceof CryptoException)) {
+                cause = cause.getCause();
+            }
+            if (cause != null) {
+                throw (CryptoException) cause;
+            }
+            throw e;
+        }
+        return results;
+    }
+
+    private static void processRange(String[] values, String[] results, int from, int to, ValueOperation operation)
+            throws CryptoException {
+        for (int i = from; i < to; i++) {
+            String value = values[i];
+            if (value == null) {
+                continue;
+            }
+            try {
+                results[i] = operation.apply(value);
+            } catch (CryptoException e) {
+                throw new CryptoException("Ошибка в значении №" + (i + 1) + ": " + e.getMessage(), e);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface ValueOperation {
+        String apply(String value) throws CryptoException;
+    }
+
+    private static class BatchException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        BatchException(CryptoException cause) {
+            super(cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * Декодирует текстовый шифртекст. Кодировка определяется по самому тексту
+     * ({@link TextCodec#forText}), а не по текущей настройке: Z85 помечен префиксом,
+     * остальной текст читается как Base64.
+     */
+    private static byte[] decodeText(String text) throws CryptoException {
+        TextCodec codec = TextCodec.forText(text);
+        return codec.decode(text.substring(codec.getPrefix().length()));
+    }
+
+    private static boolean isBase64Text(byte[] bytes) {
+        if (bytes.length == 0 || bytes.length % 4 != 0) {
+            return false;
+        }
+
+        for (byte value : bytes) {
+            boolean base64 = (value >= 'A' && value <= 'Z') || (value >= 'a' && value <= 'z')
+                    || (value >= '0' && value <= '9') || value == '+' || value == '/' || value == '=';
+            if (!base64) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Устанавливает кодировку текстового шифртекста бинарных алгоритмов (AES)
+     */
+    public void setTextCodec(TextCodec textCodec) {
+        this.textCodec = textCodec;
+    }
+
+    public TextCodec getTextCodec() {
+        return textCodec;
+    }
+
+    /**
+     * Шифрует поток данных с использованием указанного алгоритма.
+     * Результат записывается в бинарном виде, без Base64.
+     *
+     * @param algorithmName название алгоритма (например, "AES")
+     * @param input исходные данные
+     * @param output поток для зашифрованных данных
+     * @param key ключ шифрования
+     * @throws CryptoException если алгоритм не найден или произошла ошибка шифрования
+     * @throws IOException если произошла ошибка чтения или записи
+     */
+    public void encrypt(String algorithmName, InputStream input, OutputStream output, String key)
+            throws CryptoException, IOException {
+        prepare(algorithmName, key).encrypt(input, output);
+    }
+
+    /**
+     * Дешифрует поток данных с использованием указанного алгоритма
+     *
+     * @param algorithmName название алгоритма (например, "AES")
+     * @param input зашифрованные данные
+     * @param output поток для расшифрованных данных
+     * @param key ключ шифрования
+     * @throws CryptoException если алгоритм не найден или произошла ошибка дешифрования
+     * @throws IOException если произошла ошибка чтения или записи
+     */
+    public void decrypt(String algorithmName, InputStream input, OutputStream output, String key)
+            throws CryptoException, IOException {
+        prepare(algorithmName, key).decrypt(input, output);
+    }
+
+    /**
+     * Шифрует поток с заданным вектором инициализации. Сам nonce в поток
+     * не записывается - его сохраняет вызывающий код.
+     *
+     * @param algorithmName название алгоритма (например, "AES")
+     * @param input исходные данные
+     * @param output поток для зашифрованных данных
+     * @param key ключ шифрования
+     * @param nonce вектор инициализации
+     * @throws CryptoException если алгоритм не найден или произошла ошибка шифрования
+     * @throws IOException если произошла ошибка чтения или записи
+     */
+    public void encrypt(String algorithmName, InputStream input, OutputStream output, String key, byte[] nonce)
+            throws CryptoException, IOException {
+        prepare(algorithmName, key).encrypt(input, output, nonce);
+    }
+
+    /**
+     * Дешифрует поток, зашифрованный с известным вектором инициализации
+     *
+     * @param algorithmName название алгоритма (например, "AES")
+     * @param input зашифрованные данные
+     * @param output поток для расшифрованных данных
+     * @param key ключ шифрования
+     * @param nonce вектор инициализации
+     * @throws CryptoException если алгоритм не найден или произошла ошибка дешифрования
+     * @throws IOException если произошла ошибка чтения или записи
+     */
+    public void decrypt(String algorithmName, InputStream input, OutputStream output, String key, byte[] nonce)
+            throws CryptoException, IOException {
+        prepare(algorithmName, key).decrypt(input, output, nonce);
+    }
+
+    /**
+     * Шифрует текст из Reader в Writer за один проход с буфером фиксированного размера.
+     * Поддерживается только алгоритмами, работающими с текстом (Цезарь, Виженер).
+     *
+     * @param algorithmName название алгоритма
+     * @param input исходный текст
+     * @param output приемник зашифрованного текста
+     * @param key ключ шифрования
+     * @throws CryptoException если алгоритм не найден или не работает с текстом
+     * @throws IOException если произошла ошибка чтения или записи
+     */
+    public void encrypt(String algorithmName, Reader input, Writer output, String key)
+            throws CryptoException, IOException {
+        prepareText(algorithmName, key).encrypt(input, output);
+    }
+
+    /**
+     * Дешифрует текст из Reader в Writer за один проход
+     *
+     * @see #encrypt(String, Reader, Writer, String)
+     */
+    public void decrypt(String algorithmName, Reader input, Writer output, String key)
+            throws CryptoException, IOException {
+        prepareText(algorithmName, key).decrypt(input, output);
+    }
+
+    /**
+     * Подготавливает ключ текстового алгоритма (Цезарь, Виженер) для потоковой
+     * обработки текста через {@link PreparedTextKey} и {@link TextTransformer}
+     *
+     * @throws CryptoException если алгоритм не найден, не работает с текстом или ключ не подходит
+     */
+    public PreparedTextKey prepareText(String algorithmName, String key) throws CryptoException {
+        PreparedKey preparedKey = prepare(algorithmName, key);
+        if (!(preparedKey instanceof PreparedTextKey)) {
+            throw new CryptoException("Алгоритм " + algorithmName + " не поддерживает потоковую обработку текста");
+        }
+        return (PreparedTextKey) preparedKey;
+    }
+
+    /**
+     * Проверяет ключ и подготавливает его для многократного использования.
+     * Разбор и проверка ключа выполняются один раз, а не при каждой операции,
+     * что важно при шифровании большого количества записей одним ключом.
+     * Ключ привязан к текущим настройкам алгоритма и не меняется при их смене.
+     *
+     * @param algorithmName название алгоритма (например, "AES")
+     * @param key ключ шифрования
+     * @return подготовленный ключ
+     * @throws CryptoException если алгоритм не найден или ключ не подходит
+     */
+    public PreparedKey prepare(String algorithmName, String key) throws CryptoException {
+        if (AUTO.equalsIgnoreCase(algorithmName)) {
+            return new AutoKey(resolveAlgorithm(AUTO, key).prepare(key), key);
+        }
+
         CryptoService algorithm = getAlgorithm(algorithmName);
 
         if (!algorithm.isValidKey(key)) {
             throw CryptoException.invalidKey(algorithmName);
         }
 
-        String dataToDecrypt = encryptedData;
+        return algorithm.prepare(key);
+    }
 
-        // Если алгоритм требует Base64 - сначала декодируем
-        if (algorithm.requiresBase64()) {
-            try {
-                byte[] decodedBytes = java.util.Base64.getDecoder().decode(encryptedData);
-                dataToDecrypt = new String(decodedBytes);
-            } catch (IllegalArgumentException e) {
+    /**
+     * Возвращает алгоритм, которым будет выполнено шифрование. Для {@link #AUTO} -
+     * самый быстрый по калибровке вариант, которому подходит ключ, для остальных
+     * имен - зарегистрированный алгоритм.
+     */
+    public CryptoService resolveAlgorithm(String algorithmName, String key) throws CryptoException {
+        if (!AUTO.equalsIgnoreCase(algorithmName)) {
+            return getAlgorithm(algorithmName);
+        }
+
+        String variant = selectAutomatic(key);
+        if (variant.startsWith("AES-")) {
+            return getAes(autoAesKeySize(key), AUTO_AES_MODE);
+        }
+        return getAlgorithm(variant);
+    }
+
+    /**
+     * Возвращает имя алгоритма в реестре (например, для заголовка файла)
+     *
+     * @param key ключ или null, если ключ будет получен из пароля (256 бит) и подходит любой вариант
+     * @see #resolveAlgorithm(String, String)
+     */
+    public String resolveAlgorithmName(String algorithmName, String key) throws CryptoException {
+        if (!AUTO.equalsIgnoreCase(algorithmName)) {
+            getAlgorithm(algorithmName);
+            return algorithmName.toUpperCase();
+        }
+
+        String variant = selectAutomatic(key);
+        return variant.startsWith("AES-") ? "AES" : variant;
+    }
+
+    /**
+     * Выбирает для ключа (или для 256-битного ключа из пароля, если он null) самый
+     * быстрый аутентифицированный вариант по калибровке. AES сравнивается с тем
+     * размером ключа, которым будет выполнено шифрование.
+     */
+    private String selectAutomatic(String key) throws CryptoException {
+        AesCipher.KeySize aesSize = autoAesKeySize(key);
+        String aesVariant = aesSize != null ? aesVariant(aesSize, AUTO_AES_MODE) : null;
+        CryptoService streamCipher = algorithms.get(AUTO_STREAM_CIPHER);
+
+        for (AlgorithmCalibration.Result result : getCalibration().getRanking()) {
+            String variant = result.getId();
+            if (variant.equals(aesVariant)) {
+                return variant;
+            }
+            if (variant.equals(AUTO_STREAM_CIPHER) && streamCipher != null
+                    && (key == null || streamCipher.isValidKey(key))) {
+                return variant;
+            }
+        }
+        throw new CryptoException("Ни один алгоритм не подходит для ключа: нужен ключ длиной 16, 24 или 32 символа");
+    }
+
+    private static AesCipher.KeySize autoAesKeySize(String key) {
+        return key == null ? AesCipher.KeySize.AES_256 : aesKeySize(key);
+    }
+
+    /**
+     * Обозначение варианта AES в калибровке, например "AES-256/GCM"
+     */
+    private static String aesVariant(AesCipher.KeySize keySize, AesCipher.Mode mode) {
+        return "AES-" + keySize.getBits() + "/" + mode.name();
+    }
+
+    /**
+     * Размер ключа AES по длине ключа или null, если длина не подходит для AES
+     */
+    private static AesCipher.KeySize aesKeySize(String key) {
+        if (key == null) {
+            return null;
+        }
+        int bits = key.getBytes(StandardCharsets.UTF_8).length * 8;
+        for (AesCipher.KeySize size : AesCipher.KeySize.values()) {
+            if (size.getBits() == bits) {
+                return size;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Возвращает результат калибровки. При первом вызове загружает сохраненный
+     * результат этого компьютера, а если его нет - выполняет калибровку (около секунды на все варианты)
+     */
+    public AlgorithmCalibration getCalibration() throws CryptoException {
+        AlgorithmCalibration result = calibration;
+        if (result != null) {
+            return result;
+        }
+
+        synchronized (this) {
+            if (calibration == null) {
+                AlgorithmCalibration loaded = AlgorithmCalibration.load();
+                calibration = loaded != null ? loaded : calibrate();
+            }
+            return calibration;
+        }
+    }
+
+    /**
+     * Заново измеряет скорость вариантов, из которых выбирает {@link #AUTO}
+     * (AES-GCM с каждым размером ключа и ChaCha20-Poly1305), и сохраняет
+     * результат для следующих запусков. Ключ измерения случайный.
+     */
+    public synchronized AlgorithmCalibration calibrate() throws CryptoException {
+        Map<String, PreparedKey> candidates = new LinkedHashMap<>();
+        String benchmarkKey = getAes(AesCipher.KeySize.AES_256, AUTO_AES_MODE).generateReadableKey();
+
+        for (AesCipher.KeySize size : AesCipher.KeySize.values()) {
+            candidates.put(aesVariant(size, AUTO_AES_MODE),
+                    getAes(size, AUTO_AES_MODE).prepare(benchmarkKey.substring(0, size.getBytes())));
+        }
+        CryptoService streamCipher = algorithms.get(AUTO_STREAM_CIPHER);
+        if (streamCipher != null) {
+            candidates.put(AUTO_STREAM_CIPHER, streamCipher.prepare(benchmarkKey));
+        }
+
+        AlgorithmCalibration result = AlgorithmCalibration.measure(candidates);
+        result.save();
+        calibration = result;
+        return result;
+    }
+
+    /**
+     * Ключ автоматического выбора: шифрует выбранным алгоритмом, а при
+     * дешифровании определяет алгоритм по самим данным, а не по текущей калибровке:
+     * по маркеру формата в начале данных или, если маркера нет (nonce передан
+     * отдельно), по тому, какой из подходящих шифров пройдет проверку подлинности
+     */
+    private final class AutoKey implements PreparedKey {
+        private final PreparedKey encryptionKey;
+        private final String key;
+
+        AutoKey(PreparedKey encryptionKey, String key) {
+            this.encryptionKey = encryptionKey;
+            this.key = key;
+        }
+
+        @Override
+        public CryptoService getAlgorithm() {
+            return encryptionKey.getAlgorithm();
+        }
+
+        @Override
+        public void encrypt(InputStream input, OutputStream output) throws CryptoException, IOException {
+            encryptionKey.encrypt(input, output);
+        }
+
+        @Override
+        public void encrypt(InputStream input, OutputStream output, byte[] nonce) throws CryptoException, IOException {
+            encryptionKey.encrypt(input, output, nonce);
+        }
+
+        @Override
+        public byte[] encrypt(byte[] data) throws CryptoException {
+            return encryptionKey.encrypt(data);
+        }
+
+        @Override
+        public void decrypt(InputStream input, OutputStream output) throws CryptoException, IOException {
+            PushbackInputStream pushback = new PushbackInputStream(input, 1);
+            int first = pushback.read();
+            if (first < 0) {
+                throw CryptoException.corruptedData();
+            }
+            pushback.unread(first);
+
+            if (ChaCha20Cipher.hasFormatMarker(first) && aesKeySize(key) != null) {
+                // Старый формат AES без маркера может начинаться с байта маркера ChaCha20:
+                // такие данные читаются целиком и проверяются обоими шифрами
+                output.write(decrypt(pushback.readAllBytes()));
+                return;
+            }
+            decryptionKey(first).decrypt(pushback, output);
+        }
+
+        @Override
+        public void decrypt(InputStream input, OutputStream output, byte[] nonce) throws CryptoException, IOException {
+            // Оба варианта AUTO проверяют тег только в конце, поэтому данные все равно
+            // накапливаются целиком; результат отдается после успешной проверки
+            byte[] data = input.readAllBytes();
+            CryptoException failure = null;
+
+            for (PreparedKey candidate : nonceCandidates()) {
+                ByteArrayOutputStream plain = new ByteArrayOutputStream(data.length);
+                try {
+                    candidate.decrypt(new ByteArrayInputStream(data), plain, nonce);
+                    plain.writeTo(output);
+                    return;
+                } catch (CryptoException e) {
+                    if (failure == null) {
+                        failure = e;
+                    }
+                }
+            }
+            throw failure;
+        }
+
+        @Override
+        public byte[] decrypt(byte[] data) throws CryptoException {
+            if (data.length == 0) {
                 throw CryptoException.corruptedData();
             }
+
+            try {
+                return decryptionKey(data[0]).decrypt(data);
+            } catch (CryptoException e) {
+                // Старый формат AES без маркера: случайный IV может начинаться с байта маркера ChaCha20
+                if (ChaCha20Cipher.hasFormatMarker(data[0]) && aesKeySize(key) != null) {
+                    return getAes(aesKeySize(key), AesCipher.Mode.CBC).prepare(key).decrypt(data);
+                }
+                throw e;
+            }
+        }
+
+        /**
+         * Аутентифицированные варианты, которым подходит ключ: сначала выбранный для шифрования
+         */
+        private List<PreparedKey> nonceCandidates() throws CryptoException {
+            List<PreparedKey> candidates = new ArrayList<>(2);
+            candidates.add(encryptionKey);
+
+            CryptoService streamCipher = algorithms.get(AUTO_STREAM_CIPHER);
+            if (encryptionKey.getAlgorithm() instanceof AesCipher) {
+                if (streamCipher != null && streamCipher.isValidKey(key)) {
+                    candidates.add(streamCipher.prepare(key));
+                }
+            } else if (aesKeySize(key) != null) {
+                candidates.add(getAes(aesKeySize(key), AUTO_AES_MODE).prepare(key));
+            }
+            return candidates;
         }
 
-        return algorithm.decrypt(dataToDecrypt, key);
+        private PreparedKey decryptionKey(int firstByte) throws CryptoException {
+            if (ChaCha20Cipher.hasFormatMarker(firstByte)) {
+                return CryptoManager.this.prepare("CHACHA20", key);
+            }
+            // Режим AES записан в самом шифртексте
+            AesCipher.KeySize size = aesKeySize(key);
+            if (size == null) {
+                throw CryptoException.invalidKey("AES");
+            }
+            return getAes(size, AesCipher.Mode.CBC).prepare(key);
+        }
     }
 
     /**
@@ -123,50 +779,80 @@ public class CryptoManager {
     }
 
     /**
-     * Устанавливает размер ключа для AES алгоритма
+     * Устанавливает размер ключа для AES алгоритма по умолчанию.
+     * Для работы с другим размером без смены общей настройки используйте {@link #getAes}.
      */
     public void setAesKeySize(AesCipher.KeySize keySize) throws CryptoException {
-        CryptoService aesAlgorithm = algorithms.get("AES");
-        if (aesAlgorithm instanceof AesCipher) {
-            ((AesCipher) aesAlgorithm).setKeySize(keySize);
-        } else {
-            throw new CryptoException("AES алгоритм не найден");
-        }
+        getAesAlgorithm();
+        // Атомарная замена: параллельная смена режима не потеряется
+        algorithms.computeIfPresent("AES", (name, aes) -> ((AesCipher) aes).withKeySize(keySize));
     }
 
     /**
      * Возвращает текущий размер ключа AES
      */
     public AesCipher.KeySize getAesKeySize() throws CryptoException {
+        return getAesAlgorithm().getCurrentKeySize();
+    }
+
+    /**
+     * Устанавливает режим работы AES (CBC, CTR, GCM) по умолчанию
+     */
+    public void setAesMode(AesCipher.Mode mode) throws CryptoException {
+        getAesAlgorithm();
+        algorithms.computeIfPresent("AES", (name, aes) -> ((AesCipher) aes).withMode(mode));
+    }
+
+    /**
+     * Возвращает текущий режим работы AES
+     */
+    public AesCipher.Mode getAesMode() throws CryptoException {
+        return getAesAlgorithm().getCurrentMode();
+    }
+
+    /**
+     * Возвращает AES с указанными параметрами, не меняя общую настройку менеджера.
+     * Экземпляр неизменяем и может использоваться из любого потока.
+     */
+    public AesCipher getAes(AesCipher.KeySize keySize, AesCipher.Mode mode) throws CryptoException {
+        return getAesAlgorithm().withKeySize(keySize).withMode(mode);
+    }
+
+    private AesCipher getAesAlgorithm() throws CryptoException {
         CryptoService aesAlgorithm = algorithms.get("AES");
         if (aesAlgorithm instanceof AesCipher) {
-            return ((AesCipher) aesAlgorithm).getCurrentKeySize();
-        } else {
-            throw new CryptoException("AES алгоритм не найден");
+            return (AesCipher) aesAlgorithm;
         }
+        throw new CryptoException("AES алгоритм не найден");
+    }
+
+    /**
+     * Устанавливает алфавит для шифров Цезаря и Виженера
+     */
+    public void setAlphabet(Alphabet alphabet) {
+        algorithms.computeIfPresent("CAESAR", (name, caesar) -> ((CaesarCipher) caesar).withAlphabet(alphabet));
+        algorithms.computeIfPresent("VIGENERE", (name, vigenere) -> ((VigenereCipher) vigenere).withAlphabet(alphabet));
+    }
+
+    /**
+     * Возвращает алфавит шифров Цезаря и Виженера
+     */
+    public Alphabet getAlphabet() {
+        CryptoService caesar = algorithms.get("CAESAR");
+        return caesar instanceof CaesarCipher ? ((CaesarCipher) caesar).getAlphabet() : Alphabet.LATIN;
     }
 
     /**
      * Генерирует ключ для AES
      */
     public String generateAesKey() throws CryptoException {
-        CryptoService aesAlgorithm = algorithms.get("AES");
-        if (aesAlgorithm instanceof AesCipher) {
-            return ((AesCipher) aesAlgorithm).generateKey();
-        } else {
-            throw new CryptoException("AES алгоритм не найден");
-        }
+        return getAesAlgorithm().generateKey();
     }
 
     /**
      * Генерирует читаемый ключ для AES
      */
     public String generateAesReadableKey() throws CryptoException {
-        CryptoService aesAlgorithm = algorithms.get("AES");
-        if (aesAlgorithm instanceof AesCipher) {
-            return ((AesCipher) aesAlgorithm).generateReadableKey();
-        } else {
-            throw new CryptoException("AES алгоритм не найден");
-        }
+        return getAesAlgorithm().generateReadableKey();
     }
 }
@@ -1,5 +1,9 @@
 package com.back.cryptotool.crypto;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
 /**
  * Базовый интерфейс для всех алгоритмов шифрования.
  * Определяет контракт, который должны реализовывать все шифры.
@@ -7,14 +11,80 @@ package com.back.cryptotool.crypto;
 public interface CryptoService {
 
     /**
-     * Шифрует переданные данные с использованием указанного ключа
+     * Шифрует поток байт с использованием указанного ключа.
+     * Данные обрабатываются порциями и целиком в памяти не хранятся.
+     *
+     * @param input исходные данные
+     * @param output поток, в который записываются зашифрованные данные
+     * @param key ключ шифрования
+     * @throws CryptoException если произошла ошибка во время шифрования
+     * @throws IOException если произошла ошибка чтения или записи
+     */
+    void encrypt(InputStream input, OutputStream output, String key) throws CryptoException, IOException;
+
+    /**
+     * Дешифрует поток байт с использованием указанного ключа
+     *
+     * @param input зашифрованные данные
+     * @param output поток, в который записываются расшифрованные данные
+     * @param key ключ шифрования (должен совпадать с ключом шифрования)
+     * @throws CryptoException если произошла ошибка во время дешифрования
+     * @throws IOException если произошла ошибка чтения или записи
+     */
+    void decrypt(InputStream input, OutputStream output, String key) throws CryptoException, IOException;
+
+    /**
+     * Шифрует поток байт с заранее выбранным вектором инициализации (nonce).
+     * В отличие от {@link #encrypt(InputStream, OutputStream, String)} nonce не
+     * записывается в поток - его сохраняет вызывающий код (например, в заголовке файла).
+     * Реализация по умолчанию подходит только алгоритмам без вектора инициализации
+     * ({@link #getNonceLength()} равен 0) и принимает лишь пустой nonce.
+     *
+     * @param input исходные данные
+     * @param output поток, в который записываются зашифрованные данные
+     * @param key ключ шифрования
+     * @param nonce вектор инициализации длиной {@link #getNonceLength()}
+     * @throws CryptoException если произошла ошибка во время шифрования
+     * @throws IOException если произошла ошибка чтения или записи
+     */
+    default void encrypt(InputStream input, OutputStream output, String key, byte[] nonce)
+            throws CryptoException, IOException {
+        if (nonce.length != 0 || getNonceLength() != 0) {
+            throw new CryptoException("Алгоритм " + getName() + " не поддерживает внешний вектор инициализации");
+        }
+        encrypt(input, output, key);
+    }
+
+    /**
+     * Дешифрует поток байт, зашифрованный с известным вектором инициализации
+     *
+     * @param input зашифрованные данные (без nonce)
+     * @param output поток, в который записываются расшифрованные данные
+     * @param key ключ шифрования
+     * @param nonce вектор инициализации, использованный при шифровании
+     * @throws CryptoException если произошла ошибка во время дешифрования
+     * @throws IOException если произошла ошибка чтения или записи
+     */
+    default void decrypt(InputStream input, OutputStream output, String key, byte[] nonce)
+            throws CryptoException, IOException {
+        if (nonce.length != 0 || getNonceLength() != 0) {
+            throw new CryptoException("Алгоритм " + getName() + " не поддерживает внешний вектор инициализации");
+        }
+        decrypt(input, output, key);
+    }
+
+    /**
+     * Шифрует переданные данные с использованием указанного ключа.
+     * Строка кодируется в UTF-8 и передается в потоковый метод.
      *
      * @param data исходные данные для шифрования
      * @param key ключ шифрования
-     * @return зашифрованные данные в виде строки
+     * @return зашифрованные данные в виде строки (Base64 для бинарных алгоритмов)
      * @throws CryptoException если произошла ошибка во время шифрования
      */
-    String encrypt(String data, String key) throws CryptoException;
+    default String encrypt(String data, String key) throws CryptoException {
+        return prepare(key).encrypt(data);
+    }
 
     /**
      * Дешифрует переданные данные с использованием указанного ключа
@@ -24,7 +94,54 @@ public interface CryptoService {
      * @return расшифрованные исходные данные
      * @throws CryptoException если произошла ошибка во время дешифрования
      */
-    String decrypt(String encryptedData, String key) throws CryptoException;
+    default String decrypt(String encryptedData, String key) throws CryptoException {
+        return prepare(key).decrypt(encryptedData);
+    }
+
+    /**
+     * Проверяет и разбирает ключ один раз. Возвращенный ключ можно использовать
+     * для многих операций без повторной проверки.
+     * Реализация по умолчанию только проверяет ключ и передает его в методы алгоритма.
+     *
+     * @param key ключ шифрования
+     * @return подготовленный ключ
+     * @throws CryptoException если ключ не подходит для алгоритма
+     */
+    default PreparedKey prepare(String key) throws CryptoException {
+        if (!isValidKey(key)) {
+            throw CryptoException.invalidKey(getName());
+        }
+
+        CryptoService algorithm = this;
+        return new PreparedKey() {
+            @Override
+            public CryptoService getAlgorithm() {
+                return algorithm;
+            }
+
+            @Override
+            public void encrypt(InputStream input, OutputStream output) throws CryptoException, IOException {
+                algorithm.encrypt(input, output, key);
+            }
+
+            @Override
+            public void decrypt(InputStream input, OutputStream output) throws CryptoException, IOException {
+                algorithm.decrypt(input, output, key);
+            }
+
+            @Override
+            public void encrypt(InputStream input, OutputStream output, byte[] nonce)
+                    throws CryptoException, IOException {
+                algorithm.encrypt(input, output, key, nonce);
+            }
+
+            @Override
+            public void decrypt(InputStream input, OutputStream output, byte[] nonce)
+                    throws CryptoException, IOException {
+                algorithm.decrypt(input, output, key, nonce);
+            }
+        };
+    }
 
     /**
      * Возвращает человеко-читаемое название алгоритма
@@ -48,6 +165,24 @@ public interface CryptoService {
      */
     boolean requiresBase64();
 
+    /**
+     * Возвращает длину вектора инициализации в байтах
+     *
+     * @return длина nonce или 0, если алгоритм его не использует
+     */
+    default int getNonceLength() {
+        return 0;
+    }
+
+    /**
+     * Возвращает размер ключа в битах
+     *
+     * @return размер ключа или 0, если у алгоритма нет фиксированного размера ключа
+     */
+    default int getKeyBits() {
+        return 0;
+    }
+
     /**
      * Проверяет валидность ключа для данного алгоритма
      *
@@ -0,0 +1,100 @@
+package com.back.cryptotool.crypto;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Пул прямых (off-heap) буферов для шифрования файлов через {@link java.nio.channels.FileChannel}.
+ *
+ * Канал читает в прямой буфер без промежуточной копии, а {@link javax.crypto.Cipher}
+ * шифрует из прямого буфера в прямой, поэтому данные файла не копируются в кучу Java
+ * и не нагружают сборщик мусора. Выделение прямого буфера дорогое, поэтому буферы
+ * возвращаются в пул и переиспользуются; число хранимых буферов ограничено.
+ *
+ * Свободные буферы хранятся отдельно для каждой емкости, поэтому файлы с разным
+ * размером сегмента не вытесняют буферы друг друга. Возвращенный буфер заполняется
+ * нулями: в нем были открытые данные файла.
+ */
+public final class DirectBufferPool {
+
+    private static final byte[] ZEROS = new byte[8192];
+
+    private final ConcurrentMap<Integer, Queue<ByteBuffer>> free = new ConcurrentHashMap<>();
+    private final AtomicInteger pooled = new AtomicInteger();
+    private final int maxPooled;
+
+    // Счетчики для статистики
+    private final LongAdder acquired = new LongAdder();
+    private final LongAdder allocated = new LongAdder();
+
+    /**
+     * @param maxPooled сколько свободных буферов хранить; лишние возвращенные буферы отбрасываются
+     */
+    public DirectBufferPool(int maxPooled) {
+        this.maxPooled = maxPooled;
+    }
+
+    /**
+     * Возвращает заполненный нулями буфер указанной емкости, limit равен capacity
+     */
+    public ByteBuffer acquire(int capacity) {
+        acquired.increment();
+
+        Queue<ByteBuffer> queue = free.get(capacity);
+        ByteBuffer buffer = queue == null ? null : queue.poll();
+        if (buffer == null) {
+            allocated.increment();
+            return ByteBuffer.allocateDirect(capacity);
+        }
+        pooled.decrementAndGet();
+        return buffer;
+    }
+
+    /**
+     * Затирает буфер и возвращает его в пул. После вызова буфер нельзя использовать.
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect()) {
+            return;
+        }
+
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+            buffer.put(ZEROS, 0, Math.min(ZEROS.length, buffer.remaining()));
+        }
+        buffer.clear();
+
+        if (pooled.incrementAndGet() > maxPooled) {
+            // Пул полон: буфер освободит сборщик мусора
+            pooled.decrementAndGet();
+            return;
+        }
+        free.computeIfAbsent(buffer.capacity(), capacity -> new ConcurrentLinkedQueue<>()).offer(buffer);
+    }
+
+    /**
+     * Сколько свободных буферов хранится в пуле
+     */
+    public int getPooledCount() {
+        return pooled.get();
+    }
+
+    /**
+     * Сколько раз буфер был выдан
+     */
+    public long getAcquiredCount() {
+        return acquired.sum();
+    }
+
+    /**
+     * Сколько буферов пришлось выделить (остальные выдачи - из пула)
+     */
+    public long getAllocatedCount() {
+        return allocated.sum();
+    }
+}
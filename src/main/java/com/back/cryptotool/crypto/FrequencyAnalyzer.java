@@ -0,0 +1,401 @@
+package com.back.cryptotool.crypto;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Частотный анализ шифртекстов Цезаря и Виженера для восстановления утерянного ключа.
+ *
+ * Вместо перебора ключей по всему тексту строятся гистограммы букв за один
+ * проход, а все оценки считаются по гистограммам:
+ * <ul>
+ *     <li>Цезарь - критерий хи-квадрат для всех 26 сдвигов по одной гистограмме;</li>
+ *     <li>Виженер - длина ключа по индексу совпадений столбцов, затем каждая
+ *     буква ключа как сдвиг Цезаря своего столбца.</li>
+ * </ul>
+ * Подсчет букв выполняется параллельно по частям текста. Рассчитан на
+ * английский текст: учитываются только латинские буквы.
+ *
+ * Держит собственный пул потоков, поэтому после использования анализатор нужно закрыть.
+ */
+public class FrequencyAnalyzer implements AutoCloseable {
+
+    public static final int DEFAULT_MAX_KEY_LENGTH = 20;
+
+    private static final int ALPHABET_SIZE = 26;
+
+    // Меньшие тексты быстрее посчитать в одном потоке
+    private static final int MIN_PART_SIZE = 256 * 1024;
+
+    // Индекс совпадений английского текста около 0.066, случайного - 0.038.
+    // Кратные длине ключа длины дают такой же индекс, поэтому берем самую
+    // короткую длину, индекс которой близок к лучшему.
+    private static final double KEY_LENGTH_TOLERANCE = 0.9;
+
+    // Частоты букв английского языка (A-Z)
+    private static final double[] ENGLISH_FREQUENCIES = {
+            0.08167, 0.01492, 0.02782, 0.04253, 0.12702, 0.02228, 0.02015,
+            0.06094, 0.06966, 0.00153, 0.00772, 0.04025, 0.02406, 0.06749,
+            0.07507, 0.01929, 0.00095, 0.05987, 0.06327, 0.09056, 0.02758,
+            0.00978, 0.02360, 0.00150, 0.01974, 0.00074
+    };
+
+    private final ForkJoinPool pool;
+
+    public FrequencyAnalyzer() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public FrequencyAnalyzer(int parallelism) {
+        this.pool = new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * Останавливает пул потоков. Начатый анализ дорабатывается.
+     */
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+
+    /**
+     * Подбирает сдвиг шифра Цезаря
+     *
+     * @param ciphertext зашифрованный текст
+     * @return наиболее вероятный сдвиг и оценки всех сдвигов
+     * @throws CryptoException если в тексте нет латинских букв
+     */
+    public CaesarGuess breakCaesar(String ciphertext) throws CryptoException {
+        return breakCaesar(ciphertext.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Подбирает сдвиг шифра Цезаря по байтам шифртекста (UTF-8 или ASCII)
+     */
+    public CaesarGuess breakCaesar(byte[] ciphertext) throws CryptoException {
+        long[] histogram = histogram(ciphertext);
+        if (total(histogram) == 0) {
+            throw new CryptoException("В тексте нет латинских букв для анализа");
+        }
+
+        double[] scores = new double[ALPHABET_SIZE];
+        for (int shift = 0; shift < ALPHABET_SIZE; shift++) {
+            scores[shift] = chiSquared(histogram, shift);
+        }
+
+        return new CaesarGuess(bestShift(scores), scores);
+    }
+
+    /**
+     * Подбирает ключ шифра Виженера с длиной не более {@link #DEFAULT_MAX_KEY_LENGTH}
+     */
+    public VigenereGuess breakVigenere(String ciphertext) throws CryptoException {
+        return breakVigenere(ciphertext.getBytes(StandardCharsets.UTF_8), DEFAULT_MAX_KEY_LENGTH);
+    }
+
+    /**
+     * Подбирает ключ шифра Виженера
+     *
+     * @param ciphertext зашифрованный текст (UTF-8 или ASCII)
+     * @param maxKeyLength максимальная проверяемая длина ключа
+     * @return наиболее вероятный ключ
+     * @throws CryptoException если длина ключа меньше 1 или текст слишком короткий для анализа
+     */
+    public VigenereGuess breakVigenere(byte[] ciphertext, int maxKeyLength) throws CryptoException {
+        if (maxKeyLength < 1) {
+            throw new CryptoException("Максимальная длина ключа должна быть не меньше 1: " + maxKeyLength);
+        }
+
+        byte[] letters = letters(ciphertext);
+        if (letters.length < 2 * maxKeyLength) {
+            throw new CryptoException("Слишком короткий текст для подбора ключа: " + letters.length + " букв");
+        }
+
+        // Гистограммы столбцов всех длин ключа строятся за один проход по тексту
+        long[][][] histograms = columnHistograms(letters, maxKeyLength);
+        double[] coincidence = new double[maxKeyLength + 1];
+        for (int length = 1; length <= maxKeyLength; length++) {
+            coincidence[length] = averageCoincidence(histograms[length]);
+        }
+
+        double best = 0;
+        for (int length = 1; length <= maxKeyLength; length++) {
+            best = Math.max(best, coincidence[length]);
+        }
+
+        int keyLength = 1;
+        while (coincidence[keyLength] < best * KEY_LENGTH_TOLERANCE) {
+            keyLength++;
+        }
+
+        // Каждый столбец - шифр Цезаря со своим сдвигом
+        StringBuilder key = new StringBuilder(keyLength);
+        for (long[] column : histograms[keyLength]) {
+            double[] scores = new double[ALPHABET_SIZE];
+            for (int shift = 0; shift < ALPHABET_SIZE; shift++) {
+                scores[shift] = chiSquared(column, shift);
+            }
+            key.append((char) ('A' + bestShift(scores)));
+        }
+
+        String period = shortestPeriod(key.toString());
+        return new VigenereGuess(period, coincidence[period.length()]);
+    }
+
+    /**
+     * Сокращает ключ, повторяющий более короткий ключ (например, "KEYKEY" до "KEY").
+     * Так бывает, когда кратная длина дает индекс совпадений не хуже истинной.
+     */
+    private static String shortestPeriod(String key) {
+        for (int length = 1; length < key.length(); length++) {
+            if (key.length() % length == 0 && key.substring(length).equals(key.substring(0, key.length() - length))) {
+                return key.substring(0, length);
+            }
+        }
+        return key;
+    }
+
+    /**
+     * Гистограмма латинских букв без учета регистра. Части текста считаются
+     * параллельно в собственные массивы и затем складываются.
+     */
+    private long[] histogram(byte[] data) {
+        int parts = partCount(data.length);
+        long[][] partial = new long[parts][ALPHABET_SIZE];
+
+        run(parts, part -> {
+            long[] counts = partial[part];
+            for (int i = start(data.length, parts, part), end = start(data.length, parts, part + 1); i < end; i++) {
+                int letter = letterIndex(data[i]);
+                if (letter >= 0) {
+                    counts[letter]++;
+                }
+            }
+        });
+
+        long[] histogram = new long[ALPHABET_SIZE];
+        for (long[] counts : partial) {
+            for (int letter = 0; letter < ALPHABET_SIZE; letter++) {
+                histogram[letter] += counts[letter];
+            }
+        }
+        return histogram;
+    }
+
+    /**
+     * Выписывает буквы текста подряд (0-25). Позиция каждой части в результате
+     * находится префиксной суммой количеств букв в предыдущих частях.
+     */
+    private byte[] letters(byte[] data) {
+        int parts = partCount(data.length);
+        ShiftEngine engine = ShiftEngine.getInstance();
+
+        int[] offsets = new int[parts + 1];
+        run(parts, part -> offsets[part + 1] =
+                engine.countLetters(data, start(data.length, parts, part), start(data.length, parts, part + 1)));
+        for (int part = 0; part < parts; part++) {
+            offsets[part + 1] += offsets[part];
+        }
+
+        byte[] letters = new byte[offsets[parts]];
+        run(parts, part -> {
+            int position = offsets[part];
+            for (int i = start(data.length, parts, part), end = start(data.length, parts, part + 1); i < end; i++) {
+                int letter = letterIndex(data[i]);
+                if (letter >= 0) {
+                    letters[position++] = (byte) letter;
+                }
+            }
+        });
+        return letters;
+    }
+
+    /**
+     * Гистограммы столбцов для всех длин ключа от 1 до maxKeyLength:
+     * histograms[length][column][letter]. Каждая буква читается один раз и
+     * учитывается сразу во всех длинах. Части текста считаются параллельно
+     * в собственные массивы и затем складываются.
+     */
+    private long[][][] columnHistograms(byte[] letters, int maxKeyLength) {
+        int parts = partCount(letters.length);
+        long[][][][] partial = new long[parts][][][];
+
+        run(parts, part -> {
+            int from = start(letters.length, parts, part);
+            int to = start(letters.length, parts, part + 1);
+
+            // Столбец первой буквы части для каждой длины ключа
+            long[][][] histograms = emptyHistograms(maxKeyLength);
+            int[] columns = new int[maxKeyLength + 1];
+            for (int length = 1; length <= maxKeyLength; length++) {
+                columns[length] = from % length;
+            }
+
+            for (int i = from; i < to; i++) {
+                int letter = letters[i];
+                for (int length = 1; length <= maxKeyLength; length++) {
+                    int column = columns[length];
+                    histograms[length][column][letter]++;
+                    columns[length] = column + 1 == length ? 0 : column + 1;
+                }
+            }
+            partial[part] = histograms;
+        });
+
+        long[][][] histograms = partial[0];
+        for (int part = 1; part < parts; part++) {
+            for (int length = 1; length <= maxKeyLength; length++) {
+                for (int column = 0; column < length; column++) {
+                    for (int letter = 0; letter < ALPHABET_SIZE; letter++) {
+                        histograms[length][column][letter] += partial[part][length][column][letter];
+                    }
+                }
+            }
+        }
+        return histograms;
+    }
+
+    private static long[][][] emptyHistograms(int maxKeyLength) {
+        long[][][] histograms = new long[maxKeyLength + 1][][];
+        for (int length = 1; length <= maxKeyLength; length++) {
+            histograms[length] = new long[length][ALPHABET_SIZE];
+        }
+        return histograms;
+    }
+
+    /**
+     * Средний по столбцам индекс совпадений
+     */
+    private static double averageCoincidence(long[][] columns) {
+        double sum = 0;
+        for (long[] column : columns) {
+            long total = total(column);
+            if (total < 2) {
+                continue;
+            }
+
+            double pairs = 0;
+            for (long count : column) {
+                pairs += (double) count * (count - 1);
+            }
+            sum += pairs / ((double) total * (total - 1));
+        }
+        return sum / columns.length;
+    }
+
+    /**
+     * Хи-квадрат для предположения, что текст сдвинут на shift
+     */
+    private static double chiSquared(long[] histogram, int shift) {
+        long total = total(histogram);
+        double chi = 0;
+
+        for (int plain = 0; plain < ALPHABET_SIZE; plain++) {
+            double expected = ENGLISH_FREQUENCIES[plain] * total;
+            long observed = histogram[(plain + shift) % ALPHABET_SIZE];
+            double difference = observed - expected;
+            chi += difference * difference / expected;
+        }
+        return chi;
+    }
+
+    private static int bestShift(double[] scores) {
+        int best = 0;
+        for (int shift = 1; shift < scores.length; shift++) {
+            if (scores[shift] < scores[best]) {
+                best = shift;
+            }
+        }
+        return best;
+    }
+
+    private static long total(long[] histogram) {
+        long total = 0;
+        for (long count : histogram) {
+            total += count;
+        }
+        return total;
+    }
+
+    private static int letterIndex(byte value) {
+        int lower = (value & 0xFF) | 0x20;
+        return lower >= 'a' && lower <= 'z' ? lower - 'a' : -1;
+    }
+
+    private int partCount(int length) {
+        return Math.max(1, Math.min(pool.getParallelism() * 4, length / MIN_PART_SIZE));
+    }
+
+    private static int start(int length, int parts, int part) {
+        return (int) ((long) length * part / parts);
+    }
+
+    private void run(int count, IntConsumer action) {
+        if (count == 1) {
+            action.accept(0);
+            return;
+        }
+        pool.invoke(ForkJoinTask.adapt(() -> IntStream.range(0, count).parallel().forEach(action)));
+    }
+
+    /**
+     * Результат анализа шифра Цезаря
+     */
+    public static final class CaesarGuess {
+        private final int shift;
+        private final double[] scores;
+
+        CaesarGuess(int shift, double[] scores) {
+            this.shift = shift;
+            this.scores = scores;
+        }
+
+        /**
+         * Наиболее вероятный сдвиг (ключ); 0 означает, что текст, скорее всего, не зашифрован
+         */
+        public int getShift() {
+            return shift;
+        }
+
+        /**
+         * Значение хи-квадрат для сдвига (меньше - вероятнее)
+         */
+        public double getScore(int shift) {
+            return scores[shift];
+        }
+    }
+
+    /**
+     * Результат анализа шифра Виженера
+     */
+    public static final class VigenereGuess {
+        private final String key;
+        private final double coincidence;
+
+        VigenereGuess(String key, double coincidence) {
+            this.key = key;
+            this.coincidence = coincidence;
+        }
+
+        /**
+         * Наиболее вероятный ключ (прописные латинские буквы)
+         */
+        public String getKey() {
+            return key;
+        }
+
+        public int getKeyLength() {
+            return key.length();
+        }
+
+        /**
+         * Индекс совпадений столбцов для найденной длины ключа
+         */
+        public double getCoincidence() {
+            return coincidence;
+        }
+    }
+}
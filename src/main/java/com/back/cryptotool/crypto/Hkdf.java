@@ -0,0 +1,112 @@
+package com.back.cryptotool.crypto;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+
+/**
+ * HKDF-SHA256 (RFC 5869) - быстрое получение независимых подключей из одного главного ключа.
+ *
+ * В отличие от {@link KeyDerivation} это не медленная функция для паролей: на
+ * входе уже случайный ключ, и подключ получается за одно-два вычисления HMAC.
+ * Поэтому ключ файла и ключ каждого сегмента получаются прямо в рабочем потоке.
+ * У каждого потока свой экземпляр {@link Mac}, общего изменяемого состояния нет.
+ */
+public final class Hkdf {
+
+    public static final int HASH_LENGTH = 32;
+
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+    private static final byte[] FILE_KEY_INFO = "cryptotool file key".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CHUNK_KEY_INFO = "cryptotool chunk key".getBytes(StandardCharsets.US_ASCII);
+
+    private static final ThreadLocal<Mac> MACS = new ThreadLocal<>();
+
+    private Hkdf() {
+    }
+
+    /**
+     * Шаг извлечения: псевдослучайный ключ из исходного ключа и соли
+     */
+    public static byte[] extract(byte[] salt, byte[] inputKey) throws CryptoException {
+        // Пустая соль по RFC 5869 заменяется нулями длины хеша
+        byte[] macKey = salt == null || salt.length == 0 ? new byte[HASH_LENGTH] : salt;
+        try {
+            Mac mac = mac(macKey);
+            return mac.doFinal(inputKey);
+        } catch (GeneralSecurityException e) {
+            throw new CryptoException("Ошибка получения подключа: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Шаг расширения: ключ нужной длины из псевдослучайного ключа и контекста
+     *
+     * @param prk псевдослучайный ключ (результат {@link #extract} или другой случайный ключ)
+     * @param info контекст, отличающий подключи друг от друга
+     * @param length длина результата, не больше 255 * {@link #HASH_LENGTH}
+     */
+    public static byte[] expand(byte[] prk, byte[] info, int length) throws CryptoException {
+        if (length < 1 || length > 255 * HASH_LENGTH) {
+            throw new IllegalArgumentException("Неверная длина подключа: " + length);
+        }
+
+        try {
+            Mac mac = mac(prk);
+            byte[] result = new byte[length];
+            byte[] block = new byte[0];
+
+            for (int counter = 1, offset = 0; offset < length; counter++) {
+                mac.update(block);
+                mac.update(info);
+                mac.update((byte) counter);
+                block = mac.doFinal();
+
+                int count = Math.min(block.length, length - offset);
+                System.arraycopy(block, 0, result, offset, count);
+                offset += count;
+            }
+            Arrays.fill(block, (byte) 0);
+            return result;
+
+        } catch (GeneralSecurityException e) {
+            throw new CryptoException("Ошибка получения подключа: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Ключ файла из главного ключа и идентификатора файла (например, nonce из заголовка)
+     */
+    public static byte[] fileKey(byte[] masterKey, byte[] fileId, int length) throws CryptoException {
+        byte[] prk = extract(fileId, masterKey);
+        try {
+            return expand(prk, FILE_KEY_INFO, length);
+        } finally {
+            Arrays.fill(prk, (byte) 0);
+        }
+    }
+
+    /**
+     * Ключ сегмента из ключа файла и номера сегмента. Ключ файла уже
+     * псевдослучайный, поэтому нужен только шаг расширения.
+     */
+    public static byte[] chunkKey(byte[] fileKey, long chunkIndex, int length) throws CryptoException {
+        byte[] info = Arrays.copyOf(CHUNK_KEY_INFO, CHUNK_KEY_INFO.length + Long.BYTES);
+        for (int i = 0; i < Long.BYTES; i++) {
+            info[info.length - 1 - i] = (byte) (chunkIndex >>> (8 * i));
+        }
+        return expand(fileKey, info, length);
+    }
+
+    private static Mac mac(byte[] key) throws GeneralSecurityException {
+        Mac mac = MACS.get();
+        if (mac == null) {
+            mac = Mac.getInstance(MAC_ALGORITHM);
+            MACS.set(mac);
+        }
+        mac.init(new SecretKeySpec(key, MAC_ALGORITHM));
+        return mac;
+    }
+}
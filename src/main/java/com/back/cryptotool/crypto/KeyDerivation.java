@@ -0,0 +1,333 @@
+package com.back.cryptotool.crypto;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Получение ключа шифрования из пароля (PBKDF2-HMAC-SHA256) с солью файла.
+ *
+ * PBKDF2 намеренно медленный, поэтому полученные ключи хранятся в кэше,
+ * ограниченном по размеру (LRU) и по времени жизни записи. Ключ кэша -
+ * отпечаток пароля, соль и параметры; сам пароль не хранится, а отпечаток -
+ * HMAC пароля со случайным ключом экземпляра, поэтому по нему нельзя быстро
+ * перебирать пароли.
+ *
+ * Ключ из пароля - ключ обертки (KEK), а не ключ данных: уникальность каждого
+ * файла обеспечивают его случайный ключ данных и nonce. Поэтому при шифровании
+ * соль выбирается один раз на пароль в пределах времени жизни записи (сеанс),
+ * и пакет файлов с одним паролем запускает PBKDF2 один раз, а не на каждый файл.
+ * Новый сеанс - новая соль. Расшифрование берет соль из заголовка и тоже
+ * использует кэш, поэтому повторное открытие файла (или файлов одного сеанса)
+ * не запускает PBKDF2 заново. Ключи вытесненных и устаревших записей затираются.
+ */
+public final class KeyDerivation {
+
+    public static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    public static final int SALT_LENGTH = 16;
+    public static final int DEFAULT_ITERATIONS = 600_000;
+
+    private static final int DEFAULT_MAX_ENTRIES = 64;
+    private static final Duration DEFAULT_TIME_TO_LIVE = Duration.ofMinutes(10);
+    private static final KeyDerivation INSTANCE =
+            new KeyDerivation(DEFAULT_ITERATIONS, DEFAULT_MAX_ENTRIES, DEFAULT_TIME_TO_LIVE);
+
+    private final int iterations;
+    private final int maxEntries;
+    private final long timeToLiveNanos;
+    private final byte[] fingerprintKey;
+
+    // Полученные ключи по паролю, соли и параметрам (LRU)
+    private final Map<CacheKey, Entry> keys;
+
+    // Соль сеанса шифрования по паролю и длине ключа (LRU)
+    private final Map<CacheKey, SessionSalt> sessionSalts;
+
+    /**
+     * @param iterations число итераций PBKDF2 для новых ключей
+     * @param maxEntries максимальное число ключей в кэше
+     * @param timeToLive время жизни ключа в кэше с момента получения
+     */
+    public KeyDerivation(int iterations, int maxEntries, Duration timeToLive) {
+        if (iterations < 1 || maxEntries < 1 || timeToLive.isNegative()) {
+            throw new IllegalArgumentException("Неверные параметры получения ключа");
+        }
+        this.iterations = iterations;
+        this.maxEntries = maxEntries;
+        this.timeToLiveNanos = timeToLive.toNanos();
+        this.fingerprintKey = NonceGenerator.getInstance().nextBytes(32);
+        this.keys = new LinkedHashMap<>(maxEntries, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<CacheKey, Entry> eldest) {
+                if (size() <= KeyDerivation.this.maxEntries) {
+                    return false;
+                }
+                eldest.getValue().clear();
+                return true;
+            }
+        };
+        this.sessionSalts = new LinkedHashMap<>(maxEntries, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<CacheKey, SessionSalt> eldest) {
+                return size() > KeyDerivation.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Возвращает общий экземпляр с параметрами по умолчанию
+     */
+    public static KeyDerivation getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Получает ключ обертки для шифрования файла с солью текущего сеанса этого
+     * пароля. Первый вызов сеанса выбирает случайную соль и запускает PBKDF2,
+     * следующие берут ключ из кэша.
+     *
+     * @param password пароль пользователя любой длины
+     * @param keyLength длина ключа в байтах
+     * @return ключ вместе с солью и числом итераций, которые нужно сохранить в заголовке
+     */
+    public DerivedKey deriveForEncryption(String password, int keyLength) throws CryptoException {
+        CacheKey sessionKey = new CacheKey(fingerprint(password), new byte[0], iterations, keyLength);
+        byte[] salt;
+
+        synchronized (this) {
+            SessionSalt session = sessionSalts.get(sessionKey);
+            if (session == null || session.isExpired()) {
+                session = new SessionSalt(NonceGenerator.getInstance().nextBytes(SALT_LENGTH));
+                sessionSalts.put(sessionKey, session);
+            }
+            salt = session.salt;
+        }
+        return new DerivedKey(derive(password, salt, iterations, keyLength), salt, iterations);
+    }
+
+    /**
+     * Получает ключ по соли и числу итераций из заголовка файла
+     *
+     * @return копия ключа, вызывающий код может ее затереть
+     */
+    public byte[] derive(String password, byte[] salt, int iterations, int keyLength) throws CryptoException {
+        CacheKey cacheKey = new CacheKey(fingerprint(password), salt.clone(), iterations, keyLength);
+        Entry entry;
+
+        synchronized (this) {
+            entry = keys.get(cacheKey);
+            if (entry == null || entry.isExpired()) {
+                if (entry != null) {
+                    entry.clear();
+                }
+                entry = new Entry();
+                keys.put(cacheKey, entry);
+            }
+        }
+        // PBKDF2 выполняется вне общей блокировки: ключи с другой солью получаются параллельно
+        return entry.get(password, cacheKey);
+    }
+
+    /**
+     * Удаляет все полученные ключи из памяти
+     */
+    public synchronized void clearCache() {
+        for (Entry entry : keys.values()) {
+            entry.clear();
+        }
+        keys.clear();
+        sessionSalts.clear();
+    }
+
+    /**
+     * Удаляет из кэша ключи с истекшим временем жизни
+     */
+    public synchronized void evictExpired() {
+        Iterator<Entry> entries = keys.values().iterator();
+        while (entries.hasNext()) {
+            Entry entry = entries.next();
+            if (entry.isExpired()) {
+                entry.clear();
+                entries.remove();
+            }
+        }
+        sessionSalts.values().removeIf(SessionSalt::isExpired);
+    }
+
+    /**
+     * Число ключей в кэше
+     */
+    public synchronized int getCacheSize() {
+        return keys.size();
+    }
+
+    public int getIterations() {
+        return iterations;
+    }
+
+    private Fingerprint fingerprint(String password) throws CryptoException {
+        requirePassword(password);
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(fingerprintKey, "HmacSHA256"));
+            return new Fingerprint(mac.doFinal(password.getBytes(StandardCharsets.UTF_8)));
+        } catch (GeneralSecurityException e) {
+            throw new CryptoException("Ошибка получения ключа: " + e.getMessage(), e);
+        }
+    }
+
+    private static void requirePassword(String password) throws CryptoException {
+        if (password == null || password.isEmpty()) {
+            throw new CryptoException("Пароль не может быть пустым");
+        }
+    }
+
+    private static byte[] pbkdf2(String password, byte[] salt, int iterations, int keyLength) throws CryptoException {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, keyLength * 8);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new CryptoException("Ошибка получения ключа: " + e.getMessage(), e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    /**
+     * Ключ, полученный для шифрования, и параметры его получения
+     */
+    public static final class DerivedKey {
+        private final byte[] key;
+        private final byte[] salt;
+        private final int iterations;
+
+        DerivedKey(byte[] key, byte[] salt, int iterations) {
+            this.key = key;
+            this.salt = salt.clone();
+            this.iterations = iterations;
+        }
+
+        /**
+         * Копия ключа, вызывающий код может ее затереть
+         */
+        public byte[] getKey() {
+            return key.clone();
+        }
+
+        public byte[] getSalt() {
+            return salt.clone();
+        }
+
+        public int getIterations() {
+            return iterations;
+        }
+    }
+
+    /**
+     * Запись кэша: ключ получается один раз, параллельные запросы того же ключа ждут.
+     * Запись, удаленная из кэша, больше не хранит ключ.
+     */
+    private final class Entry {
+        private final long created = System.nanoTime();
+        private byte[] key;
+        private boolean cleared;
+
+        synchronized byte[] get(String password, CacheKey cacheKey) throws CryptoException {
+            if (key != null) {
+                return key.clone();
+            }
+
+            byte[] derived = pbkdf2(password, cacheKey.salt, cacheKey.iterations, cacheKey.keyLength);
+            if (!cleared) {
+                key = derived.clone();
+            }
+            return derived;
+        }
+
+        boolean isExpired() {
+            return System.nanoTime() - created > timeToLiveNanos;
+        }
+
+        synchronized void clear() {
+            if (key != null) {
+                Arrays.fill(key, (byte) 0);
+                key = null;
+            }
+            cleared = true;
+        }
+    }
+
+    /**
+     * Соль сеанса шифрования: живет столько же, сколько запись кэша ключей
+     */
+    private final class SessionSalt {
+        private final long created = System.nanoTime();
+        private final byte[] salt;
+
+        SessionSalt(byte[] salt) {
+            this.salt = salt;
+        }
+
+        boolean isExpired() {
+            return System.nanoTime() - created > timeToLiveNanos;
+        }
+    }
+
+    /**
+     * Отпечаток пароля - сравнение по содержимому массива
+     */
+    private static final class Fingerprint {
+        private final byte[] value;
+
+        Fingerprint(byte[] value) {
+            this.value = value;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Fingerprint && Arrays.equals(value, ((Fingerprint) other).value);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(value);
+        }
+    }
+
+    private static final class CacheKey {
+        private final Fingerprint fingerprint;
+        private final byte[] salt;
+        private final int iterations;
+        private final int keyLength;
+
+        CacheKey(Fingerprint fingerprint, byte[] salt, int iterations, int keyLength) {
+            this.fingerprint = fingerprint;
+            this.salt = salt;
+            this.iterations = iterations;
+            this.keyLength = keyLength;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof CacheKey)) {
+                return false;
+            }
+            CacheKey that = (CacheKey) other;
+            return iterations == that.iterations && keyLength == that.keyLength
+                    && fingerprint.equals(that.fingerprint) && Arrays.equals(salt, that.salt);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * (31 * fingerprint.hashCode() + Arrays.hashCode(salt)) + iterations) + keyLength;
+        }
+    }
+}
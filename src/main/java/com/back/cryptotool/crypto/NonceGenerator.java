@@ -0,0 +1,134 @@
+package com.back.cryptotool.crypto;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Общий генератор случайных байт для IV, nonce и ключей.
+ *
+ * У каждого потока свой экземпляр DRBG, поэтому потоки не конкурируют за
+ * общий источник энтропии. Случайные байты запрашиваются у DRBG пачками
+ * по {@link #BATCH_SIZE} байт и выдаются из буфера, а не по 16 байт на вызов.
+ */
+public final class NonceGenerator {
+
+    private static final int BATCH_SIZE = 4096;
+    private static final NonceGenerator INSTANCE = new NonceGenerator();
+
+    private final ThreadLocal<Batch> batches = ThreadLocal.withInitial(Batch::new);
+
+    // Счетчики для статистики
+    private final LongAdder bytesServed = new LongAdder();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder refills = new LongAdder();
+
+    private NonceGenerator() {
+    }
+
+    /**
+     * Возвращает общий экземпляр генератора
+     */
+    public static NonceGenerator getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Заполняет массив случайными байтами
+     */
+    public void nextBytes(byte[] target) {
+        Batch batch = batches.get();
+        int offset = 0;
+
+        while (offset < target.length) {
+            if (batch.position == BATCH_SIZE) {
+                batch.refill();
+                refills.increment();
+            }
+            int count = Math.min(target.length - offset, BATCH_SIZE - batch.position);
+            System.arraycopy(batch.buffer, batch.position, target, offset, count);
+
+            // Выданные байты (в том числе ключи) не оставляем в буфере
+            Arrays.fill(batch.buffer, batch.position, batch.position + count, (byte) 0);
+            batch.position += count;
+            offset += count;
+        }
+
+        requests.increment();
+        bytesServed.add(target.length);
+    }
+
+    /**
+     * Возвращает новый массив случайных байт указанной длины
+     */
+    public byte[] nextBytes(int length) {
+        byte[] result = new byte[length];
+        nextBytes(result);
+        return result;
+    }
+
+    /**
+     * Возвращает равномерно распределенное случайное число от 0 (включительно) до bound
+     */
+    public int nextInt(int bound) {
+        if (bound <= 0 || bound > 256) {
+            throw new IllegalArgumentException("Граница должна быть от 1 до 256: " + bound);
+        }
+
+        // Отбрасываем значения из неполного последнего интервала, чтобы не было смещения
+        int limit = 256 - 256 % bound;
+        byte[] value = new byte[1];
+        int candidate;
+        do {
+            nextBytes(value);
+            candidate = value[0] & 0xFF;
+        } while (candidate >= limit);
+
+        return candidate % bound;
+    }
+
+    /**
+     * Возвращает количество выданных случайных байт
+     */
+    public long getBytesServed() {
+        return bytesServed.sum();
+    }
+
+    /**
+     * Возвращает количество запросов к генератору
+     */
+    public long getRequestCount() {
+        return requests.sum();
+    }
+
+    /**
+     * Возвращает количество обращений к DRBG за новой пачкой байт
+     */
+    public long getRefillCount() {
+        return refills.sum();
+    }
+
+    /**
+     * Буфер случайных байт одного потока
+     */
+    private static final class Batch {
+        private final SecureRandom random = createRandom();
+        private final byte[] buffer = new byte[BATCH_SIZE];
+        private int position = BATCH_SIZE; // пустой буфер заполняется при первом запросе
+
+        void refill() {
+            random.nextBytes(buffer);
+            position = 0;
+        }
+
+        private static SecureRandom createRandom() {
+            try {
+                return SecureRandom.getInstance("DRBG");
+            } catch (NoSuchAlgorithmException e) {
+                // DRBG есть во всех JDK начиная с 9, но на всякий случай берем стандартный генератор
+                return new SecureRandom();
+            }
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package com.back.cryptotool.crypto;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.IntStream;
+
+/**
+ * Параллельный движок сдвига для больших текстов.
+ *
+ * Позиция в ключе Виженера растет только на буквах, поэтому участок нельзя
+ * зашифровать, не зная, сколько букв было до него. Данные делятся на части,
+ * буквы в частях считаются параллельно, префиксная сумма этих количеств дает
+ * начальную позицию ключа для каждой части, после чего части шифруются
+ * независимо. Результат совпадает с последовательным шифрованием байт в байт.
+ *
+ * Сама обработка частей выполняется базовым движком (скалярным или векторным).
+ * Части выполняются в общем пуле {@link ForkJoinPool#commonPool()}: его потоки
+ * создаются по требованию и не требуют остановки.
+ */
+final class ParallelShiftEngine implements ShiftEngine {
+
+    // Меньшие участки выгоднее обработать в одном потоке
+    static final int PARALLEL_THRESHOLD = 1024 * 1024;
+    private static final int MIN_PART_SIZE = 256 * 1024;
+
+    // Порция чтения из потока растет от начальной до наибольшей, пока поток
+    // заполняет ее целиком: короткие потоки не выделяют больших буферов,
+    // а порции длинных достаточно велики, чтобы их можно было разделить
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_STREAM_BUFFER_SIZE = 8 * 1024 * 1024;
+
+    private static final ParallelShiftEngine INSTANCE =
+            new ParallelShiftEngine(ShiftEngine.getInstance(), ForkJoinPool.commonPool());
+
+    private final ShiftEngine engine;
+    private final ForkJoinPool pool;
+
+    ParallelShiftEngine(ShiftEngine engine, ForkJoinPool pool) {
+        this.engine = engine;
+        this.pool = pool;
+    }
+
+    /**
+     * Возвращает общий параллельный движок поверх движка платформы
+     */
+    static ParallelShiftEngine getInstance() {
+        return INSTANCE;
+    }
+
+    @Override
+    public int transform(byte[] data, int from, int to, ShiftKey key, int keyIndex) {
+        int parts = partCount(to - from);
+        if (parts == 1) {
+            return engine.transform(data, from, to, key, keyIndex);
+        }
+
+        int[] bounds = bounds(from, to, parts);
+        int[] starts = keyStarts(key, keyIndex, parts, part -> engine.countLetters(data, bounds[part], bounds[part + 1]));
+
+        run(parts, part -> engine.transform(data, bounds[part], bounds[part + 1], key, starts[part]));
+        return starts[parts];
+    }
+
+    @Override
+    public int transform(char[] data, int from, int to, ShiftKey key, int keyIndex) {
+        int parts = partCount(to - from);
+        if (parts == 1) {
+            return engine.transform(data, from, to, key, keyIndex);
+        }
+
+        int[] bounds = bounds(from, to, parts);
+        int[] starts = keyStarts(key, keyIndex, parts, part -> engine.countLetters(data, bounds[part], bounds[part + 1], key.alphabet()));
+
+        run(parts, part -> engine.transform(data, bounds[part], bounds[part + 1], key, starts[part]));
+        return starts[parts];
+    }
+
+    @Override
+    public int countLetters(byte[] data, int from, int to) {
+        return engine.countLetters(data, from, to);
+    }
+
+    @Override
+    public int countLetters(char[] data, int from, int to, Alphabet alphabet) {
+        return engine.countLetters(data, from, to, alphabet);
+    }
+
+    /**
+     * Читает поток крупными порциями, каждая порция обрабатывается параллельно
+     */
+    @Override
+    public void transform(InputStream input, OutputStream output, ShiftKey key) throws IOException {
+        if (!key.isLatin()) {
+            ShiftEngine.super.transform(input, output, key);
+            return;
+        }
+
+        byte[] buffer = new byte[STREAM_BUFFER_SIZE];
+        int keyIndex = 0;
+        int read;
+
+        while ((read = input.readNBytes(buffer, 0, buffer.length)) > 0) {
+            keyIndex = transform(buffer, 0, read, key, keyIndex);
+            output.write(buffer, 0, read);
+            if (read == buffer.length && buffer.length < MAX_STREAM_BUFFER_SIZE) {
+                buffer = new byte[buffer.length * 2];
+            }
+        }
+    }
+
+    /**
+     * Читает текст крупными порциями, каждая порция обрабатывается параллельно
+     */
+    @Override
+    public int transform(Reader input, Writer output, ShiftKey key, int keyIndex) throws IOException {
+        char[] buffer = new char[STREAM_BUFFER_SIZE / 2];
+        int read;
+
+        while ((read = readFully(input, buffer)) > 0) {
+            keyIndex = transform(buffer, 0, read, key, keyIndex);
+            output.write(buffer, 0, read);
+            if (read == buffer.length && buffer.length < MAX_STREAM_BUFFER_SIZE / 2) {
+                buffer = new char[buffer.length * 2];
+            }
+        }
+        return keyIndex;
+    }
+
+    @Override
+    public String getName() {
+        return engine.getName() + ", параллельный (" + pool.getParallelism() + ")";
+    }
+
+    private static int readFully(Reader input, char[] buffer) throws IOException {
+        int total = 0;
+        int read;
+        while (total < buffer.length && (read = input.read(buffer, total, buffer.length - total)) != -1) {
+            total += read;
+        }
+        return total;
+    }
+
+    private int partCount(int length) {
+        if (length < PARALLEL_THRESHOLD || pool.getParallelism() == 1) {
+            return 1;
+        }
+        // Несколько частей на поток сглаживают неравномерную загрузку
+        return Math.max(1, Math.min(pool.getParallelism() * 4, length / MIN_PART_SIZE));
+    }
+
+    private static int[] bounds(int from, int to, int parts) {
+        int[] bounds = new int[parts + 1];
+        long length = to - from;
+        for (int part = 0; part <= parts; part++) {
+            bounds[part] = from + (int) (length * part / parts);
+        }
+        return bounds;
+    }
+
+    /**
+     * Считает позицию ключа в начале каждой части: параллельный подсчет букв
+     * и последовательная префиксная сумма. Последний элемент - позиция после всех частей.
+     */
+    private int[] keyStarts(ShiftKey key, int keyIndex, int parts, PartFunction letters) {
+        int[] starts = new int[parts + 1];
+
+        // Для шифра Цезаря позиция всегда нулевая, считать буквы не нужно
+        if (key.length() == 1) {
+            return starts;
+        }
+
+        int[] counts = new int[parts];
+        run(parts, part -> counts[part] = letters.apply(part));
+
+        starts[0] = keyIndex;
+        for (int part = 0; part < parts; part++) {
+            starts[part + 1] = (int) ((starts[part] + (long) counts[part]) % key.length());
+        }
+        return starts;
+    }
+
+    private void run(int parts, PartFunction action) {
+        pool.invoke(ForkJoinTask.adapt(() -> IntStream.range(0, parts).parallel().forEach(action::apply)));
+    }
+
+    @FunctionalInterface
+    private interface PartFunction {
+        int apply(int part);
+    }
+}
@@ -0,0 +1,167 @@
+package com.back.cryptotool.crypto;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Ключ, заранее проверенный и подготовленный для конкретного алгоритма.
+ *
+ * Проверка и разбор ключа (сдвиг Цезаря, сдвиги Виженера, байты ключа AES)
+ * выполняются один раз в {@link CryptoService#prepare(String)}, после чего
+ * ключ можно использовать для любого количества операций. Реализации
+ * неизменяемы и могут использоваться из нескольких потоков.
+ */
+public interface PreparedKey {
+
+    /**
+     * Возвращает алгоритм, для которого подготовлен ключ
+     */
+    CryptoService getAlgorithm();
+
+    /**
+     * Шифрует поток байт
+     *
+     * @param input исходные данные
+     * @param output поток, в который записываются зашифрованные данные
+     * @throws CryptoException если произошла ошибка во время шифрования
+     * @throws IOException если произошла ошибка чтения или записи
+     */
+    void encrypt(InputStream input, OutputStream output) throws CryptoException, IOException;
+
+    /**
+     * Дешифрует поток байт
+     *
+     * @param input зашифрованные данные
+     * @param output поток, в который записываются расшифрованные данные
+     * @throws CryptoException если произошла ошибка во время дешифрования
+     * @throws IOException если произошла ошибка чтения или записи
+     */
+    void decrypt(InputStream input, OutputStream output) throws CryptoException, IOException;
+
+    /**
+     * Шифрует поток с заранее выбранным вектором инициализации (nonce не записывается в поток).
+     * Реализация по умолчанию подходит только алгоритмам без вектора инициализации
+     * и принимает лишь пустой nonce; остальные алгоритмы должны переопределить метод.
+     *
+     * @see CryptoService#encrypt(InputStream, OutputStream, String, byte[])
+     */
+    default void encrypt(InputStream input, OutputStream output, byte[] nonce) throws CryptoException, IOException {
+        checkNoNonce(nonce);
+        encrypt(input, output);
+    }
+
+    /**
+     * Дешифрует поток, зашифрованный с известным вектором инициализации.
+     * Реализация по умолчанию принимает только пустой nonce.
+     *
+     * @see CryptoService#decrypt(InputStream, OutputStream, String, byte[])
+     */
+    default void decrypt(InputStream input, OutputStream output, byte[] nonce) throws CryptoException, IOException {
+        checkNoNonce(nonce);
+        decrypt(input, output);
+    }
+
+    /**
+     * Шифрует массив байт целиком. Результат совпадает с потоковым
+     * {@link #encrypt(InputStream, OutputStream)}; реализации могут
+     * обрабатывать массив напрямую, без потоков и промежуточных буферов.
+     *
+     * @param data исходные данные
+     * @return зашифрованные данные
+     * @throws CryptoException если произошла ошибка во время шифрования
+     */
+    default byte[] encrypt(byte[] data) throws CryptoException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream(data.length + 64);
+
+        try {
+            encrypt(new ByteArrayInputStream(data), output);
+        } catch (IOException e) {
+            throw new CryptoException("Ошибка шифрования: " + e.getMessage(), e);
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * Дешифрует массив байт, полученный из {@link #encrypt(byte[])}
+     *
+     * @param data зашифрованные данные
+     * @return расшифрованные данные
+     * @throws CryptoException если произошла ошибка во время дешифрования
+     */
+    default byte[] decrypt(byte[] data) throws CryptoException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream(data.length);
+
+        try {
+            decrypt(new ByteArrayInputStream(data), output);
+        } catch (IOException e) {
+            throw new CryptoException("Ошибка дешифрования: " + e.getMessage(), e);
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * Шифрует строку. Строка кодируется в UTF-8, результат бинарных
+     * алгоритмов возвращается в Base64.
+     *
+     * @param data исходные данные для шифрования
+     * @return зашифрованные данные
+     * @throws CryptoException если произошла ошибка во время шифрования
+     */
+    default String encrypt(String data) throws CryptoException {
+        byte[] bytes = data.getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream output = new ByteArrayOutputStream(bytes.length + 64);
+
+        try {
+            encrypt(new ByteArrayInputStream(bytes), output);
+        } catch (IOException e) {
+            throw new CryptoException("Ошибка шифрования: " + e.getMessage(), e);
+        }
+
+        if (getAlgorithm().requiresBase64()) {
+            return Base64.getEncoder().encodeToString(output.toByteArray());
+        }
+        return output.toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Дешифрует строку, полученную из {@link #encrypt(String)}
+     *
+     * @param encryptedData зашифрованные данные
+     * @return расшифрованные исходные данные
+     * @throws CryptoException если произошла ошибка во время дешифрования
+     */
+    default String decrypt(String encryptedData) throws CryptoException {
+        byte[] bytes;
+        if (getAlgorithm().requiresBase64()) {
+            try {
+                bytes = Base64.getDecoder().decode(encryptedData);
+            } catch (IllegalArgumentException e) {
+                throw CryptoException.corruptedData();
+            }
+        } else {
+            bytes = encryptedData.getBytes(StandardCharsets.UTF_8);
+        }
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream(bytes.length);
+
+        try {
+            decrypt(new ByteArrayInputStream(bytes), output);
+        } catch (IOException e) {
+            throw new CryptoException("Ошибка дешифрования: " + e.getMessage(), e);
+        }
+
+        return output.toString(StandardCharsets.UTF_8);
+    }
+
+    private void checkNoNonce(byte[] nonce) throws CryptoException {
+        if (nonce.length != 0 || getAlgorithm().getNonceLength() != 0) {
+            throw new CryptoException("Алгоритм " + getAlgorithm().getName()
+                    + " не поддерживает внешний вектор инициализации");
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.back.cryptotool.crypto;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+
+/**
+ * Подготовленный ключ шифра, работающего с текстом (Цезарь, Виженер).
+ *
+ * Кроме байтовых потоков умеет обрабатывать текст через {@link Reader}/{@link Writer}
+ * и выдавать {@link TextTransformer}, который хранит позицию в ключе между
+ * порциями. Текст любого размера обрабатывается за один проход с буфером
+ * фиксированного размера, без загрузки в строку.
+ */
+public interface PreparedTextKey extends PreparedKey {
+
+    /**
+     * Шифрует текст из input и записывает результат в output.
+     * Потоки не закрываются.
+     */
+    void encrypt(Reader input, Writer output) throws IOException;
+
+    /**
+     * Дешифрует текст из input и записывает результат в output.
+     * Потоки не закрываются.
+     */
+    void decrypt(Reader input, Writer output) throws IOException;
+
+    /**
+     * Возвращает новый шифратор с позицией в начале ключа
+     */
+    TextTransformer encryptor();
+
+    /**
+     * Возвращает новый дешифратор с позицией в начале ключа
+     */
+    TextTransformer decryptor();
+}
@@ -0,0 +1,108 @@
+package com.back.cryptotool.crypto;
+
+/**
+ * Скалярный движок сдвига: одно обращение к таблице подстановки на символ
+ */
+final class ScalarShiftEngine implements ShiftEngine {
+
+    @Override
+    public int transform(byte[] data, int from, int to, ShiftKey key, int keyIndex) {
+        return shift(data, from, to, key, keyIndex);
+    }
+
+    @Override
+    public int transform(char[] data, int from, int to, ShiftKey key, int keyIndex) {
+        return shift(data, from, to, key, keyIndex);
+    }
+
+    @Override
+    public int countLetters(byte[] data, int from, int to) {
+        return count(data, from, to);
+    }
+
+    @Override
+    public int countLetters(char[] data, int from, int to, Alphabet alphabet) {
+        return count(data, from, to, alphabet);
+    }
+
+    @Override
+    public String getName() {
+        return "Скалярный";
+    }
+
+    /**
+     * Обрабатывает участок массива байт (используется и векторным движком для хвоста)
+     */
+    static int shift(byte[] data, int from, int to, ShiftKey key, int keyIndex) {
+        if (key.length() == 1) {
+            // Шифр Цезаря: позицию в ключе отслеживать не нужно
+            byte[] table = key.table(0);
+            for (int i = from; i < to; i++) {
+                data[i] = table[data[i] & 0xFF];
+            }
+            return 0;
+        }
+
+        for (int i = from; i < to; i++) {
+            int character = data[i];
+            data[i] = key.table(keyIndex)[character & 0xFF];
+
+            // Переходим к следующему символу ключа (только для букв)
+            keyIndex += ShiftTables.letter(character);
+            if (keyIndex == key.length()) {
+                keyIndex = 0;
+            }
+        }
+        return keyIndex;
+    }
+
+    /**
+     * Обрабатывает участок массива символов по таблицам алфавита ключа.
+     * Символы вне алфавита не меняются и не сдвигают позицию в ключе.
+     */
+    static int shift(char[] data, int from, int to, ShiftKey key, int keyIndex) {
+        Alphabet alphabet = key.alphabet();
+
+        if (key.length() == 1) {
+            char[] table = key.charTable(0);
+            for (int i = from; i < to; i++) {
+                char character = data[i];
+                if (character < table.length) {
+                    data[i] = table[character];
+                }
+            }
+            return 0;
+        }
+
+        for (int i = from; i < to; i++) {
+            char character = data[i];
+            char[] table = key.charTable(keyIndex);
+            if (character >= table.length) {
+                continue;
+            }
+
+            data[i] = table[character];
+            keyIndex += alphabet.letter(character);
+            if (keyIndex == key.length()) {
+                keyIndex = 0;
+            }
+        }
+        return keyIndex;
+    }
+
+    static int count(byte[] data, int from, int to) {
+        int letters = 0;
+        for (int i = from; i < to; i++) {
+            letters += ShiftTables.letter(data[i]);
+        }
+        return letters;
+    }
+
+    static int count(char[] data, int from, int to, Alphabet alphabet) {
+        int letters = 0;
+        for (int i = from; i < to; i++) {
+            letters += alphabet.letter(data[i]);
+        }
+        return letters;
+    }
+}
@@ -0,0 +1,138 @@
+package com.back.cryptotool.crypto;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+
+/**
+ * Движок сдвига букв для шифров Цезаря и Виженера.
+ *
+ * Есть две реализации: скалярная по таблицам подстановки и векторная на
+ * Vector API (jdk.incubator.vector). Векторная выбирается автоматически,
+ * если модуль подключен при запуске (--add-modules jdk.incubator.vector).
+ * Обе реализации дают одинаковый результат.
+ */
+interface ShiftEngine {
+
+    /**
+     * Сдвигает латинские буквы в участке массива байт (только для латинского алфавита).
+     * Позиция в ключе увеличивается только на буквах, остальные байты не меняются.
+     *
+     * @param data данные
+     * @param from начало участка (включительно)
+     * @param to конец участка (не включительно)
+     * @param key ключ
+     * @param keyIndex позиция в ключе для первого байта участка
+     * @return позиция в ключе после обработки
+     */
+    int transform(byte[] data, int from, int to, ShiftKey key, int keyIndex);
+
+    /**
+     * Сдвигает буквы алфавита ключа в участке массива символов
+     *
+     * @see #transform(byte[], int, int, ShiftKey, int)
+     */
+    int transform(char[] data, int from, int to, ShiftKey key, int keyIndex);
+
+    /**
+     * Считает латинские буквы в участке массива байт
+     */
+    int countLetters(byte[] data, int from, int to);
+
+    /**
+     * Считает буквы алфавита в участке массива символов
+     */
+    int countLetters(char[] data, int from, int to, Alphabet alphabet);
+
+    /**
+     * Сдвигает буквы в потоке порциями по 8 КБ. Позиция в ключе переходит между порциями.
+     * Латиница обрабатывается побайтно: остальные байты (в том числе многобайтовые
+     * символы UTF-8) копируются без изменений. В других алфавитах меняются только
+     * буквы, записанные в UTF-8, остальные байты тоже копируются без изменений
+     * ({@link Utf8ShiftStream}), поэтому поток в любой кодировке восстанавливается точно.
+     */
+    default void transform(InputStream input, OutputStream output, ShiftKey key) throws IOException {
+        if (!key.isLatin()) {
+            Utf8ShiftStream.transform(this, input, output, key);
+            return;
+        }
+
+        byte[] buffer = new byte[8192];
+        int keyIndex = 0;
+        int read;
+
+        while ((read = input.read(buffer)) != -1) {
+            keyIndex = transform(buffer, 0, read, key, keyIndex);
+            output.write(buffer, 0, read);
+        }
+    }
+
+    /**
+     * Сдвигает буквы в тексте порциями по 8 КБ символов
+     *
+     * @param keyIndex позиция в ключе для первого символа
+     * @return позиция в ключе после последнего символа
+     */
+    default int transform(Reader input, Writer output, ShiftKey key, int keyIndex) throws IOException {
+        char[] buffer = new char[8192];
+        int read;
+
+        while ((read = input.read(buffer)) != -1) {
+            keyIndex = transform(buffer, 0, read, key, keyIndex);
+            output.write(buffer, 0, read);
+        }
+        return keyIndex;
+    }
+
+    /**
+     * Сдвигает буквы строки
+     */
+    default String transform(String data, ShiftKey key) {
+        char[] chars = new char[data.length()];
+        data.getChars(0, chars.length, chars, 0);
+        transform(chars, 0, chars.length, key, 0);
+        return new String(chars);
+    }
+
+    /**
+     * Возвращает название реализации
+     */
+    String getName();
+
+    /**
+     * Возвращает движок, выбранный для текущей платформы
+     */
+    static ShiftEngine getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    final class Holder {
+
+        // Позволяет принудительно отключить векторный путь: -Dcryptotool.vector=false
+        private static final String VECTOR_PROPERTY = "cryptotool.vector";
+        private static final String VECTOR_MODULE = "jdk.incubator.vector";
+
+        private static final ShiftEngine INSTANCE = select();
+
+        private Holder() {
+        }
+
+        private static ShiftEngine select() {
+            boolean enabled = Boolean.parseBoolean(System.getProperty(VECTOR_PROPERTY, "true"));
+
+            if (enabled && ModuleLayer.boot().findModule(VECTOR_MODULE).isPresent()) {
+                try {
+                    // Загружаем по имени, чтобы без модуля класс даже не разрешался
+                    return (ShiftEngine) Class.forName("com.back.cryptotool.crypto.VectorShiftEngine")
+                            .getDeclaredConstructor()
+                            .newInstance();
+                } catch (ReflectiveOperationException | LinkageError | IllegalStateException e) {
+                    // Векторы недоступны или слишком короткие - работаем скалярно
+                }
+            }
+            return new ScalarShiftEngine();
+        }
+    }
+}
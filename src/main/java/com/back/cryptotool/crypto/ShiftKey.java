@@ -0,0 +1,121 @@
+package com.back.cryptotool.crypto;
+
+/**
+ * Подготовленная последовательность сдвигов для шифров Цезаря и Виженера.
+ * Шифр Цезаря - частный случай с ключом из одного сдвига.
+ *
+ * Хранит данные сразу для обоих движков {@link ShiftEngine}: таблицы
+ * подстановки для скалярного пути и повторенные сдвиги, из которых
+ * векторный путь загружает сдвиги сразу для всех полос вектора.
+ * Побайтовые таблицы и сдвиги для векторов есть только у латинского алфавита.
+ */
+final class ShiftKey {
+
+    // Максимальное число полос в векторе (512 бит по 8 бит)
+    private static final int MAX_LANES = 64;
+
+    private final Alphabet alphabet;
+    private final int[] shifts;
+    private final char[][] charTables;
+    private final byte[][] tables;
+    private final byte[] laneShifts;
+    private final short[] charLaneShifts;
+
+    /**
+     * @param shifts сдвиги для каждой позиции ключа (приводятся к размеру алфавита)
+     * @param alphabet алфавит
+     */
+    ShiftKey(int[] shifts, Alphabet alphabet) {
+        this.alphabet = alphabet;
+        this.shifts = new int[shifts.length];
+        this.charTables = new char[shifts.length][];
+
+        for (int i = 0; i < shifts.length; i++) {
+            this.shifts[i] = Math.floorMod(shifts[i], alphabet.size());
+            this.charTables[i] = alphabet.table(this.shifts[i]);
+        }
+
+        if (isLatin()) {
+            this.tables = new byte[shifts.length][];
+            this.laneShifts = new byte[shifts.length + MAX_LANES];
+            this.charLaneShifts = new short[shifts.length + MAX_LANES];
+
+            for (int i = 0; i < shifts.length; i++) {
+                this.tables[i] = ShiftTables.forShift(this.shifts[i]);
+            }
+            for (int i = 0; i < laneShifts.length; i++) {
+                laneShifts[i] = (byte) this.shifts[i % shifts.length];
+                charLaneShifts[i] = (short) this.shifts[i % shifts.length];
+            }
+        } else {
+            this.tables = null;
+            this.laneShifts = null;
+            this.charLaneShifts = null;
+        }
+    }
+
+    /**
+     * Возвращает ключ из одного сдвига (шифр Цезаря)
+     */
+    static ShiftKey of(int shift, Alphabet alphabet) {
+        return new ShiftKey(new int[]{shift}, alphabet);
+    }
+
+    /**
+     * Возвращает ключ с обратными сдвигами для дешифрования
+     */
+    ShiftKey inverse() {
+        int[] inverse = new int[shifts.length];
+        for (int i = 0; i < shifts.length; i++) {
+            inverse[i] = -shifts[i];
+        }
+        return new ShiftKey(inverse, alphabet);
+    }
+
+    Alphabet alphabet() {
+        return alphabet;
+    }
+
+    /**
+     * Латинский алфавит можно обрабатывать побайтно и векторно
+     */
+    boolean isLatin() {
+        return alphabet == Alphabet.LATIN;
+    }
+
+    /**
+     * Длина ключа (количество позиций)
+     */
+    int length() {
+        return shifts.length;
+    }
+
+    int shift(int position) {
+        return shifts[position];
+    }
+
+    /**
+     * Таблица подстановки символов для позиции ключа
+     */
+    char[] charTable(int position) {
+        return charTables[position];
+    }
+
+    /**
+     * Таблица подстановки байт для позиции ключа (только латиница)
+     */
+    byte[] table(int position) {
+        return tables[position];
+    }
+
+    /**
+     * Сдвиги, начиная с позиции ключа, повторенные на длину вектора (только латиница)
+     */
+    byte[] laneShifts() {
+        return laneShifts;
+    }
+
+    short[] charLaneShifts() {
+        return charLaneShifts;
+    }
+}
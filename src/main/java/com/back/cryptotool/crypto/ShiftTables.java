@@ -0,0 +1,55 @@
+package com.back.cryptotool.crypto;
+
+/**
+ * Таблицы подстановки для шифров сдвига по латинскому алфавиту.
+ *
+ * Для каждого сдвига от 0 до 25 хранится таблица на 256 значений: латинская
+ * буква заменяется сдвинутой, остальные байты (и символы Latin-1) переходят
+ * сами в себя. Таблицы общие для всех ключей, поэтому шифрование - это одно
+ * обращение к массиву на символ без ветвлений и деления по модулю.
+ */
+final class ShiftTables {
+
+    static final int ALPHABET_SIZE = 26;
+
+    private static final byte[][] TABLES = new byte[ALPHABET_SIZE][256];
+
+    // 1 для латинских букв, 0 для остальных символов
+    private static final byte[] LETTERS = new byte[256];
+
+    static {
+        for (int shift = 0; shift < ALPHABET_SIZE; shift++) {
+            byte[] table = TABLES[shift];
+            for (int i = 0; i < table.length; i++) {
+                table[i] = (byte) i;
+            }
+            for (int letter = 0; letter < ALPHABET_SIZE; letter++) {
+                int shifted = (letter + shift) % ALPHABET_SIZE;
+                table['a' + letter] = (byte) ('a' + shifted);
+                table['A' + letter] = (byte) ('A' + shifted);
+            }
+        }
+
+        for (int letter = 0; letter < ALPHABET_SIZE; letter++) {
+            LETTERS['a' + letter] = 1;
+            LETTERS['A' + letter] = 1;
+        }
+    }
+
+    private ShiftTables() {
+    }
+
+    /**
+     * Возвращает таблицу для сдвига (сдвиг приводится к диапазону 0-25)
+     */
+    static byte[] forShift(int shift) {
+        return TABLES[Math.floorMod(shift, ALPHABET_SIZE)];
+    }
+
+    /**
+     * Возвращает 1, если байт - латинская буква, иначе 0
+     */
+    static int letter(int value) {
+        return LETTERS[value & 0xFF];
+    }
+}
@@ -0,0 +1,177 @@
+package com.back.cryptotool.crypto;
+
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Кодировки для представления бинарного шифртекста в виде текста.
+ *
+ * Алфавит Z85 содержит все символы Base64, поэтому запись Z85 помечается
+ * префиксом {@link #getPrefix()}: иначе строку Base64 можно было бы без ошибки
+ * декодировать как Z85 и получить другие байты. Base64 и Base64url префикса
+ * не имеют и различаются символами '+', '/' и '-', '_'; там, где этих символов
+ * нет, обе кодировки дают одинаковые байты.
+ */
+public enum TextCodec {
+
+    BASE64("Base64", "") {
+        @Override
+        public String encode(byte[] data) {
+            return Base64.getEncoder().encodeToString(data);
+        }
+
+        @Override
+        public byte[] decode(String text) throws CryptoException {
+            try {
+                return Base64.getDecoder().decode(text);
+            } catch (IllegalArgumentException e) {
+                throw CryptoException.corruptedData();
+            }
+        }
+    },
+
+    BASE64_URL("Base64url", "") {
+        @Override
+        public String encode(byte[] data) {
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(data);
+        }
+
+        @Override
+        public byte[] decode(String text) throws CryptoException {
+            try {
+                return Base64.getUrlDecoder().decode(text);
+            } catch (IllegalArgumentException e) {
+                throw CryptoException.corruptedData();
+            }
+        }
+    },
+
+    /**
+     * Z85 (ZeroMQ): 5 символов на 4 байта, на 7% короче Base64.
+     * Длина данных не обязана быть кратной 4: неполная последняя группа
+     * из n байт записывается n + 1 символами, как в Ascii85.
+     */
+    Z85("Z85", "z85:") {
+        @Override
+        public String encode(byte[] data) {
+            char[] result = new char[(data.length / 4) * 5 + (data.length % 4 == 0 ? 0 : data.length % 4 + 1)];
+            char[] group = new char[5];
+            int position = 0;
+
+            for (int offset = 0; offset < data.length; offset += 4) {
+                int count = Math.min(4, data.length - offset);
+
+                long value = 0;
+                for (int i = 0; i < 4; i++) {
+                    value = (value << 8) | (i < count ? data[offset + i] & 0xFF : 0);
+                }
+                for (int i = 4; i >= 0; i--) {
+                    group[i] = Z85_ALPHABET[(int) (value % 85)];
+                    value /= 85;
+                }
+
+                System.arraycopy(group, 0, result, position, count + 1);
+                position += count + 1;
+            }
+
+            return new String(result);
+        }
+
+        @Override
+        public byte[] decode(String text) throws CryptoException {
+            int remainder = text.length() % 5;
+            if (remainder == 1) {
+                throw CryptoException.corruptedData();
+            }
+
+            byte[] result = new byte[(text.length() / 5) * 4 + (remainder == 0 ? 0 : remainder - 1)];
+            int position = 0;
+
+            for (int offset = 0; offset < text.length(); offset += 5) {
+                int count = Math.min(5, text.length() - offset);
+
+                // Неполную группу дополняем старшим символом, чтобы округление не испортило байты
+                long value = 0;
+                for (int i = 0; i < 5; i++) {
+                    int digit = i < count ? z85Digit(text.charAt(offset + i)) : 84;
+                    value = value * 85 + digit;
+                }
+                if (value > 0xFFFFFFFFL && count == 5) {
+                    throw CryptoException.corruptedData();
+                }
+
+                for (int i = 0; i < count - 1; i++) {
+                    result[position++] = (byte) (value >>> (24 - 8 * i));
+                }
+            }
+
+            return result;
+        }
+    };
+
+    private static final char[] Z85_ALPHABET =
+            "0123456789abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ.-:+=^!/*?&<>()[]{}@%$#".toCharArray();
+
+    private static final byte[] Z85_DIGITS = new byte[128];
+
+    static {
+        Arrays.fill(Z85_DIGITS, (byte) -1);
+        for (int i = 0; i < Z85_ALPHABET.length; i++) {
+            Z85_DIGITS[Z85_ALPHABET[i]] = (byte) i;
+        }
+    }
+
+    private final String displayName;
+    private final String prefix;
+
+    TextCodec(String displayName, String prefix) {
+        this.displayName = displayName;
+        this.prefix = prefix;
+    }
+
+    /**
+     * Определяет кодировку текста по префиксу и алфавиту
+     */
+    public static TextCodec forText(String text) {
+        if (!Z85.prefix.isEmpty() && text.startsWith(Z85.prefix)) {
+            return Z85;
+        }
+        return text.indexOf('-') >= 0 || text.indexOf('_') >= 0 ? BASE64_URL : BASE64;
+    }
+
+    /**
+     * Кодирует байты в текст
+     */
+    public abstract String encode(byte[] data);
+
+    /**
+     * Декодирует текст в байты
+     *
+     * @throws CryptoException если текст не является корректной записью в этой кодировке
+     */
+    public abstract byte[] decode(String text) throws CryptoException;
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    /**
+     * Префикс, которым помечается запись в этой кодировке (пустой для Base64)
+     */
+    public String getPrefix() {
+        return prefix;
+    }
+
+    @Override
+    public String toString() {
+        return displayName;
+    }
+
+    private static int z85Digit(char character) throws CryptoException {
+        int digit = character < 128 ? Z85_DIGITS[character] : -1;
+        if (digit < 0) {
+            throw CryptoException.corruptedData();
+        }
+        return digit;
+    }
+}
@@ -0,0 +1,81 @@
+package com.back.cryptotool.crypto;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.CharBuffer;
+
+/**
+ * Потоковый шифратор текста для шифров Цезаря и Виженера.
+ *
+ * Хранит позицию в ключе между вызовами: текст можно подавать порциями
+ * произвольного размера (в том числе разрезая слова и строки), результат
+ * совпадает с обработкой всего текста целиком. Символы меняются на месте.
+ *
+ * Не потокобезопасен: у каждого потока обработки должен быть свой экземпляр.
+ */
+public final class TextTransformer {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final ShiftEngine engine;
+    private final ShiftKey key;
+    private int keyIndex;
+
+    TextTransformer(ShiftEngine engine, ShiftKey key) {
+        this.engine = engine;
+        this.key = key;
+    }
+
+    /**
+     * Обрабатывает участок массива на месте
+     */
+    public void update(char[] data, int offset, int length) {
+        keyIndex = engine.transform(data, offset, offset + length, key, keyIndex);
+    }
+
+    /**
+     * Обрабатывает оставшиеся символы буфера на месте и переводит позицию буфера в его конец.
+     * Буфер должен быть доступен для записи.
+     */
+    public void update(CharBuffer buffer) {
+        if (buffer.hasArray()) {
+            int start = buffer.arrayOffset() + buffer.position();
+            update(buffer.array(), start, buffer.remaining());
+            buffer.position(buffer.limit());
+            return;
+        }
+
+        // Буфер без доступного массива (например, прямой) обрабатываем через копию
+        char[] chunk = new char[Math.min(BUFFER_SIZE, buffer.remaining())];
+        while (buffer.hasRemaining()) {
+            int position = buffer.position();
+            int count = Math.min(chunk.length, buffer.remaining());
+            buffer.get(chunk, 0, count);
+            update(chunk, 0, count);
+            buffer.put(position, chunk, 0, count);
+        }
+    }
+
+    /**
+     * Обрабатывает весь текст из input с продолжением от текущей позиции в ключе.
+     * Потоки не закрываются.
+     */
+    public void transform(Reader input, Writer output) throws IOException {
+        keyIndex = engine.transform(input, output, key, keyIndex);
+    }
+
+    /**
+     * Текущая позиция в ключе (количество обработанных букв по модулю длины ключа)
+     */
+    public int getKeyPosition() {
+        return keyIndex;
+    }
+
+    /**
+     * Возвращает позицию в начало ключа для обработки нового текста
+     */
+    public void reset() {
+        keyIndex = 0;
+    }
+}
@@ -0,0 +1,156 @@
+package com.back.cryptotool.crypto;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Сдвиг букв нелатинского алфавита в потоке байт без потерь.
+ *
+ * Поток не декодируется целиком как UTF-8: меняются только корректные
+ * (кратчайшие) последовательности UTF-8, которые кодируют букву алфавита,
+ * а все остальные байты, в том числе испорченные последовательности и
+ * двоичные данные, копируются без изменений. Кодировка буквы никогда не
+ * начинается с байта продолжения, поэтому соседние байты не могут
+ * образовать с ней новую последовательность: при дешифровании разбор
+ * находит те же буквы, и исходные байты восстанавливаются точно.
+ */
+final class Utf8ShiftStream {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    // Незавершенная последовательность в конце порции (не более двух байт
+    // трехбайтового символа) переносится в следующую порцию
+    private static final int MAX_CARRY = 2;
+
+    private Utf8ShiftStream() {
+    }
+
+    /**
+     * Сдвигает буквы алфавита ключа в потоке порциями по 8 КБ
+     */
+    static void transform(ShiftEngine engine, InputStream input, OutputStream output, ShiftKey key)
+            throws IOException {
+        Alphabet alphabet = key.alphabet();
+        byte[] buffer = new byte[BUFFER_SIZE + MAX_CARRY];
+        char[] letters = new char[buffer.length];
+        int[] starts = new int[buffer.length];
+        byte[] result = new byte[3 * (BUFFER_SIZE + MAX_CARRY)];
+
+        int length = 0;
+        int keyIndex = 0;
+        boolean end = false;
+
+        while (!end) {
+            int read = input.read(buffer, length, BUFFER_SIZE);
+            if (read < 0) {
+                end = true;
+            } else {
+                length += read;
+            }
+
+            // Находим буквы и запоминаем, где начинается каждая
+            int count = 0;
+            int limit = length;
+            int position = 0;
+            while (position < length) {
+                int size = sequenceLength(buffer[position]);
+                if (size == 0) {
+                    position++;
+                } else if (position + size > length) {
+                    if (!end) {
+                        limit = position;
+                        break;
+                    }
+                    position++;
+                } else {
+                    int character = decode(buffer, position, size);
+                    if (character >= 0 && alphabet.contains((char) character)) {
+                        starts[count] = position;
+                        letters[count++] = (char) character;
+                        position += size;
+                    } else {
+                        position++;
+                    }
+                }
+            }
+
+            keyIndex = engine.transform(letters, 0, count, key, keyIndex);
+
+            // Собираем результат: байты между буквами копируются как есть
+            int written = 0;
+            int copied = 0;
+            for (int i = 0; i < count; i++) {
+                int start = starts[i];
+                System.arraycopy(buffer, copied, result, written, start - copied);
+                written += start - copied;
+                written = encode(letters[i], result, written);
+                copied = start + sequenceLength(buffer[start]);
+            }
+            System.arraycopy(buffer, copied, result, written, limit - copied);
+            written += limit - copied;
+            output.write(result, 0, written);
+
+            System.arraycopy(buffer, limit, buffer, 0, length - limit);
+            length -= limit;
+        }
+    }
+
+    /**
+     * Длина последовательности UTF-8 по первому байту для символов до U+FFFF,
+     * 0 для байтов продолжения, четырехбайтовых и недопустимых первых байтов
+     */
+    private static int sequenceLength(byte first) {
+        int lead = first & 0xFF;
+        if (lead < 0x80) {
+            return 1;
+        }
+        if (lead >= 0xC2 && lead <= 0xDF) {
+            return 2;
+        }
+        return lead >= 0xE0 && lead <= 0xEF ? 3 : 0;
+    }
+
+    /**
+     * Декодирует символ или возвращает -1, если последовательность некорректна
+     * (нет байта продолжения, избыточная запись или суррогат)
+     */
+    private static int decode(byte[] data, int offset, int size) {
+        int lead = data[offset] & 0xFF;
+        if (size == 1) {
+            return lead;
+        }
+
+        int second = data[offset + 1] & 0xFF;
+        if ((second & 0xC0) != 0x80) {
+            return -1;
+        }
+        if (size == 2) {
+            return (lead & 0x1F) << 6 | second & 0x3F;
+        }
+
+        int third = data[offset + 2] & 0xFF;
+        if ((third & 0xC0) != 0x80) {
+            return -1;
+        }
+        int character = (lead & 0x0F) << 12 | (second & 0x3F) << 6 | third & 0x3F;
+        return character < 0x800 || Character.isSurrogate((char) character) ? -1 : character;
+    }
+
+    /**
+     * Записывает символ в UTF-8 и возвращает позицию после него
+     */
+    private static int encode(char character, byte[] target, int offset) {
+        if (character < 0x80) {
+            target[offset++] = (byte) character;
+        } else if (character < 0x800) {
+            target[offset++] = (byte) (0xC0 | character >>> 6);
+            target[offset++] = (byte) (0x80 | character & 0x3F);
+        } else {
+            target[offset++] = (byte) (0xE0 | character >>> 12);
+            target[offset++] = (byte) (0x80 | character >>> 6 & 0x3F);
+            target[offset++] = (byte) (0x80 | character & 0x3F);
+        }
+        return offset;
+    }
+}
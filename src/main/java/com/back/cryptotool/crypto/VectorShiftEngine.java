@@ -0,0 +1,167 @@
+package com.back.cryptotool.crypto;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Векторный движок сдвига на Vector API.
+ *
+ * За одну операцию обрабатывается целый вектор символов: маски выделяют
+ * строчные и прописные латинские буквы, к ним прибавляется сдвиг и
+ * вычитается 26 там, где буква вышла за конец алфавита. Для шифра Виженера
+ * сдвиги очередных позиций ключа раскладываются по полосам с буквами
+ * операцией expand. Байты UTF-8 вне ASCII и символы вне Latin-1 не попадают
+ * в маски и не меняются, поэтому отдельный переход на скалярный путь не нужен.
+ * Векторно обрабатывается только латинский алфавит, остальные - скалярно.
+ *
+ * Класс загружается только через {@link ShiftEngine#getInstance()} при наличии модуля.
+ */
+final class VectorShiftEngine implements ShiftEngine {
+
+    private static final VectorSpecies<Byte> BYTES = ByteVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Short> CHARS = ShortVector.SPECIES_PREFERRED;
+
+    // На коротких векторах выигрыша нет
+    private static final int MIN_LANES = 16;
+
+    VectorShiftEngine() {
+        if (BYTES.length() < MIN_LANES) {
+            throw new IllegalStateException("Слишком короткие векторы: " + BYTES.length());
+        }
+    }
+
+    @Override
+    public int transform(byte[] data, int from, int to, ShiftKey key, int keyIndex) {
+        int bound = from + BYTES.loopBound(to - from);
+        int i = from;
+
+        if (key.length() == 1) {
+            ByteVector shift = ByteVector.broadcast(BYTES, (byte) key.shift(0));
+            for (; i < bound; i += BYTES.length()) {
+                ByteVector vector = ByteVector.fromArray(BYTES, data, i);
+                VectorMask<Byte> lower = range(vector, 'a', 'z');
+                VectorMask<Byte> letters = lower.or(range(vector, 'A', 'Z'));
+                if (letters.anyTrue()) {
+                    shift(vector, shift, lower, letters).intoArray(data, i);
+                }
+            }
+        } else {
+            byte[] laneShifts = key.laneShifts();
+            for (; i < bound; i += BYTES.length()) {
+                ByteVector vector = ByteVector.fromArray(BYTES, data, i);
+                VectorMask<Byte> lower = range(vector, 'a', 'z');
+                VectorMask<Byte> letters = lower.or(range(vector, 'A', 'Z'));
+                if (!letters.anyTrue()) {
+                    continue;
+                }
+
+                // Сдвиги идущих подряд позиций ключа попадают только в полосы с буквами
+                ByteVector shifts = ByteVector.fromArray(BYTES, laneShifts, keyIndex).expand(letters);
+                shift(vector, shifts, lower, letters).intoArray(data, i);
+
+                keyIndex = (keyIndex + letters.trueCount()) % key.length();
+            }
+        }
+
+        return ScalarShiftEngine.shift(data, i, to, key, keyIndex);
+    }
+
+    @Override
+    public int transform(char[] data, int from, int to, ShiftKey key, int keyIndex) {
+        if (!key.isLatin()) {
+            return ScalarShiftEngine.shift(data, from, to, key, keyIndex);
+        }
+
+        int bound = from + CHARS.loopBound(to - from);
+        short[] laneShifts = key.charLaneShifts();
+        int i = from;
+
+        for (; i < bound; i += CHARS.length()) {
+            ShortVector vector = ShortVector.fromCharArray(CHARS, data, i);
+            VectorMask<Short> lower = range(vector, 'a', 'z');
+            VectorMask<Short> letters = lower.or(range(vector, 'A', 'Z'));
+            if (!letters.anyTrue()) {
+                continue;
+            }
+
+            ShortVector shifts = key.length() == 1
+                    ? ShortVector.broadcast(CHARS, (short) key.shift(0))
+                    : ShortVector.fromArray(CHARS, laneShifts, keyIndex).expand(letters);
+            shift(vector, shifts, lower, letters).intoCharArray(data, i);
+
+            keyIndex = (keyIndex + letters.trueCount()) % key.length();
+        }
+
+        return ScalarShiftEngine.shift(data, i, to, key, keyIndex);
+    }
+
+    @Override
+    public int countLetters(byte[] data, int from, int to) {
+        int bound = from + BYTES.loopBound(to - from);
+        int letters = 0;
+        int i = from;
+
+        for (; i < bound; i += BYTES.length()) {
+            ByteVector vector = ByteVector.fromArray(BYTES, data, i);
+            letters += range(vector, 'a', 'z').or(range(vector, 'A', 'Z')).trueCount();
+        }
+
+        return letters + ScalarShiftEngine.count(data, i, to);
+    }
+
+    @Override
+    public int countLetters(char[] data, int from, int to, Alphabet alphabet) {
+        if (alphabet != Alphabet.LATIN) {
+            return ScalarShiftEngine.count(data, from, to, alphabet);
+        }
+
+        int bound = from + CHARS.loopBound(to - from);
+        int letters = 0;
+        int i = from;
+
+        for (; i < bound; i += CHARS.length()) {
+            ShortVector vector = ShortVector.fromCharArray(CHARS, data, i);
+            letters += range(vector, 'a', 'z').or(range(vector, 'A', 'Z')).trueCount();
+        }
+
+        return letters + ScalarShiftEngine.count(data, i, to, alphabet);
+    }
+
+    @Override
+    public String getName() {
+        return String.format("Векторный (%d бит)", BYTES.vectorBitSize());
+    }
+
+    private static VectorMask<Byte> range(ByteVector vector, char from, char to) {
+        return vector.compare(VectorOperators.GE, (byte) from).and(vector.compare(VectorOperators.LE, (byte) to));
+    }
+
+    private static VectorMask<Short> range(ShortVector vector, char from, char to) {
+        return vector.compare(VectorOperators.GE, (short) from).and(vector.compare(VectorOperators.LE, (short) to));
+    }
+
+    /**
+     * Сдвигает буквы по модулю 26. Считаем от начала алфавита (0-50),
+     * чтобы не выйти за пределы знакового байта.
+     */
+    private static ByteVector shift(ByteVector vector, ByteVector shifts,
+                                    VectorMask<Byte> lower, VectorMask<Byte> letters) {
+        ByteVector base = ByteVector.broadcast(BYTES, (byte) 'A').blend((byte) 'a', lower);
+        ByteVector offset = vector.sub(base).add(shifts);
+        offset = offset.sub((byte) ShiftTables.ALPHABET_SIZE,
+                offset.compare(VectorOperators.GE, (byte) ShiftTables.ALPHABET_SIZE));
+        return vector.blend(offset.add(base), letters);
+    }
+
+    private static ShortVector shift(ShortVector vector, ShortVector shifts,
+                                     VectorMask<Short> lower, VectorMask<Short> letters) {
+        ShortVector base = ShortVector.broadcast(CHARS, (short) 'A').blend((short) 'a', lower);
+        ShortVector offset = vector.sub(base).add(shifts);
+        offset = offset.sub((short) ShiftTables.ALPHABET_SIZE,
+                offset.compare(VectorOperators.GE, (short) ShiftTables.ALPHABET_SIZE));
+        return vector.blend(offset.add(base), letters);
+    }
+}
@@ -1,90 +1,181 @@
 package com.back.cryptotool.crypto;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+
 /**
  * Реализация шифра Виженера - полиалфавитный шифр замены
  * Использует ключевое слово для сдвига каждой буквы на разную величину
  */
 public class VigenereCipher implements CryptoService {
 
-    private static final int ALPHABET_SIZE = 26;
+    private final Alphabet alphabet;
+
+    // Параллельный режим: большие тексты (от ParallelShiftEngine.PARALLEL_THRESHOLD)
+    // делятся на части и шифруются на всех ядрах, короткие - в одном потоке
+    private final boolean parallel;
+
+    /**
+     * Создает шифр для латинского алфавита, обрабатывающий данные в одном потоке
+     */
+    public VigenereCipher() {
+        this(Alphabet.LATIN, false);
+    }
+
+    /**
+     * @param alphabet алфавит текста и ключа
+     * @param parallel шифровать большие тексты параллельно (результат тот же, что и в одном потоке)
+     */
+    public VigenereCipher(Alphabet alphabet, boolean parallel) {
+        this.alphabet = alphabet;
+        this.parallel = parallel;
+    }
 
     @Override
-    public String encrypt(String data, String key) throws CryptoException {
+    public void encrypt(InputStream input, OutputStream output, String key) throws CryptoException, IOException {
+        prepare(key).encrypt(input, output);
+    }
+
+    @Override
+    public void decrypt(InputStream input, OutputStream output, String key) throws CryptoException, IOException {
+        prepare(key).decrypt(input, output);
+    }
+
+    /**
+     * Проверяет ключ и вычисляет сдвиги для шифрования и дешифрования один раз
+     */
+    @Override
+    public PreparedTextKey prepare(String key) throws CryptoException {
         if (!isValidKey(key)) {
             throw CryptoException.invalidKey("Vigenere");
         }
 
-        String processedKey = preprocessKey(key);
-        StringBuilder result = new StringBuilder();
-        int keyIndex = 0;
+        return new Key(keyShifts(key));
+    }
 
-        for (int i = 0; i < data.length(); i++) {
-            char character = data.charAt(i);
+    /**
+     * Возвращает шифр с другим режимом обработки
+     */
+    public VigenereCipher withParallel(boolean parallel) {
+        return parallel == this.parallel ? this : new VigenereCipher(alphabet, parallel);
+    }
 
-            if (Character.isLetter(character)) {
-                char base = Character.isLowerCase(character) ? 'a' : 'A';
+    /**
+     * Возвращает шифр для другого алфавита
+     */
+    public VigenereCipher withAlphabet(Alphabet alphabet) {
+        return alphabet == this.alphabet ? this : new VigenereCipher(alphabet, parallel);
+    }
 
-                // Получаем текущий символ ключа и его сдвиг
-                char keyChar = processedKey.charAt(keyIndex % processedKey.length());
-                int shift = keyChar - 'A';  // A=0, B=1, C=2, ..., Z=25
+    public Alphabet getAlphabet() {
+        return alphabet;
+    }
 
-                // Вычисляем новую позицию символа
-                int originalPosition = character - base;
-                int newPosition = (originalPosition + shift) % ALPHABET_SIZE;
-                char newChar = (char) (base + newPosition);
+    public boolean isParallel() {
+        return parallel;
+    }
 
-                result.append(newChar);
+    /**
+     * Движок для потоков и порций заранее неизвестного размера: параллельный
+     * движок сам обрабатывает короткие участки в одном потоке
+     */
+    private ShiftEngine engine() {
+        return parallel ? ParallelShiftEngine.getInstance() : ShiftEngine.getInstance();
+    }
 
-                // Переходим к следующему символу ключа (только для букв)
-                keyIndex++;
-            } else {
-                // Не-буквенные символы добавляем без изменений
-                result.append(character);
+    /**
+     * Движок для текста известной длины
+     */
+    private ShiftEngine engine(int length) {
+        return length >= ParallelShiftEngine.PARALLEL_THRESHOLD ? engine() : ShiftEngine.getInstance();
+    }
+
+    /**
+     * Преобразует ключ в массив сдвигов по позициям букв в алфавите (для латиницы A=0, ..., Z=25).
+     * Символы вне алфавита пропускаются.
+     */
+    private int[] keyShifts(String key) {
+        int[] shifts = new int[countLetters(key)];
+        int position = 0;
+
+        for (int i = 0; i < key.length(); i++) {
+            int index = alphabet.indexOf(key.charAt(i));
+            if (index >= 0) {
+                shifts[position++] = index;
             }
         }
 
-        return result.toString();
+        return shifts;
     }
 
-    @Override
-    public String decrypt(String encryptedData, String key) throws CryptoException {
-        if (!isValidKey(key)) {
-            throw CryptoException.invalidKey("Vigenere");
+    private int countLetters(String key) {
+        int count = 0;
+        for (int i = 0; i < key.length(); i++) {
+            count += alphabet.letter(key.charAt(i));
+        }
+        return count;
+    }
+
+    /**
+     * Подготовленный ключ: сдвиги в обе стороны уже вычислены
+     */
+    private final class Key implements PreparedTextKey {
+        private final ShiftKey encryptKey;
+        private final ShiftKey decryptKey;
+
+        Key(int[] shifts) {
+            this.encryptKey = new ShiftKey(shifts, alphabet);
+            // Для дешифровки используем обратный сдвиг
+            this.decryptKey = encryptKey.inverse();
         }
 
-        String processedKey = preprocessKey(key);
-        StringBuilder result = new StringBuilder();
-        int keyIndex = 0;
+        @Override
+        public CryptoService getAlgorithm() {
+            return VigenereCipher.this;
+        }
 
-        for (int i = 0; i < encryptedData.length(); i++) {
-            char character = encryptedData.charAt(i);
+        @Override
+        public void encrypt(InputStream input, OutputStream output) throws IOException {
+            engine().transform(input, output, encryptKey);
+        }
 
-            if (Character.isLetter(character)) {
-                char base = Character.isLowerCase(character) ? 'a' : 'A';
+        @Override
+        public void decrypt(InputStream input, OutputStream output) throws IOException {
+            engine().transform(input, output, decryptKey);
+        }
 
-                char keyChar = processedKey.charAt(keyIndex % processedKey.length());
-                int shift = keyChar - 'A';
+        @Override
+        public String encrypt(String data) {
+            return engine(data.length()).transform(data, encryptKey);
+        }
 
-                // Для дешифровки используем обратный сдвиг
-                int originalPosition = character - base;
-                int newPosition = (originalPosition - shift + ALPHABET_SIZE) % ALPHABET_SIZE;
-                char newChar = (char) (base + newPosition);
+        @Override
+        public String decrypt(String encryptedData) {
+            return engine(encryptedData.length()).transform(encryptedData, decryptKey);
+        }
 
-                result.append(newChar);
-                keyIndex++;
-            } else {
-                result.append(character);
-            }
+        @Override
+        public void encrypt(Reader input, Writer output) throws IOException {
+            engine().transform(input, output, encryptKey, 0);
         }
 
-        return result.toString();
-    }
+        @Override
+        public void decrypt(Reader input, Writer output) throws IOException {
+            engine().transform(input, output, decryptKey, 0);
+        }
 
-    /**
-     * Подготавливает ключ: переводит в верхний регистр и оставляет только буквы
-     */
-    private String preprocessKey(String key) {
-        return key.toUpperCase().replaceAll("[^A-Z]", "");
+        @Override
+        public TextTransformer encryptor() {
+            return new TextTransformer(engine(), encryptKey);
+        }
+
+        @Override
+        public TextTransformer decryptor() {
+            return new TextTransformer(engine(), decryptKey);
+        }
     }
 
     @Override
@@ -110,12 +201,11 @@ public class VigenereCipher implements CryptoService {
         }
 
         // Ключ должен содержать хотя бы одну букву
-        String lettersOnly = key.replaceAll("[^a-zA-Z]", "");
-        return !lettersOnly.isEmpty();
+        return countLetters(key) > 0;
     }
 
     @Override
     public String getKeyRequirements() {
-        return "Ключевое слово (только буквы, минимум 1 символ)";
+        return String.format("Ключевое слово (только буквы алфавита \"%s\", минимум 1 символ)", alphabet.getName());
     }
 }
@@ -1,8 +1,13 @@
 package com.back.cryptotool.ui;
 
 import com.back.cryptotool.crypto.AesCipher;
+import com.back.cryptotool.crypto.Alphabet;
 import com.back.cryptotool.crypto.CryptoManager;
 import com.back.cryptotool.crypto.CryptoException;
+import com.back.cryptotool.crypto.FrequencyAnalyzer;
+import com.back.cryptotool.crypto.NonceGenerator;
+import com.back.cryptotool.crypto.TextCodec;
+import com.back.cryptotool.util.EncryptedFileHeader;
 import com.back.cryptotool.util.FileProcessor;
 
 import javax.swing.JFileChooser;
@@ -10,18 +15,22 @@ import javax.swing.filechooser.FileNameExtensionFilter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.security.SecureRandom;
 import java.text.SimpleDateFormat;
 import java.util.Base64;
 import java.util.Date;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
 import java.awt.Toolkit;
 import java.awt.datatransfer.Clipboard;
 import java.awt.datatransfer.StringSelection;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 
 /**
  * Главное окно приложения Crypto Tool
@@ -29,6 +38,8 @@ import java.awt.event.ActionEvent;
 public class MainFrame extends JFrame {
 
     private final CryptoManager cryptoManager;
+    // Окно не сериализуется, а анализатор держит пул потоков
+    private final transient FrequencyAnalyzer frequencyAnalyzer;
     private JTabbedPane tabbedPane;
 
     // Компоненты для вкладки текстового шифрования
@@ -39,7 +50,11 @@ public class MainFrame extends JFrame {
     private JButton encryptBtn;
     private JButton decryptBtn;
     private JButton clearBtn;
+    private JButton breakKeyBtn;
     private JComboBox<String> aesKeySizeComboBox;
+    private JComboBox<AesCipher.Mode> aesModeComboBox;
+    private JComboBox<Alphabet> alphabetComboBox;
+    private JComboBox<TextCodec> textCodecComboBox;
 
     // Компоненты для вкладки работы с файлами
     private JTextField filePathField;
@@ -47,10 +62,12 @@ public class MainFrame extends JFrame {
     private JButton encryptFileBtn;
     private JButton decryptFileBtn;
     private JButton clearFileBtn;
+    private JButton rotateKeyBtn;
     private JLabel fileInfoLabel;
     private JComboBox<String> fileAlgorithmComboBox;
     private JTextField fileKeyField;
-    private JComboBox<String> fileAesKeySizeComboBox;
+    private JComboBox<FileProcessor.IoStrategy> fileIoStrategyComboBox;
+    private JProgressBar fileProgressBar;
 
     private FileProcessor fileProcessor;
     private File selectedFile;
@@ -72,10 +89,28 @@ public class MainFrame extends JFrame {
 
     public MainFrame() {
         this.cryptoManager = new CryptoManager();
+        this.frequencyAnalyzer = new FrequencyAnalyzer();
         initializeFrame();
         initializeComponents();
         setupLayout();
         setupEventListeners();
+        startCalibration();
+    }
+
+    /**
+     * Загружает или выполняет калибровку алгоритмов в фоне, чтобы первое
+     * шифрование в режиме AUTO не ждало измерений
+     */
+    private void startCalibration() {
+        Thread calibration = new Thread(() -> {
+            try {
+                cryptoManager.getCalibration();
+            } catch (CryptoException e) {
+                // Калибровка повторится при первом шифровании в режиме AUTO
+            }
+        }, "calibration");
+        calibration.setDaemon(true);
+        calibration.start();
     }
 
     /**
@@ -85,6 +120,18 @@ public class MainFrame extends JFrame {
         setTitle("Crypto Tool v1.0 - Шифратор/Дешифратор");
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 
+        // Перед выходом останавливаем пулы потоков
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                if (fileProcessor != null) {
+                    fileProcessor.close();
+                }
+                frequencyAnalyzer.close();
+                cryptoManager.close();
+            }
+        });
+
         setSize(800, 700); // Размер окна
         setResizable(false);
 
@@ -155,7 +202,7 @@ public class MainFrame extends JFrame {
 
         gbc.gridx = 1; gbc.gridy = 0;
         gbc.weightx = 1;
-        algorithmComboBox = new JComboBox<>(new String[]{"CAESAR", "VIGENERE", "AES"});
+        algorithmComboBox = new JComboBox<>(new String[]{CryptoManager.AUTO, "CAESAR", "VIGENERE", "AES", "CHACHA20"});
         algorithmComboBox.setToolTipText("Выберите алгоритм шифрования");
         panel.add(algorithmComboBox, gbc);
 
@@ -173,19 +220,58 @@ public class MainFrame extends JFrame {
         aesSizeLabel.setVisible(false); // Скрываем и label
         panel.add(aesKeySizeComboBox, gbc);
 
-        // Третья строка: Ключ
+        // Та же строка: Алфавит классических шифров (виден, когда AES не выбран)
+        gbc.gridx = 0; gbc.gridy = 1;
+        gbc.weightx = 0;
+        panel.add(new JLabel("Алфавит:"), gbc);
+
+        gbc.gridx = 1; gbc.gridy = 1;
+        gbc.weightx = 1;
+        alphabetComboBox = new JComboBox<>(new Alphabet[]{Alphabet.LATIN, Alphabet.CYRILLIC});
+        alphabetComboBox.setToolTipText("Алфавит для шифров Цезаря и Виженера (при шифровании файла сохраняется в его заголовке)");
+        panel.add(alphabetComboBox, gbc);
+
+        // Третья строка: Режим AES (изначально скрыт)
         gbc.gridx = 0; gbc.gridy = 2;
         gbc.weightx = 0;
-        panel.add(new JLabel("Ключ:"), gbc);
+        JLabel aesModeLabel = new JLabel("Режим AES:");
+        panel.add(aesModeLabel, gbc);
 
         gbc.gridx = 1; gbc.gridy = 2;
         gbc.weightx = 1;
+        aesModeComboBox = new JComboBox<>(AesCipher.Mode.values());
+        aesModeComboBox.setToolTipText("GCM - с проверкой целостности, CTR - без дополнения, CBC - совместимость");
+        aesModeComboBox.setVisible(false);
+        aesModeLabel.setVisible(false);
+        panel.add(aesModeComboBox, gbc);
+
+        // Четвертая строка: Кодировка бинарного шифртекста (изначально скрыта)
+        gbc.gridx = 0; gbc.gridy = 3;
+        gbc.weightx = 0;
+        JLabel textCodecLabel = new JLabel("Кодировка:");
+        panel.add(textCodecLabel, gbc);
+
+        gbc.gridx = 1; gbc.gridy = 3;
+        gbc.weightx = 1;
+        textCodecComboBox = new JComboBox<>(TextCodec.values());
+        textCodecComboBox.setToolTipText("Текстовое представление шифртекста: Z85 короче, Base64url безопасен для URL");
+        textCodecComboBox.setVisible(false);
+        textCodecLabel.setVisible(false);
+        panel.add(textCodecComboBox, gbc);
+
+        // Пятая строка: Ключ
+        gbc.gridx = 0; gbc.gridy = 4;
+        gbc.weightx = 0;
+        panel.add(new JLabel("Ключ:"), gbc);
+
+        gbc.gridx = 1; gbc.gridy = 4;
+        gbc.weightx = 1;
         keyField = new JTextField();
         keyField.setToolTipText("Введите ключ шифрования");
         panel.add(keyField, gbc);
 
-        // Четвертая строка: Кнопки (занимают всю ширину)
-        gbc.gridx = 0; gbc.gridy = 3;
+        // Шестая строка: Кнопки (занимают всю ширину)
+        gbc.gridx = 0; gbc.gridy = 5;
         gbc.gridwidth = 2; // Занимает 2 колонки
         gbc.fill = GridBagConstraints.NONE;
         gbc.anchor = GridBagConstraints.CENTER;
@@ -195,9 +281,12 @@ public class MainFrame extends JFrame {
         encryptBtn = new JButton("🔒 Зашифровать");
         decryptBtn = new JButton("🔓 Расшифровать");
         clearBtn = new JButton("🗑️ Очистить");
+        breakKeyBtn = new JButton("🔍 Подобрать ключ");
+        breakKeyBtn.setToolTipText("Найти утерянный ключ Цезаря или Виженера частотным анализом");
 
         buttonPanel.add(encryptBtn);
         buttonPanel.add(decryptBtn);
+        buttonPanel.add(breakKeyBtn);
         buttonPanel.add(clearBtn);
 
         panel.add(buttonPanel, gbc);
@@ -317,27 +406,35 @@ public class MainFrame extends JFrame {
         panel.add(new JLabel("Алгоритм:"), gbc);
 
         gbc.gridx = 1; gbc.gridy = 0;
-        fileAlgorithmComboBox = new JComboBox<>(new String[]{"CAESAR", "VIGENERE", "AES"});
+        fileAlgorithmComboBox = new JComboBox<>(new String[]{CryptoManager.AUTO, "CAESAR", "VIGENERE", "AES", "CHACHA20"});
         panel.add(fileAlgorithmComboBox, gbc);
 
-        // Размер ключа AES (изначально скрыт)
+        // Ключ. Размер ключа и режим для файлов не выбираются: AES и ChaCha20
+        // всегда шифруют сегментами GCM/Poly1305 256-битным ключом из пароля
         gbc.gridx = 0; gbc.gridy = 1;
-        JLabel aesSizeLabel = new JLabel("Размер ключа AES:");
-        panel.add(aesSizeLabel, gbc);
+        panel.add(new JLabel("Ключ:"), gbc);
 
         gbc.gridx = 1; gbc.gridy = 1;
-        fileAesKeySizeComboBox = new JComboBox<>(new String[]{"128 бит", "192 бита", "256 бит"});
-        fileAesKeySizeComboBox.setVisible(false);
-        aesSizeLabel.setVisible(false);
-        panel.add(fileAesKeySizeComboBox, gbc);
+        fileKeyField = new JTextField();
+        panel.add(fileKeyField, gbc);
 
-        // Ключ
+        // Способ ввода-вывода
         gbc.gridx = 0; gbc.gridy = 2;
-        panel.add(new JLabel("Ключ:"), gbc);
+        panel.add(new JLabel("Ввод-вывод:"), gbc);
 
         gbc.gridx = 1; gbc.gridy = 2;
-        fileKeyField = new JTextField();
-        panel.add(fileKeyField, gbc);
+        fileIoStrategyComboBox = new JComboBox<>(FileProcessor.IoStrategy.values());
+        fileIoStrategyComboBox.setRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                                                          boolean isSelected, boolean cellHasFocus) {
+                Object text = value instanceof FileProcessor.IoStrategy
+                        ? ((FileProcessor.IoStrategy) value).getDisplayName() : value;
+                return super.getListCellRendererComponent(list, text, index, isSelected, cellHasFocus);
+            }
+        });
+        fileIoStrategyComboBox.setToolTipText("Прямые буферы и отображение в память используются для AES и ChaCha20");
+        panel.add(fileIoStrategyComboBox, gbc);
 
         // Кнопки
         gbc.gridx = 0; gbc.gridy = 3;
@@ -349,13 +446,25 @@ public class MainFrame extends JFrame {
         encryptFileBtn = new JButton("🔒 Зашифровать файл");
         decryptFileBtn = new JButton("🔓 Расшифровать файл");
         clearFileBtn = new JButton("🗑️ Очистить");
+        rotateKeyBtn = new JButton("🔑 Сменить ключ");
+        rotateKeyBtn.setToolTipText("Перешифровать только ключ данных в заголовке файла AES или ChaCha20");
+        rotateKeyBtn.setEnabled(false);
 
         buttonPanel.add(encryptFileBtn);
         buttonPanel.add(decryptFileBtn);
+        buttonPanel.add(rotateKeyBtn);
         buttonPanel.add(clearFileBtn);
 
         panel.add(buttonPanel, gbc);
 
+        // Ход обработки файла (виден только во время операции)
+        gbc.gridy = 4;
+        gbc.fill = GridBagConstraints.HORIZONTAL;
+        fileProgressBar = new JProgressBar(0, 100);
+        fileProgressBar.setStringPainted(true);
+        fileProgressBar.setVisible(false);
+        panel.add(fileProgressBar, gbc);
+
         return panel;
     }
 
@@ -519,6 +628,9 @@ public class MainFrame extends JFrame {
         // Кнопка очистки
         clearBtn.addActionListener(e -> onClear());
 
+        // Подбор ключа частотным анализом
+        breakKeyBtn.addActionListener(e -> onBreakKey());
+
         // Изменение алгоритма - обновляем подсказку для ключа
         algorithmComboBox.addActionListener(e -> updateKeyTooltip());
 
@@ -528,6 +640,14 @@ public class MainFrame extends JFrame {
         // Изменение размера ключа AES
         aesKeySizeComboBox.addActionListener(e -> onAesKeySizeChanged());
 
+        // Изменение режима AES
+        aesModeComboBox.addActionListener(e -> onAesModeChanged());
+
+        // Изменение алфавита классических шифров
+        alphabetComboBox.addActionListener(e -> onAlphabetChanged());
+        textCodecComboBox.addActionListener(e ->
+                cryptoManager.setTextCodec((TextCodec) textCodecComboBox.getSelectedItem()));
+
         // Изначально обновляем подсказку
         updateKeyTooltip();
 
@@ -551,12 +671,11 @@ public class MainFrame extends JFrame {
 
         // Кнопка очистки файлов
         clearFileBtn.addActionListener(e -> onClearFile());
+        rotateKeyBtn.addActionListener(e -> onRotateFileKey());
 
-        // Изменение алгоритма для файлов
-        fileAlgorithmComboBox.addActionListener(e -> onFileAlgorithmChanged());
-
-        // Изменение размера ключа AES для файлов
-        fileAesKeySizeComboBox.addActionListener(e -> onFileAesKeySizeChanged());
+        // Подсказка к ключу файла зависит от алгоритма
+        fileAlgorithmComboBox.addActionListener(e -> updateFileKeyTooltip());
+        updateFileKeyTooltip();
     }
 
     // Находим кнопку копирования ключа и добавляем обработчик
@@ -636,29 +755,85 @@ public class MainFrame extends JFrame {
         }
     }
 
+    /**
+     * Подбирает ключ к тексту из поля ввода частотным анализом и расшифровывает его
+     */
+    private void onBreakKey() {
+        try {
+            String text = inputTextArea.getText().trim();
+            if (text.isEmpty()) {
+                showError("Введите зашифрованный текст для подбора ключа");
+                return;
+            }
+
+            if (cryptoManager.getAlphabet() != Alphabet.LATIN) {
+                showError("Частотный анализ поддерживает только латинский алфавит");
+                return;
+            }
+
+            String algorithm = (String) algorithmComboBox.getSelectedItem();
+            String key;
+
+            if ("CAESAR".equals(algorithm)) {
+                int shift = frequencyAnalyzer.breakCaesar(text).getShift();
+                if (shift == 0) {
+                    showError("Текст, похоже, не зашифрован шифром Цезаря");
+                    return;
+                }
+                key = String.valueOf(shift);
+            } else if ("VIGENERE".equals(algorithm)) {
+                key = frequencyAnalyzer.breakVigenere(text).getKey();
+            } else {
+                showError("Подбор ключа доступен только для шифров Цезаря и Виженера");
+                return;
+            }
+
+            keyField.setText(key);
+            outputTextArea.setText(cryptoManager.decrypt(algorithm, text, key));
+
+            showInfo("Вероятный ключ: " + key + "\nРезультат расшифровки - в поле вывода.");
+
+        } catch (CryptoException ex) {
+            showError("Не удалось подобрать ключ: " + ex.getMessage());
+        } catch (Exception ex) {
+            showError("Неожиданная ошибка: " + ex.getMessage());
+        }
+    }
+
     /**
      * Обработчик изменения алгоритма
      */
     private void onAlgorithmChanged() {
         String algorithm = (String) algorithmComboBox.getSelectedItem();
         boolean isAes = "AES".equals(algorithm);
+        boolean isClassical = "CAESAR".equals(algorithm) || "VIGENERE".equals(algorithm);
 
         // Находим компоненты в панели управления
         Component[] components = ((JPanel)tabbedPane.getComponentAt(0)).getComponents();
         JPanel controlPanel = (JPanel) components[1]; // controlPanel это второй компонент
 
-        // Ищем label и comboBox для размера ключа AES
+        // Ищем label и comboBox для размера ключа и режима AES
         for (Component comp : controlPanel.getComponents()) {
             if (comp instanceof JLabel) {
                 JLabel label = (JLabel) comp;
-                if ("Размер ключа AES:".equals(label.getText())) {
+                if ("Размер ключа AES:".equals(label.getText()) || "Режим AES:".equals(label.getText())) {
                     label.setVisible(isAes);
+                } else if ("Кодировка:".equals(label.getText())) {
+                    label.setVisible(!isClassical);
+                } else if ("Алфавит:".equals(label.getText())) {
+                    label.setVisible(isClassical);
                 }
             }
         }
 
-        // Показываем/скрываем выбор размера ключа для AES
+        // Показываем/скрываем выбор размера ключа и режима для AES
         aesKeySizeComboBox.setVisible(isAes);
+        aesModeComboBox.setVisible(isAes);
+
+        // Кодировка нужна бинарным шифрам, алфавит и подбор ключа - классическим
+        textCodecComboBox.setVisible(!isClassical);
+        alphabetComboBox.setVisible(isClassical);
+        breakKeyBtn.setVisible(isClassical);
 
         // Обновляем подсказку для ключа
         updateKeyTooltip();
@@ -673,6 +848,14 @@ public class MainFrame extends JFrame {
         controlPanel.repaint();
     }
 
+    /**
+     * Обработчик изменения алфавита классических шифров
+     */
+    private void onAlphabetChanged() {
+        cryptoManager.setAlphabet((Alphabet) alphabetComboBox.getSelectedItem());
+        updateKeyTooltip();
+    }
+
     /**
      * Обработчик изменения размера ключа AES
      */
@@ -702,6 +885,17 @@ public class MainFrame extends JFrame {
         }
     }
 
+    /**
+     * Обработчик изменения режима AES
+     */
+    private void onAesModeChanged() {
+        try {
+            cryptoManager.setAesMode((AesCipher.Mode) aesModeComboBox.getSelectedItem());
+        } catch (CryptoException e) {
+            showError("Ошибка настройки AES: " + e.getMessage());
+        }
+    }
+
     /**
      * Обработчик выбора файла
      */
@@ -769,23 +963,23 @@ public class MainFrame extends JFrame {
             String fileType = getFileType(selectedFile);
             String status = "✅ " + fileType + " (" + fileSize + ")";
 
-            // Проверяем размер файла
-            if (selectedFile.length() > FileProcessor.getMaxFileSize()) {
-                status = "❌ Слишком большой: " + fileSize + " (максимум 50 МБ)";
-                fileInfoLabel.setForeground(Color.RED);
+            fileInfoLabel.setForeground(Color.BLACK);
+
+            // Автоматически определяем операцию по расширению
+            if (selectedFile.getName().toLowerCase().endsWith(".enc")) {
+                decryptFileBtn.setEnabled(true);
                 encryptFileBtn.setEnabled(false);
-                decryptFileBtn.setEnabled(false);
-            } else {
-                fileInfoLabel.setForeground(Color.BLACK);
-
-                // Автоматически определяем операцию по расширению
-                if (selectedFile.getName().toLowerCase().endsWith(".enc")) {
-                    decryptFileBtn.setEnabled(true);
-                    encryptFileBtn.setEnabled(false);
-                } else {
-                    encryptFileBtn.setEnabled(true);
-                    decryptFileBtn.setEnabled(true);
+                rotateKeyBtn.setEnabled(true);
+
+                // Алгоритм и размер ключа берем из заголовка контейнера
+                String detected = applyFileHeader(selectedFile);
+                if (detected != null) {
+                    status += " - " + detected;
                 }
+            } else {
+                encryptFileBtn.setEnabled(true);
+                decryptFileBtn.setEnabled(true);
+                rotateKeyBtn.setEnabled(false);
             }
 
             fileInfoLabel.setText(status);
@@ -796,6 +990,30 @@ public class MainFrame extends JFrame {
             fileInfoLabel.setForeground(Color.GRAY);
             encryptFileBtn.setEnabled(false);
             decryptFileBtn.setEnabled(false);
+            rotateKeyBtn.setEnabled(false);
+        }
+    }
+
+    /**
+     * Выставляет алгоритм по заголовку зашифрованного файла
+     *
+     * @return описание найденного алгоритма или null для файлов старого формата
+     */
+    private String applyFileHeader(File file) {
+        try {
+            EncryptedFileHeader header = fileProcessor.readHeader(file);
+            if (header == null) {
+                return null;
+            }
+
+            fileAlgorithmComboBox.setSelectedItem(header.getAlgorithm());
+            if (header.getKeyBits() > 0) {
+                return header.getAlgorithm() + "-" + header.getKeyBits();
+            }
+            return header.getAlgorithm();
+
+        } catch (CryptoException | IOException e) {
+            return null;
         }
     }
 
@@ -833,12 +1051,10 @@ public class MainFrame extends JFrame {
         // Сбрасываем алгоритм к значению по умолчанию
         fileAlgorithmComboBox.setSelectedIndex(0);
 
-        // Скрываем выбор размера ключа AES
-        fileAesKeySizeComboBox.setVisible(false);
-
         // Отключаем кнопки операций
         encryptFileBtn.setEnabled(false);
         decryptFileBtn.setEnabled(false);
+        rotateKeyBtn.setEnabled(false);
 
         // Показываем сообщение
         showInfo("Поля вкладки файлов очищены");
@@ -853,40 +1069,32 @@ public class MainFrame extends JFrame {
             return;
         }
 
-        try {
-            String algorithm = (String) fileAlgorithmComboBox.getSelectedItem();
-            String key = fileKeyField.getText().trim();
+        String algorithm = (String) fileAlgorithmComboBox.getSelectedItem();
+        String key = fileKeyField.getText().trim();
 
-            if (key.isEmpty()) {
-                showError("Введите ключ для шифрования");
-                return;
-            }
+        if (key.isEmpty()) {
+            showError("Введите ключ для шифрования");
+            return;
+        }
 
-            // Проверяем, не является ли файл уже зашифрованным
-            if (selectedFile.getName().toLowerCase().endsWith(".enc")) {
-                int result = JOptionPane.showConfirmDialog(this,
-                        "Этот файл уже зашифрован. Вы уверены, что хотите зашифровать его повторно?",
-                        "Подтверждение повторного шифрования",
-                        JOptionPane.YES_NO_OPTION);
+        // Проверяем, не является ли файл уже зашифрованным
+        if (selectedFile.getName().toLowerCase().endsWith(".enc")) {
+            int result = JOptionPane.showConfirmDialog(this,
+                    "Этот файл уже зашифрован. Вы уверены, что хотите зашифровать его повторно?",
+                    "Подтверждение повторного шифрования",
+                    JOptionPane.YES_NO_OPTION);
 
-                if (result != JOptionPane.YES_OPTION) {
-                    return;
-                }
+            if (result != JOptionPane.YES_OPTION) {
+                return;
             }
-
-            // Выполняем шифрование
-            File encryptedFile = fileProcessor.encryptFile(selectedFile, algorithm, key);
-
-            // Показываем результат
-            showFileOperationSuccess("шифрования", encryptedFile, selectedFile);
-
-        } catch (CryptoException e) {
-            showError("Ошибка шифрования: " + e.getMessage());
-        } catch (IOException e) {
-            showError("Ошибка работы с файлом: " + e.getMessage());
-        } catch (Exception e) {
-            showError("Неожиданная ошибка: " + e.getMessage());
         }
+
+        // Шифруем в фоне и показываем результат
+        File inputFile = selectedFile;
+        FileProcessor.IoStrategy strategy = (FileProcessor.IoStrategy) fileIoStrategyComboBox.getSelectedItem();
+        runFileTask("Ошибка шифрования: ",
+                progress -> fileProcessor.encryptFile(inputFile, algorithm, key, strategy, progress),
+                encrypted -> showFileOperationSuccess("шифрования", encrypted, inputFile));
     }
 
     /**
@@ -913,11 +1121,9 @@ public class MainFrame extends JFrame {
     private String generateAesKey(int keySizeBits) {
         try {
             int keySizeBytes = keySizeBits / 8;
-            byte[] key = new byte[keySizeBytes];
 
-            // Криптографически безопасный генератор
-            SecureRandom secureRandom = new SecureRandom();
-            secureRandom.nextBytes(key);
+            // Криптографически безопасный генератор (общий DRBG приложения)
+            byte[] key = NonceGenerator.getInstance().nextBytes(keySizeBytes);
 
             // Кодируем в Base64
             return Base64.getEncoder().encodeToString(key);
@@ -1006,7 +1212,7 @@ public class MainFrame extends JFrame {
     private String decodeFromBase64(String base64Text) {
         try {
             byte[] bytes = Base64.getDecoder().decode(base64Text);
-            return new String(bytes, "UTF-8");
+            return new String(bytes, StandardCharsets.UTF_8);
         } catch (IllegalArgumentException e) {
             throw new RuntimeException("Некорректный Base64 формат", e);
         } catch (Exception e) {
@@ -1091,15 +1297,15 @@ public class MainFrame extends JFrame {
             return;
         }
 
-        try {
-            String algorithm = (String) fileAlgorithmComboBox.getSelectedItem();
-            String key = fileKeyField.getText().trim();
+        String algorithm = (String) fileAlgorithmComboBox.getSelectedItem();
+        String key = fileKeyField.getText().trim();
 
-            if (key.isEmpty()) {
-                showError("Введите ключ для дешифрования");
-                return;
-            }
+        if (key.isEmpty()) {
+            showError("Введите ключ для дешифрования");
+            return;
+        }
 
+        try {
             // Проверяем, является ли файл зашифрованным
             if (!selectedFile.getName().toLowerCase().endsWith(".enc")) {
                 int result = JOptionPane.showConfirmDialog(this,
@@ -1127,25 +1333,134 @@ public class MainFrame extends JFrame {
                 }
             }
 
-            // Выполняем дешифрование
-            File decryptedFile = fileProcessor.decryptFile(selectedFile, algorithm, key);
-
-            // Показываем результат
-            showFileOperationSuccess("дешифрования", decryptedFile, selectedFile);
-
-        } catch (CryptoException e) {
-            showError("Ошибка дешифрования: " + e.getMessage());
-        } catch (IOException e) {
-            showError("Ошибка работы с файлом: " + e.getMessage());
         } catch (Exception e) {
             showError("Неожиданная ошибка: " + e.getMessage());
+            return;
+        }
+
+        // Дешифруем в фоне и показываем результат
+        File inputFile = selectedFile;
+        FileProcessor.IoStrategy strategy = (FileProcessor.IoStrategy) fileIoStrategyComboBox.getSelectedItem();
+        runFileTask("Ошибка дешифрования: ",
+                progress -> fileProcessor.decryptFile(inputFile, algorithm, key, strategy, progress),
+                decrypted -> showFileOperationSuccess("дешифрования", decrypted, inputFile));
+    }
+
+    /**
+     * Обработчик смены ключа зашифрованного файла: старый пароль берется из поля ключа,
+     * новый запрашивается в диалоге
+     */
+    private void onRotateFileKey() {
+        if (selectedFile == null) {
+            showError("Сначала выберите зашифрованный файл");
+            return;
+        }
+
+        String oldKey = fileKeyField.getText().trim();
+        if (oldKey.isEmpty()) {
+            showError("Введите текущий ключ файла");
+            return;
+        }
+
+        // Ключ файлов AES и ChaCha20 получается из пароля, длина пароля не ограничена
+        String newKey = JOptionPane.showInputDialog(this, "Новый пароль:", "Смена ключа",
+                JOptionPane.QUESTION_MESSAGE);
+        if (newKey == null || newKey.trim().isEmpty()) {
+            return;
+        }
+
+        // Получение ключей из паролей занимает заметное время, поэтому тоже в фоне
+        File file = selectedFile;
+        String password = newKey.trim();
+        runFileTask("Ошибка смены ключа: ", progress -> {
+            fileProcessor.rotateKey(file, oldKey, password);
+            return file;
+        }, rotated -> {
+            fileKeyField.setText(password);
+            showInfo("Ключ файла \"" + rotated.getName() + "\" изменен. Данные не перешифровывались.");
+        });
+    }
+
+    /**
+     * Операция с файлом, выполняемая в фоне
+     */
+    @FunctionalInterface
+    private interface FileTask<T> {
+        T run(FileProcessor.ProgressListener progress) throws CryptoException, IOException;
+    }
+
+    /**
+     * Выполняет операцию с файлом в фоновом потоке, чтобы окно не зависало на больших
+     * файлах, и показывает ход обработки. На время операции кнопки вкладки отключены.
+     *
+     * @param errorPrefix начало сообщения об ошибке шифрования
+     * @param onSuccess получает результат операции в потоке интерфейса
+     */
+    private <T> void runFileTask(String errorPrefix, FileTask<T> task, Consumer<T> onSuccess) {
+        setFileTaskRunning(true);
+
+        SwingWorker<T, Void> worker = new SwingWorker<>() {
+            @Override
+            protected T doInBackground() throws CryptoException, IOException {
+                return task.run((processed, total) ->
+                        setProgress(total > 0 ? (int) Math.min(100, processed * 100 / total) : 0));
+            }
+
+            @Override
+            protected void done() {
+                setFileTaskRunning(false);
+                try {
+                    onSuccess.accept(get());
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof CryptoException) {
+                        showError(errorPrefix + cause.getMessage());
+                    } else if (cause instanceof IOException) {
+                        showError("Ошибка работы с файлом: " + cause.getMessage());
+                    } else {
+                        showError("Неожиданная ошибка: " + cause.getMessage());
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+
+        worker.addPropertyChangeListener(event -> {
+            if ("progress".equals(event.getPropertyName())) {
+                fileProgressBar.setIndeterminate(false);
+                fileProgressBar.setValue((Integer) event.getNewValue());
+            }
+        });
+        worker.execute();
+    }
+
+    /**
+     * Показывает или скрывает ход обработки и блокирует кнопки вкладки файлов
+     */
+    private void setFileTaskRunning(boolean running) {
+        // Пока нет сведений о ходе обработки (например, при смене ключа), полоса неопределенная
+        fileProgressBar.setIndeterminate(running);
+        fileProgressBar.setValue(0);
+        fileProgressBar.setVisible(running);
+        fileProgressBar.getParent().revalidate();
+
+        fileBrowseBtn.setEnabled(!running);
+        clearFileBtn.setEnabled(!running);
+        if (running) {
+            encryptFileBtn.setEnabled(false);
+            decryptFileBtn.setEnabled(false);
+            rotateKeyBtn.setEnabled(false);
+        } else {
+            updateFileInfo();
         }
     }
 
     /**
      * Показывает сообщение об успешной операции с файлом
      */
-    private void showFileOperationSuccess(String operation, File resultFile, File originalFile) {
+    private void showFileOperationSuccess(String operation, FileProcessor.FileResult result, File originalFile) {
+        File resultFile = result.getFile();
         String originalSize = FileProcessor.formatFileSize(originalFile.length());
         String resultSize = FileProcessor.formatFileSize(resultFile.length());
 
@@ -1156,13 +1471,15 @@ public class MainFrame extends JFrame {
         Исходный файл: %s (%s)
         Результат: %s (%s)
         Путь: %s
+        Ввод-вывод: %s
         """,
                 operation,
                 originalFile.getName(),
                 originalSize,
                 resultFile.getName(),
                 resultSize,
-                resultFile.getParent()
+                resultFile.getParent(),
+                result.getIoStrategy().getDisplayName()
         );
 
         JOptionPane.showMessageDialog(this, message, "Операция завершена",
@@ -1172,67 +1489,6 @@ public class MainFrame extends JFrame {
         updateFileInfo();
     }
 
-    /**
-     * Обработчик изменения алгоритма для файлов
-     */
-    private void onFileAlgorithmChanged() {
-        String algorithm = (String) fileAlgorithmComboBox.getSelectedItem();
-        boolean isAes = "AES".equals(algorithm);
-
-        // Находим компоненты в панели управления файлами
-        Component[] components = ((JPanel)tabbedPane.getComponentAt(1)).getComponents();
-        JPanel controlPanel = (JPanel) components[1];
-
-        // Ищем label и comboBox для размера ключа AES
-        for (Component comp : controlPanel.getComponents()) {
-            if (comp instanceof JLabel) {
-                JLabel label = (JLabel) comp;
-                if ("Размер ключа AES:".equals(label.getText())) {
-                    label.setVisible(isAes);
-                }
-            }
-        }
-
-        // Показываем/скрываем выбор размера ключа для AES
-        fileAesKeySizeComboBox.setVisible(isAes);
-
-        // Если выбран AES, обновляем требования к ключу
-        if (isAes) {
-            onFileAesKeySizeChanged();
-        }
-
-        controlPanel.revalidate();
-        controlPanel.repaint();
-    }
-
-    /**
-     * Обработчик изменения размера ключа AES для файлов
-     */
-    private void onFileAesKeySizeChanged() {
-        try {
-            String selectedSize = (String) fileAesKeySizeComboBox.getSelectedItem();
-            AesCipher.KeySize keySize = null;
-
-            switch (selectedSize) {
-                case "128 бит":
-                    keySize = AesCipher.KeySize.AES_128;
-                    break;
-                case "192 бита":
-                    keySize = AesCipher.KeySize.AES_192;
-                    break;
-                case "256 бит":
-                    keySize = AesCipher.KeySize.AES_256;
-                    break;
-            }
-
-            if (keySize != null) {
-                cryptoManager.setAesKeySize(keySize);
-            }
-        } catch (CryptoException e) {
-            showError("Ошибка настройки AES: " + e.getMessage());
-        }
-    }
-
     /**
      * Копирует текст из поля результата в буфер обмена (для текста)
      */
@@ -1337,7 +1593,7 @@ public class MainFrame extends JFrame {
      * Сохраняет текст в файл
      */
     private void saveTextToFile(String text, File file) throws IOException {
-        try (FileWriter writer = new FileWriter(file)) {
+        try (FileWriter writer = new FileWriter(file, StandardCharsets.UTF_8)) {
             writer.write(text);
         }
     }
@@ -1376,11 +1632,14 @@ public class MainFrame extends JFrame {
         String tooltip = "";
 
         switch (algorithm) {
-            case "CAESAR":
-                tooltip = "Целое число от 1 до 25 (сдвиг)";
+            case CryptoManager.AUTO:
+                tooltip = "Ключ длиной 16, 24 или 32 символа: будет выбран самый быстрый "
+                        + "на этом компьютере шифр (AES-GCM или ChaCha20-Poly1305)";
                 break;
+            case "CAESAR":
             case "VIGENERE":
-                tooltip = "Ключевое слово (только буквы)";
+                // Требования зависят от выбранного алфавита
+                tooltip = cryptoManager.getAlgorithmDetails(algorithm).getKeyRequirements();
                 break;
             case "AES":
                 try {
@@ -1391,11 +1650,39 @@ public class MainFrame extends JFrame {
                     tooltip = "Ключ для AES шифрования";
                 }
                 break;
+            default:
+                tooltip = cryptoManager.getAlgorithmDetails(algorithm).getKeyRequirements();
+                break;
         }
 
         keyField.setToolTipText(tooltip);
     }
 
+    /**
+     * Обновляет подсказку для ключа файла: ключ AES и ChaCha20 для файлов
+     * получается из пароля, поэтому длина пароля не ограничена
+     */
+    private void updateFileKeyTooltip() {
+        String algorithm = (String) fileAlgorithmComboBox.getSelectedItem();
+        String tooltip;
+
+        switch (algorithm) {
+            case CryptoManager.AUTO:
+                tooltip = "Пароль любой длины: файл будет зашифрован самым быстрым на этом компьютере "
+                        + "шифром (AES-GCM или ChaCha20-Poly1305) с ключом 256 бит из пароля";
+                break;
+            case "AES":
+            case "CHACHA20":
+                tooltip = "Пароль любой длины, ключ 256 бит получается из него";
+                break;
+            default:
+                tooltip = cryptoManager.getAlgorithmDetails(algorithm).getKeyRequirements();
+                break;
+        }
+
+        fileKeyField.setToolTipText(tooltip);
+    }
+
     /**
      * Показывает сообщение об ошибке
      */
@@ -0,0 +1,404 @@
+package com.back.cryptotool.util;
+
+import com.back.cryptotool.crypto.Alphabet;
+import com.back.cryptotool.crypto.CryptoException;
+import com.back.cryptotool.crypto.KeyDerivation;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Заголовок бинарного контейнера .enc.
+ *
+ * Формат (все числа big-endian):
+ * <pre>
+ * 4 байта  магическая сигнатура "CTEN"
+ * 1 байт   версия формата (1)
+ * 1 байт   идентификатор алгоритма
+ * 1 байт   раскладка данных: 0 - единый поток, 1 - независимые сегменты
+ * 2 байта  размер ключа в битах (0 для классических шифров)
+ * 1 байт   длина nonce, затем сам nonce
+ * 4 байта  размер порции данных
+ * 2 байта  длина алфавита в байтах (0 для AES и ChaCha20), затем буквы
+ *          алфавита в UTF-8: строчные, за ними прописные
+ * 1 байт   длина обернутого ключа данных (0 у классических шифров), затем сам ключ
+ * 1 байт   длина соли PBKDF2 (0 - без пароля), затем соль и 4 байта числа
+ *          итераций (только если соль есть)
+ * </pre>
+ * После заголовка идут зашифрованные данные без какого-либо кодирования.
+ * Классические шифры пишут данные единым потоком; их алфавит хранится в
+ * заголовке, поэтому файл расшифровывается независимо от алфавита,
+ * выбранного в интерфейсе. AES и ChaCha20 шифруют
+ * независимые сегменты размером chunkSize (см. {@link SegmentedFileCipher}),
+ * что позволяет обрабатывать их параллельно. Ключ пользователя для них - пароль
+ * любой длины, из которого через PBKDF2 получается ключ обертки. Данные
+ * зашифрованы случайным ключом данных, который хранится в заголовке обернутым;
+ * ключ файла получается из него через HKDF и nonce файла, ключ сегмента - из
+ * ключа файла и номера сегмента. Смена пароля меняет только обернутый ключ,
+ * соль и число итераций, длина заголовка при этом не меняется.
+ * Поля до алфавита включительно не меняются за время жизни файла и
+ * аутентифицируются в каждом сегменте ({@link #getAssociatedData}).
+ * При чтении размер порции, длины nonce, обернутого ключа и соли, а также
+ * число итераций проверяются по алгоритму и раскладке: поврежденный заголовок
+ * не должен приводить к делению на ноль, выделению огромных буферов или
+ * многоминутному получению ключа из пароля.
+ */
+public class EncryptedFileHeader {
+
+    private static final byte[] MAGIC = {'C', 'T', 'E', 'N'};
+    private static final int FORMAT_VERSION = 1;
+
+    // Наибольший размер сегмента: буферы сегментов выделяются на каждый поток
+    private static final int MAX_CHUNK_SIZE = 64 * 1024 * 1024;
+
+    // Наибольшее число итераций PBKDF2: заголовок не аутентифицирован, и без предела
+    // поврежденный файл заставил бы получать ключ из пароля десятки минут
+    static final int MAX_ITERATIONS = 10 * KeyDerivation.DEFAULT_ITERATIONS;
+
+    /**
+     * Раскладка зашифрованных данных после заголовка
+     */
+    public enum Layout {
+        STREAM,     // единый поток шифра
+        SEGMENTED   // независимо зашифрованные сегменты фиксированного размера
+    }
+
+    // Идентификаторы алгоритмов в заголовке - индекс в массиве плюс один
+    private static final String[] ALGORITHM_IDS = {"CAESAR", "VIGENERE", "AES", "CHACHA20"};
+
+    private final String algorithm;
+    private final Layout layout;
+    private final int keyBits;
+    private final byte[] nonce;
+    private final int chunkSize;
+    private final Alphabet alphabet;
+    private final byte[] wrappedKey;
+    private final byte[] salt;
+    private final int iterations;
+
+    public EncryptedFileHeader(String algorithm, Layout layout, int keyBits, byte[] nonce, int chunkSize) {
+        this(algorithm, layout, keyBits, nonce, chunkSize, null, new byte[0], new byte[0], 0);
+    }
+
+    /**
+     * Создает заголовок конвертного шифрования
+     *
+     * @param keyBits размер ключа пользователя
+     * @param wrappedKey ключ данных, обернутый ключом пользователя
+     */
+    public EncryptedFileHeader(String algorithm, Layout layout, int keyBits, byte[] nonce, int chunkSize,
+                               byte[] wrappedKey) {
+        this(algorithm, layout, keyBits, nonce, chunkSize, null, wrappedKey, new byte[0], 0);
+    }
+
+    private EncryptedFileHeader(String algorithm, Layout layout, int keyBits, byte[] nonce, int chunkSize,
+                                Alphabet alphabet, byte[] wrappedKey, byte[] salt, int iterations) {
+        this.algorithm = algorithm.toUpperCase();
+        this.layout = layout;
+        this.keyBits = keyBits;
+        this.nonce = nonce.clone();
+        this.chunkSize = chunkSize;
+        this.alphabet = alphabet;
+        this.wrappedKey = wrappedKey.clone();
+        this.salt = salt.clone();
+        this.iterations = iterations;
+    }
+
+    /**
+     * Возвращает заголовок с ключом данных, обернутым другим ключом пользователя.
+     * Длина заголовка не меняется, если не меняется длина обернутого ключа.
+     */
+    public EncryptedFileHeader withWrappedKey(int keyBits, byte[] wrappedKey) throws CryptoException {
+        if (!isEnvelope()) {
+            throw new CryptoException("Файл зашифрован без конверта ключа");
+        }
+        return new EncryptedFileHeader(algorithm, layout, keyBits, nonce, chunkSize, alphabet, wrappedKey, salt,
+                iterations);
+    }
+
+    /**
+     * Возвращает заголовок классического шифра с алфавитом, которым зашифрованы данные
+     */
+    public EncryptedFileHeader withAlphabet(Alphabet alphabet) {
+        return new EncryptedFileHeader(algorithm, layout, keyBits, nonce, chunkSize, alphabet, wrappedKey, salt,
+                iterations);
+    }
+
+    /**
+     * Возвращает заголовок, в котором ключ пользователя получается из пароля
+     * через PBKDF2 с указанной солью
+     */
+    public EncryptedFileHeader withKeyDerivation(byte[] salt, int iterations) {
+        return new EncryptedFileHeader(algorithm, layout, keyBits, nonce, chunkSize, alphabet, wrappedKey, salt,
+                iterations);
+    }
+
+    /**
+     * Записывает заголовок в поток
+     */
+    public void write(OutputStream output) throws CryptoException, IOException {
+        writeFixedFields(output);
+
+        DataOutputStream data = new DataOutputStream(output);
+        data.writeByte(wrappedKey.length);
+        data.write(wrappedKey);
+        data.writeByte(salt.length);
+        data.write(salt);
+        if (salt.length > 0) {
+            data.writeInt(iterations);
+        }
+        data.flush();
+    }
+
+    /**
+     * Записывает поля, которые не меняются при смене пароля: от сигнатуры до алфавита
+     */
+    private void writeFixedFields(OutputStream output) throws CryptoException, IOException {
+        DataOutputStream data = new DataOutputStream(output);
+        data.write(MAGIC);
+        data.writeByte(FORMAT_VERSION);
+        data.writeByte(algorithmId(algorithm));
+        data.writeByte(layout.ordinal());
+        data.writeShort(keyBits);
+        data.writeByte(nonce.length);
+        data.write(nonce);
+        data.writeInt(chunkSize);
+        byte[] letters = alphabetBytes();
+        if (letters.length > 0xFFFF) {
+            throw new CryptoException("Алфавит слишком длинный для формата файла: " + alphabet.getName());
+        }
+        data.writeShort(letters.length);
+        data.write(letters);
+        data.flush();
+    }
+
+    private byte[] alphabetBytes() {
+        return alphabet == null ? new byte[0]
+                : (alphabet.getLowercase() + alphabet.getUppercase()).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Возвращает неизменяемые поля заголовка (от сигнатуры до алфавита) для
+     * аутентификации в каждом сегменте. Обернутый ключ, соль и число итераций сюда
+     * не входят: их меняет смена пароля, а подмена этих полей и так обнаруживается
+     * при разворачивании ключа данных.
+     */
+    public byte[] getAssociatedData() throws CryptoException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream(getFixedLength());
+        try {
+            writeFixedFields(output);
+        } catch (IOException e) {
+            // Запись в память не приводит к IOException
+            throw new IllegalStateException(e);
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * Возвращает заголовок в виде массива байт
+     */
+    public byte[] toByteArray() throws CryptoException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream(getLength());
+        try {
+            write(output);
+        } catch (IOException e) {
+            // Запись в память не приводит к IOException
+            throw new IllegalStateException(e);
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * Проверяет наличие сигнатуры контейнера, не сдвигая позицию потока.
+     * Поток должен поддерживать mark/reset.
+     */
+    public static boolean hasHeader(InputStream input) throws IOException {
+        input.mark(MAGIC.length);
+        byte[] magic = input.readNBytes(MAGIC.length);
+        input.reset();
+        return Arrays.equals(magic, MAGIC);
+    }
+
+    /**
+     * Читает заголовок из потока. Поток остается на начале зашифрованных данных.
+     */
+    public static EncryptedFileHeader read(InputStream input) throws CryptoException, IOException {
+        DataInputStream data = new DataInputStream(input);
+
+        try {
+            byte[] magic = new byte[MAGIC.length];
+            data.readFully(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new CryptoException("Файл не является контейнером Crypto Tool");
+            }
+
+            int version = data.readUnsignedByte();
+            if (version != FORMAT_VERSION) {
+                throw new CryptoException("Неподдерживаемая версия формата файла: " + version);
+            }
+
+            String algorithm = algorithmName(data.readUnsignedByte());
+
+            int layoutId = data.readUnsignedByte();
+            if (layoutId >= Layout.values().length) {
+                throw new CryptoException("Неизвестная раскладка данных в файле: " + layoutId);
+            }
+            Layout layout = Layout.values()[layoutId];
+
+            int keyBits = data.readUnsignedShort();
+            byte[] nonce = new byte[data.readUnsignedByte()];
+            data.readFully(nonce);
+            int chunkSize = data.readInt();
+
+            byte[] letters = new byte[data.readUnsignedShort()];
+            data.readFully(letters);
+            Alphabet alphabet = letters.length > 0 ? readAlphabet(letters) : null;
+
+            byte[] wrappedKey = new byte[data.readUnsignedByte()];
+            data.readFully(wrappedKey);
+
+            byte[] salt = new byte[data.readUnsignedByte()];
+            data.readFully(salt);
+            int iterations = salt.length > 0 ? data.readInt() : 0;
+
+            validate(algorithm, layout, keyBits, nonce, chunkSize, alphabet, wrappedKey, salt, iterations);
+
+            return new EncryptedFileHeader(algorithm, layout, keyBits, nonce, chunkSize, alphabet, wrappedKey, salt,
+                    iterations);
+
+        } catch (EOFException e) {
+            throw CryptoException.corruptedData();
+        }
+    }
+
+    /**
+     * Проверяет поля, от которых зависят размеры буферов и параметры шифра
+     */
+    private static void validate(String algorithm, Layout layout, int keyBits, byte[] nonce, int chunkSize,
+                                 Alphabet alphabet, byte[] wrappedKey, byte[] salt, int iterations)
+            throws CryptoException {
+        boolean classical = algorithm.equals("CAESAR") || algorithm.equals("VIGENERE");
+
+        // Классические шифры пишут единый поток с алфавитом, без nonce и пароля,
+        // AES и ChaCha20 - сегменты с ключом из пароля
+        boolean valid = classical
+                ? layout == Layout.STREAM && nonce.length == 0 && alphabet != null
+                        && wrappedKey.length == 0 && salt.length == 0
+                : layout == Layout.SEGMENTED && chunkSize >= 1 && chunkSize <= MAX_CHUNK_SIZE
+                        && nonce.length == SegmentedFileCipher.NONCE_LENGTH && alphabet == null
+                        && (keyBits == 128 || keyBits == 192 || keyBits == 256)
+                        && salt.length == KeyDerivation.SALT_LENGTH
+                        && iterations >= 1 && iterations <= MAX_ITERATIONS;
+
+        // AESWrap добавляет к 256-битному ключу данных 8 байт
+        if (!valid || !classical && wrappedKey.length != 40) {
+            throw CryptoException.corruptedData();
+        }
+    }
+
+    /**
+     * Разбирает буквы алфавита: строчные и прописные поровну, в UTF-8 без ошибок
+     */
+    private static Alphabet readAlphabet(byte[] letters) throws CryptoException {
+        String text;
+        try {
+            text = StandardCharsets.UTF_8.newDecoder().decode(ByteBuffer.wrap(letters)).toString();
+        } catch (CharacterCodingException e) {
+            throw CryptoException.corruptedData();
+        }
+        if (text.length() % 2 != 0) {
+            throw CryptoException.corruptedData();
+        }
+        int half = text.length() / 2;
+        return Alphabet.forLetters(text.substring(0, half), text.substring(half));
+    }
+
+    private static int algorithmId(String algorithm) throws CryptoException {
+        for (int i = 0; i < ALGORITHM_IDS.length; i++) {
+            if (ALGORITHM_IDS[i].equals(algorithm)) {
+                return i + 1;
+            }
+        }
+        throw new CryptoException("Алгоритм не поддерживается форматом файла: " + algorithm);
+    }
+
+    private static String algorithmName(int id) throws CryptoException {
+        if (id < 1 || id > ALGORITHM_IDS.length) {
+            throw new CryptoException("Неизвестный идентификатор алгоритма в файле: " + id);
+        }
+        return ALGORITHM_IDS[id - 1];
+    }
+
+    /**
+     * Возвращает длину заголовка в байтах - смещение начала зашифрованных данных
+     */
+    public int getLength() {
+        return getFixedLength() + 1 + wrappedKey.length + 1 + salt.length + (salt.length > 0 ? 4 : 0);
+    }
+
+    private int getFixedLength() {
+        return MAGIC.length + 1 + 1 + 1 + 2 + 1 + nonce.length + 4 + 2 + alphabetBytes().length;
+    }
+
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    public Layout getLayout() {
+        return layout;
+    }
+
+    public int getKeyBits() {
+        return keyBits;
+    }
+
+    public byte[] getNonce() {
+        return nonce.clone();
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Алфавит классического шифра или null для AES и ChaCha20
+     */
+    public Alphabet getAlphabet() {
+        return alphabet;
+    }
+
+    /**
+     * Проверяет, зашифрованы ли данные отдельным ключом данных
+     */
+    public boolean isEnvelope() {
+        return wrappedKey.length > 0;
+    }
+
+    public byte[] getWrappedKey() {
+        return wrappedKey.clone();
+    }
+
+    /**
+     * Проверяет, получается ли ключ из пароля через PBKDF2
+     */
+    public boolean isPasswordBased() {
+        return salt.length > 0;
+    }
+
+    public byte[] getSalt() {
+        return salt.clone();
+    }
+
+    public int getIterations() {
+        return iterations;
+    }
+}
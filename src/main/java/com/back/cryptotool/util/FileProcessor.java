@@ -1,57 +1,243 @@
 package com.back.cryptotool.util;
 
+import com.back.cryptotool.crypto.AesCipher;
+import com.back.cryptotool.crypto.Alphabet;
+import com.back.cryptotool.crypto.CaesarCipher;
+import com.back.cryptotool.crypto.ChaCha20Cipher;
 import com.back.cryptotool.crypto.CryptoManager;
 import com.back.cryptotool.crypto.CryptoException;
+import com.back.cryptotool.crypto.CryptoService;
+import com.back.cryptotool.crypto.Hkdf;
+import com.back.cryptotool.crypto.KeyDerivation;
+import com.back.cryptotool.crypto.NonceGenerator;
+import com.back.cryptotool.crypto.PreparedKey;
+import com.back.cryptotool.crypto.VigenereCipher;
 
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
 
 /**
- * Утилита для обработки файлов - шифрование и дешифрование
+ * Утилита для обработки файлов - шифрование и дешифрование.
+ * Закрытие обработчика останавливает потоки сегментного шифрования и обработки записей.
  */
-public class FileProcessor {
+public class FileProcessor implements AutoCloseable {
 
-    private static final long MAX_FILE_SIZE = 50 * 1024 * 1024; // 50 МБ
     private static final String ENCRYPTED_EXTENSION = ".enc";
 
+    // Журнал смены ключа: старый заголовок на время перезаписи
+    private static final String JOURNAL_EXTENSION = ".journal";
+    private static final int CHUNK_SIZE = 1024 * 1024; // 1 МБ на порцию чтения/записи
+
+    // Ключ данных конвертного шифрования всегда 256-битный: обернутый ключ
+    // имеет одну длину при любом размере ключа пользователя
+    private static final AesCipher.KeySize DATA_KEY_SIZE = AesCipher.KeySize.AES_256;
+
+    // Размер ключа обертки, получаемого из пароля
+    private static final AesCipher.KeySize PASSWORD_KEY_SIZE = AesCipher.KeySize.AES_256;
+
+    /**
+     * Способ чтения и записи файлов
+     */
+    public enum IoStrategy {
+        STREAMING("Потоковый"),
+        DIRECT_BUFFERS("Прямые буферы"),
+        MEMORY_MAPPED("Отображение в память");
+
+        private final String displayName;
+
+        IoStrategy(String displayName) {
+            this.displayName = displayName;
+        }
+
+        public String getDisplayName() { return displayName; }
+    }
+
+    /**
+     * Получает ход шифрования или дешифрования файла. Вызывается из рабочих потоков.
+     */
+    @FunctionalInterface
+    public interface ProgressListener {
+
+        ProgressListener NONE = (processed, total) -> { };
+
+        /**
+         * @param processed сколько байт входного файла обработано
+         * @param total сколько байт нужно обработать
+         */
+        void onProgress(long processed, long total);
+    }
+
+    /**
+     * Результат шифрования или дешифрования файла
+     */
+    public static final class FileResult {
+        private final File file;
+        private final IoStrategy ioStrategy;
+
+        FileResult(File file, IoStrategy ioStrategy) {
+            this.file = file;
+            this.ioStrategy = ioStrategy;
+        }
+
+        public File getFile() { return file; }
+
+        /**
+         * Способ ввода-вывода, фактически использованный для файла: потоковые
+         * шифры всегда читают файл потоком, какой бы способ ни был запрошен
+         */
+        public IoStrategy getIoStrategy() { return ioStrategy; }
+    }
+
     private final CryptoManager cryptoManager;
+    private final SegmentedFileCipher segmentedCipher;
+    private final RecordFileCipher recordCipher;
 
     public FileProcessor(CryptoManager cryptoManager) {
         this.cryptoManager = cryptoManager;
+        this.segmentedCipher = new SegmentedFileCipher();
+        this.recordCipher = new RecordFileCipher(cryptoManager);
+    }
+
+    @Override
+    public void close() {
+        segmentedCipher.close();
+        recordCipher.close();
     }
 
     /**
-     * Шифрует файл
+     * Шифрует файл и сохраняет результат в бинарном контейнере с заголовком
+     * {@link EncryptedFileHeader}. AES и ChaCha20-Poly1305 шифруются независимыми
+     * сегментами AEAD на всех ядрах, остальные алгоритмы - единым потоком порциями
+     * фиксированного размера.
+     *
+     * AES и ChaCha20 используют конвертное шифрование: данные шифруются случайным
+     * ключом данных, который обернут (AES Key Wrap) ключом пользователя и хранится
+     * в заголовке. Поэтому ключ пользователя меняется без перешифрования ({@link #rotateKey}).
+     * Ключ пользователя - пароль любой длины: ключ обертки получается из него
+     * через PBKDF2 с солью, сохраненной в заголовке ({@link KeyDerivation}).
+     * Каждый сегмент шифруется своим ключом, полученным через HKDF ({@link Hkdf}).
+     * Для {@link CryptoManager#AUTO} алгоритм выбирается по калибровке.
      */
     public File encryptFile(File inputFile, String algorithm, String key)
             throws CryptoException, IOException {
+        return encryptFile(inputFile, algorithm, key, IoStrategy.STREAMING, ProgressListener.NONE).getFile();
+    }
 
-        validateFile(inputFile);
-
-        // Читаем файл в байты
-        byte[] fileBytes = Files.readAllBytes(inputFile.toPath());
+    /**
+     * Шифрует файл указанным способом ввода-вывода (см. {@link #encryptFile(File, String, String)}).
+     * Прямые буферы и отображение в память используются для сегментного шифрования
+     * (AES, ChaCha20); потоковые шифры всегда читают файл потоком.
+     */
+    public FileResult encryptFile(File inputFile, String algorithm, String key, IoStrategy strategy,
+                                  ProgressListener progress) throws CryptoException, IOException {
 
-        // Преобразуем байты в Base64 строку для шифрования
-        String base64Data = java.util.Base64.getEncoder().encodeToString(fileBytes);
+        validateFile(inputFile);
 
-        // Шифруем данные
-        String encryptedData = cryptoManager.encrypt(algorithm, base64Data, key);
+        // Для AUTO в заголовок записывается фактически выбранный алгоритм. Ключ AES и
+        // ChaCha20 получается из пароля, поэтому длина ключа на выбор не влияет
+        String algorithmName = cryptoManager.resolveAlgorithmName(algorithm, null);
+        CryptoService service = getAlgorithm(algorithmName);
 
         // Создаем выходной файл
         File outputFile = new File(inputFile.getAbsolutePath() + ENCRYPTED_EXTENSION);
 
-        // Сохраняем зашифрованные данные
-        Files.write(outputFile.toPath(), encryptedData.getBytes());
+        if (service instanceof AesCipher || service instanceof ChaCha20Cipher) {
+            SecretKey masterKey;
+            byte[] wrappedKey;
 
-        return outputFile;
+            KeyDerivation.DerivedKey derived =
+                    KeyDerivation.getInstance().deriveForEncryption(key, PASSWORD_KEY_SIZE.getBytes());
+            byte[] passwordKey = derived.getKey();
+            byte[] dataKey = NonceGenerator.getInstance().nextBytes(DATA_KEY_SIZE.getBytes());
+            try {
+                wrappedKey = AesCipher.wrapKey(new SecretKeySpec(passwordKey, "AES"), dataKey);
+                masterKey = new SecretKeySpec(dataKey, segmentKeyAlgorithm(algorithmName));
+            } finally {
+                Arrays.fill(passwordKey, (byte) 0);
+                Arrays.fill(dataKey, (byte) 0);
+            }
+
+            byte[] nonce = NonceGenerator.getInstance().nextBytes(SegmentedFileCipher.NONCE_LENGTH);
+
+            EncryptedFileHeader header = new EncryptedFileHeader(algorithmName, EncryptedFileHeader.Layout.SEGMENTED,
+                    PASSWORD_KEY_SIZE.getBits(), nonce, CHUNK_SIZE, wrappedKey)
+                    .withKeyDerivation(derived.getSalt(), derived.getIterations());
+            SecretKey fileKey = createFileKey(masterKey, header);
+            byte[] associatedData = header.getAssociatedData();
+            LongConsumer segmentProgress = segmentProgress(progress, inputFile.length());
+
+            processChannels(inputFile, outputFile, (input, output) -> {
+                byte[] headerBytes = header.toByteArray();
+                output.write(ByteBuffer.wrap(headerBytes), 0);
+
+                if (strategy == IoStrategy.MEMORY_MAPPED) {
+                    segmentedCipher.encryptMapped(input, output, headerBytes.length, fileKey, nonce, CHUNK_SIZE,
+                            associatedData, segmentProgress);
+                } else if (strategy == IoStrategy.DIRECT_BUFFERS) {
+                    segmentedCipher.encryptDirect(input, output, headerBytes.length, fileKey, nonce, CHUNK_SIZE,
+                            associatedData, segmentProgress);
+                } else {
+                    segmentedCipher.encrypt(input, output, headerBytes.length, fileKey, nonce, CHUNK_SIZE,
+                            associatedData, segmentProgress);
+                }
+            });
+            return new FileResult(outputFile, strategy);
+        }
+
+        // Генерируем вектор инициализации, если он нужен алгоритму
+        byte[] nonce = NonceGenerator.getInstance().nextBytes(service.getNonceLength());
+
+        EncryptedFileHeader header = new EncryptedFileHeader(algorithmName, EncryptedFileHeader.Layout.STREAM,
+                service.getKeyBits(), nonce, CHUNK_SIZE).withAlphabet(getAlphabet(service));
+
+        // Потоковые шифры работают только через InputStream/OutputStream
+        // Ключ готовим от уже полученного экземпляра: смена настроек в менеджере
+        // во время шифрования не должна разойтись с записанным заголовком
+        PreparedKey preparedKey = service.prepare(key);
+
+        processFile(inputFile, outputFile, progress, (input, output) -> {
+            header.write(output);
+            preparedKey.encrypt(input, output, nonce);
+        });
+
+        return new FileResult(outputFile, IoStrategy.STREAMING);
     }
 
     /**
-     * Дешифрует файл
+     * Дешифрует файл. Алгоритм и раскладка данных берутся из заголовка контейнера;
+     * параметр algorithm используется только для файлов старого текстового формата.
      */
     public File decryptFile(File inputFile, String algorithm, String key)
             throws CryptoException, IOException {
+        return decryptFile(inputFile, algorithm, key, IoStrategy.STREAMING, ProgressListener.NONE).getFile();
+    }
+
+    /**
+     * Дешифрует файл указанным способом ввода-вывода (см. {@link #decryptFile(File, String, String)})
+     */
+    public FileResult decryptFile(File inputFile, String algorithm, String key, IoStrategy strategy,
+                                  ProgressListener progress) throws CryptoException, IOException {
 
         validateFile(inputFile);
 
@@ -59,25 +245,430 @@ public class FileProcessor {
             throw new CryptoException("Файл не является зашифрованным (отсутствует расширение .enc)");
         }
 
-        // Читаем зашифрованный файл
-        byte[] encryptedBytes = Files.readAllBytes(inputFile.toPath());
-        String encryptedData = new String(encryptedBytes);
+        // Восстанавливаем имя файла
+        File outputFile = restoreOriginalFileName(inputFile);
 
-        // Дешифруем данные
-        String decryptedBase64 = cryptoManager.decrypt(algorithm, encryptedData, key);
+        recoverHeader(inputFile);
+        EncryptedFileHeader header = readHeader(inputFile);
 
-        // Преобразуем из Base64 обратно в байты
-        byte[] decryptedBytes = java.util.Base64.getDecoder().decode(decryptedBase64);
+        if (header != null && header.getLayout() == EncryptedFileHeader.Layout.SEGMENTED) {
+            SecretKey secretKey = createFileKey(createSegmentKey(key, header), header);
+            byte[] associatedData = header.getAssociatedData();
+            LongConsumer segmentProgress = segmentProgress(progress, inputFile.length() - header.getLength());
 
-        // Восстанавливаем имя файла
-        File outputFile = restoreOriginalFileName(inputFile);
+            processChannels(inputFile, outputFile, (input, output) -> {
+                if (strategy == IoStrategy.MEMORY_MAPPED) {
+                    segmentedCipher.decryptMapped(input, header.getLength(), output,
+                            secretKey, header.getNonce(), header.getChunkSize(), associatedData, segmentProgress);
+                } else if (strategy == IoStrategy.DIRECT_BUFFERS) {
+                    segmentedCipher.decryptDirect(input, header.getLength(), output,
+                            secretKey, header.getNonce(), header.getChunkSize(), associatedData, segmentProgress);
+                } else {
+                    segmentedCipher.decrypt(input, header.getLength(), output,
+                            secretKey, header.getNonce(), header.getChunkSize(), associatedData, segmentProgress);
+                }
+            });
+            return new FileResult(outputFile, strategy);
+        }
 
-        // Сохраняем расшифрованные данные
-        Files.write(outputFile.toPath(), decryptedBytes);
+        processFile(inputFile, outputFile, progress, (input, output) -> {
+            if (header == null) {
+                decryptLegacy(input, output, algorithm, key);
+                return;
+            }
 
+            PreparedKey preparedKey = getAlgorithm(header).prepare(key);
+
+            input.skipNBytes(header.getLength());
+            preparedKey.decrypt(input, output, header.getNonce());
+        });
+
+        return new FileResult(outputFile, IoStrategy.STREAMING);
+    }
+
+    /**
+     * Шифрует выбранные поля файла CSV или JSON Lines, оставляя остальные данные читаемыми.
+     * Результат сохраняется рядом с исходным файлом: data.csv - data.enc.csv.
+     *
+     * @param inputFile файл .csv, .jsonl или .ndjson
+     * @param fields имена столбцов CSV или полей JSON
+     */
+    public File encryptRecords(File inputFile, Collection<String> fields, String algorithm, String key)
+            throws CryptoException, IOException {
+
+        validateFile(inputFile);
+
+        RecordFileCipher.Format format = RecordFileCipher.Format.fromFileName(inputFile.getName());
+        File outputFile = new File(inputFile.getParent(), insertBeforeExtension(inputFile.getName(), ENCRYPTED_EXTENSION));
+
+        recordCipher.encrypt(inputFile, outputFile, format, fields, algorithm, key);
         return outputFile;
     }
 
+    /**
+     * Дешифрует выбранные поля файла, полученного из {@link #encryptRecords}.
+     * Из имени убирается .enc: data.enc.csv - data.csv.
+     */
+    public File decryptRecords(File inputFile, Collection<String> fields, String algorithm, String key)
+            throws CryptoException, IOException {
+
+        validateFile(inputFile);
+
+        RecordFileCipher.Format format = RecordFileCipher.Format.fromFileName(inputFile.getName());
+        String name = inputFile.getName();
+        int extension = name.lastIndexOf('.');
+        String baseName = name.substring(0, extension);
+
+        String outputName = baseName.toLowerCase().endsWith(ENCRYPTED_EXTENSION)
+                ? baseName.substring(0, baseName.length() - ENCRYPTED_EXTENSION.length()) + name.substring(extension)
+                : insertBeforeExtension(name, ".decrypted");
+
+        File outputFile = new File(inputFile.getParent(), outputName);
+        recordCipher.decrypt(inputFile, outputFile, format, fields, algorithm, key);
+        return outputFile;
+    }
+
+    private static String insertBeforeExtension(String fileName, String suffix) {
+        int extension = fileName.lastIndexOf('.');
+        return fileName.substring(0, extension) + suffix + fileName.substring(extension);
+    }
+
+    /**
+     * Читает заголовок зашифрованного файла
+     *
+     * @return заголовок или null, если файл сохранен в старом текстовом формате
+     */
+    public EncryptedFileHeader readHeader(File file) throws CryptoException, IOException {
+        try (InputStream input = new BufferedInputStream(Files.newInputStream(file.toPath()))) {
+            return EncryptedFileHeader.hasHeader(input) ? EncryptedFileHeader.read(input) : null;
+        }
+    }
+
+    /**
+     * Дешифрует файл старого формата (Base64-текст, созданный до появления контейнера).
+     * Такие файлы не превышали 50 МБ, поэтому читаются целиком.
+     */
+    private void decryptLegacy(InputStream input, OutputStream output, String algorithm, String key)
+            throws CryptoException, IOException {
+
+        String encryptedData = new String(input.readAllBytes(), StandardCharsets.UTF_8);
+        String decryptedBase64 = cryptoManager.decrypt(algorithm, encryptedData, key);
+
+        try {
+            output.write(Base64.getDecoder().decode(decryptedBase64));
+        } catch (IllegalArgumentException e) {
+            throw CryptoException.corruptedData();
+        }
+    }
+
+    /**
+     * Возвращает классический шифр из заголовка с алфавитом, которым зашифрован
+     * файл, а не выбранным сейчас в менеджере
+     */
+    private CryptoService getAlgorithm(EncryptedFileHeader header) throws CryptoException {
+        CryptoService service = getAlgorithm(header.getAlgorithm());
+        if (service instanceof CaesarCipher) {
+            return ((CaesarCipher) service).withAlphabet(header.getAlphabet());
+        }
+        if (service instanceof VigenereCipher) {
+            return ((VigenereCipher) service).withAlphabet(header.getAlphabet());
+        }
+        return service;
+    }
+
+    /**
+     * Возвращает алфавит классического шифра для заголовка
+     */
+    private static Alphabet getAlphabet(CryptoService service) throws CryptoException {
+        if (service instanceof CaesarCipher) {
+            return ((CaesarCipher) service).getAlphabet();
+        }
+        if (service instanceof VigenereCipher) {
+            return ((VigenereCipher) service).getAlphabet();
+        }
+        throw new CryptoException("Потоковое шифрование файлов не поддерживается алгоритмом " + service.getName());
+    }
+
+    /**
+     * Возвращает ключ файла, от которого получаются ключи сегментов:
+     * HKDF из главного ключа и nonce файла
+     */
+    private static SecretKey createFileKey(SecretKey masterKey, EncryptedFileHeader header) throws CryptoException {
+        byte[] master = masterKey.getEncoded();
+        byte[] fileKey = Hkdf.fileKey(master, header.getNonce(), master.length);
+        try {
+            return new SecretKeySpec(fileKey, masterKey.getAlgorithm());
+        } finally {
+            Arrays.fill(master, (byte) 0);
+            Arrays.fill(fileKey, (byte) 0);
+        }
+    }
+
+    /**
+     * Создает главный ключ сегментов файла: разворачивает ключ данных из
+     * заголовка ключом, полученным из пароля
+     */
+    private static SecretKey createSegmentKey(String password, EncryptedFileHeader header) throws CryptoException {
+        byte[] passwordKey = derivePasswordKey(password, header);
+        try {
+            byte[] dataKey = AesCipher.unwrapKey(new SecretKeySpec(passwordKey, "AES"), header.getWrappedKey());
+            SecretKey secretKey = new SecretKeySpec(dataKey, segmentKeyAlgorithm(header.getAlgorithm()));
+            Arrays.fill(dataKey, (byte) 0);
+            return secretKey;
+        } finally {
+            Arrays.fill(passwordKey, (byte) 0);
+        }
+    }
+
+    /**
+     * Алгоритм ключа сегментов: по нему {@link SegmentedFileCipher} выбирает шифр
+     */
+    private static String segmentKeyAlgorithm(String algorithm) {
+        return algorithm.equals("CHACHA20") ? ChaCha20Cipher.ALGORITHM : "AES";
+    }
+
+    /**
+     * Получает ключ из пароля по соли и числу итераций из заголовка
+     */
+    private static byte[] derivePasswordKey(String password, EncryptedFileHeader header) throws CryptoException {
+        return KeyDerivation.getInstance().derive(password, header.getSalt(), header.getIterations(),
+                header.getKeyBits() / 8);
+    }
+
+    /**
+     * Меняет ключ пользователя у зашифрованного файла без перешифрования данных
+     *
+     * @see #rotateKeys(Collection, String, String)
+     */
+    public void rotateKey(File encryptedFile, String oldKey, String newKey) throws CryptoException, IOException {
+        rotateKeys(List.of(encryptedFile), oldKey, newKey);
+    }
+
+    /**
+     * Меняет ключ пользователя у группы зашифрованных файлов. Ключ данных каждого
+     * файла разворачивается старым ключом и оборачивается новым; меняется только
+     * заголовок, данные не перешифровываются. Новый ключ - пароль любой длины,
+     * ключ обертки получается из него с новой солью.
+     *
+     * Сначала заголовки всех файлов проверяются старым ключом, и только если он
+     * подошел ко всем, заголовки перезаписываются. Заголовок фиксированной длины
+     * перезаписывается на месте, данные файла не копируются. Перед записью старый
+     * заголовок сохраняется в журнал рядом с файлом ({@link #JOURNAL_EXTENSION});
+     * если запись прервалась, при следующем открытии файла старый заголовок
+     * восстанавливается из журнала и файл снова открывается старым ключом.
+     * Если замена прервалась на середине группы, в сообщении исключения
+     * перечислены файлы, ключ которых уже сменен.
+     *
+     * @return количество обработанных файлов
+     * @throws CryptoException если старый ключ не подходит, файл зашифрован без конверта
+     *                         или замена файла не удалась после смены ключа части группы
+     */
+    public int rotateKeys(Collection<File> files, String oldKey, String newKey) throws CryptoException, IOException {
+        List<File> targets = new ArrayList<>(files.size());
+        List<byte[]> headers = new ArrayList<>(files.size());
+
+        for (File file : files) {
+            validateFile(file);
+            recoverHeader(file);
+
+            EncryptedFileHeader header = readHeader(file);
+            if (header == null || !header.isEnvelope()) {
+                throw new CryptoException("Файл " + file.getName()
+                        + " зашифрован без конверта ключа, для смены ключа его нужно перешифровать");
+            }
+
+            byte[] rotated = rotatePasswordKey(header, oldKey, newKey);
+            if (rotated.length != header.getLength()) {
+                throw new CryptoException("Длина заголовка изменилась при смене ключа: " + file.getName());
+            }
+
+            targets.add(file);
+            headers.add(rotated);
+        }
+
+        for (int i = 0; i < targets.size(); i++) {
+            try {
+                replaceHeader(targets.get(i), headers.get(i));
+            } catch (CryptoException | IOException e) {
+                if (i == 0) {
+                    throw e;
+                }
+                List<String> rotated = new ArrayList<>(i);
+                for (File file : targets.subList(0, i)) {
+                    rotated.add(file.getName());
+                }
+                throw new CryptoException("Ключ сменен у " + i + " из " + targets.size() + " файлов ("
+                        + String.join(", ", rotated) + "), файл " + targets.get(i).getName()
+                        + " и следующие не изменены: " + e.getMessage(), e);
+            }
+        }
+        return targets.size();
+    }
+
+    /**
+     * Перезаписывает заголовок файла на месте новым заголовком той же длины.
+     * Старый заголовок сначала сохраняется в журнал и сбрасывается на диск,
+     * журнал удаляется только после того, как на диск сброшен новый заголовок.
+     */
+    private void replaceHeader(File file, byte[] header) throws CryptoException, IOException {
+        Path journal = journalFile(file);
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer oldHeader = ByteBuffer.allocate(header.length);
+            while (oldHeader.hasRemaining()) {
+                if (channel.read(oldHeader, oldHeader.position()) < 0) {
+                    throw CryptoException.corruptedData();
+                }
+            }
+
+            // Если журнал уже есть, ключ файла меняет другой процесс: CREATE_NEW не даст его затереть
+            FileChannel journalChannel = FileChannel.open(journal, StandardOpenOption.WRITE,
+                    StandardOpenOption.CREATE_NEW);
+            try {
+                try (journalChannel) {
+                    writeFully(journalChannel, oldHeader.flip());
+                    journalChannel.force(true);
+                }
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(journal);
+                throw e;
+            }
+
+            writeFully(channel, ByteBuffer.wrap(header));
+            channel.force(true);
+        }
+        Files.delete(journal);
+    }
+
+    /**
+     * Восстанавливает старый заголовок, если смена ключа файла была прервана.
+     * Старый заголовок и данные файла всегда согласованы, поэтому после
+     * восстановления файл открывается старым ключом. Недописанный журнал
+     * (сбой до начала перезаписи заголовка) просто удаляется.
+     */
+    private void recoverHeader(File file) throws CryptoException, IOException {
+        Path journal = journalFile(file);
+        if (!Files.isRegularFile(journal)) {
+            return;
+        }
+
+        byte[] oldHeader = Files.readAllBytes(journal);
+        boolean complete;
+        try {
+            complete = EncryptedFileHeader.read(new ByteArrayInputStream(oldHeader)).getLength() == oldHeader.length;
+        } catch (CryptoException e) {
+            complete = false;
+        }
+
+        if (complete) {
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+                writeFully(channel, ByteBuffer.wrap(oldHeader));
+                channel.force(true);
+            }
+        }
+        Files.delete(journal);
+    }
+
+    private static Path journalFile(File file) {
+        return new File(file.getParentFile(), file.getName() + JOURNAL_EXTENSION).toPath();
+    }
+
+    /**
+     * Записывает буфер с начала файла
+     */
+    private static void writeFully(FileChannel channel, ByteBuffer data) throws IOException {
+        while (data.hasRemaining()) {
+            channel.write(data, data.position());
+        }
+    }
+
+    /**
+     * Оборачивает ключ данных ключом, полученным из нового пароля с новой солью
+     */
+    private byte[] rotatePasswordKey(EncryptedFileHeader header, String oldPassword, String newPassword)
+            throws CryptoException {
+        byte[] oldPasswordKey = derivePasswordKey(oldPassword, header);
+        byte[] dataKey;
+        try {
+            dataKey = AesCipher.unwrapKey(new SecretKeySpec(oldPasswordKey, "AES"), header.getWrappedKey());
+        } finally {
+            Arrays.fill(oldPasswordKey, (byte) 0);
+        }
+
+        KeyDerivation.DerivedKey derived =
+                KeyDerivation.getInstance().deriveForEncryption(newPassword, PASSWORD_KEY_SIZE.getBytes());
+        byte[] newPasswordKey = derived.getKey();
+        try {
+            byte[] wrappedKey = AesCipher.wrapKey(new SecretKeySpec(newPasswordKey, "AES"), dataKey);
+            return header.withWrappedKey(PASSWORD_KEY_SIZE.getBits(), wrappedKey)
+                    .withKeyDerivation(derived.getSalt(), derived.getIterations())
+                    .toByteArray();
+        } finally {
+            Arrays.fill(dataKey, (byte) 0);
+            Arrays.fill(newPasswordKey, (byte) 0);
+        }
+    }
+
+    private CryptoService getAlgorithm(String algorithm) throws CryptoException {
+        CryptoService service = cryptoManager.getAlgorithmDetails(algorithm);
+        if (service == null) {
+            throw new CryptoException("Алгоритм не найден: " + algorithm);
+        }
+        return service;
+    }
+
+    /**
+     * Пропускает содержимое файла через потоковую операцию шифрования
+     * и сообщает, сколько байт входного файла прочитано
+     */
+    private void processFile(File inputFile, File outputFile, ProgressListener progress, StreamOperation operation)
+            throws CryptoException, IOException {
+
+        long total = inputFile.length();
+        deleteOnFailure(outputFile, () -> {
+            try (InputStream input = new BufferedInputStream(
+                    new ProgressInputStream(Files.newInputStream(inputFile.toPath()), progress, total), CHUNK_SIZE);
+                 OutputStream output = new BufferedOutputStream(Files.newOutputStream(outputFile.toPath()), CHUNK_SIZE)) {
+                operation.apply(input, output);
+            }
+        });
+    }
+
+    /**
+     * Открывает каналы файлов для операций с произвольным доступом (сегментная обработка)
+     */
+    private void processChannels(File inputFile, File outputFile, ChannelOperation operation)
+            throws CryptoException, IOException {
+
+        deleteOnFailure(outputFile, () -> {
+            try (FileChannel input = FileChannel.open(inputFile.toPath(), StandardOpenOption.READ);
+                 FileChannel output = FileChannel.open(outputFile.toPath(), StandardOpenOption.READ,
+                         StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                operation.apply(input, output);
+            }
+        });
+    }
+
+    /**
+     * Складывает размеры сегментов, обработанных в разных потоках, в общий ход обработки
+     */
+    private static LongConsumer segmentProgress(ProgressListener progress, long total) {
+        AtomicLong processed = new AtomicLong();
+        return length -> progress.onProgress(processed.addAndGet(length), total);
+    }
+
+    /**
+     * Выполняет операцию и удаляет недописанный выходной файл при ошибке
+     */
+    private void deleteOnFailure(File outputFile, FileOperation operation) throws CryptoException, IOException {
+        try {
+            operation.run();
+        } catch (CryptoException | IOException | RuntimeException e) {
+            Files.deleteIfExists(outputFile.toPath());
+            throw e;
+        }
+    }
+
     /**
      * Проверяет файл перед обработкой
      */
@@ -86,13 +677,6 @@ public class FileProcessor {
             throw new CryptoException("Файл не существует: " + file.getName());
         }
 
-        if (file.length() > MAX_FILE_SIZE) {
-            throw new CryptoException(
-                    String.format("Файл слишком большой: %.1f МБ. Максимум: 50 МБ",
-                            file.length() / (1024.0 * 1024.0))
-            );
-        }
-
         if (file.length() == 0) {
             throw new CryptoException("Файл пуст: " + file.getName());
         }
@@ -129,12 +713,75 @@ public class FileProcessor {
             return size + " Б";
         } else if (size < 1024 * 1024) {
             return String.format("%.1f КБ", size / 1024.0);
-        } else {
+        } else if (size < 1024L * 1024 * 1024) {
             return String.format("%.1f МБ", size / (1024.0 * 1024.0));
+        } else {
+            return String.format("%.1f ГБ", size / (1024.0 * 1024.0 * 1024.0));
         }
     }
 
-    public static long getMaxFileSize() {
-        return MAX_FILE_SIZE;
+    /**
+     * Операция над парой потоков (шифрование или дешифрование)
+     */
+    @FunctionalInterface
+    private interface StreamOperation {
+        void apply(InputStream input, OutputStream output) throws CryptoException, IOException;
+    }
+
+    /**
+     * Операция над парой файловых каналов
+     */
+    @FunctionalInterface
+    private interface ChannelOperation {
+        void apply(FileChannel input, FileChannel output) throws CryptoException, IOException;
+    }
+
+    @FunctionalInterface
+    private interface FileOperation {
+        void run() throws CryptoException, IOException;
+    }
+
+    /**
+     * Поток, сообщающий, сколько байт из него прочитано
+     */
+    private static final class ProgressInputStream extends FilterInputStream {
+        private final ProgressListener progress;
+        private final long total;
+        private long processed;
+
+        ProgressInputStream(InputStream input, ProgressListener progress, long total) {
+            super(input);
+            this.progress = progress;
+            this.total = total;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int value = super.read();
+            if (value >= 0) {
+                progress.onProgress(++processed, total);
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                processed += read;
+                progress.onProgress(processed, total);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long count) throws IOException {
+            long skipped = super.skip(count);
+            if (skipped > 0) {
+                processed += skipped;
+                progress.onProgress(processed, total);
+            }
+            return skipped;
+        }
     }
 }
@@ -0,0 +1,659 @@
+package com.back.cryptotool.util;
+
+import com.back.cryptotool.crypto.CryptoException;
+import com.back.cryptotool.crypto.CryptoManager;
+import com.back.cryptotool.crypto.PreparedKey;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Построчное шифрование отдельных полей в файлах CSV и JSON Lines.
+ *
+ * Шифруются только указанные столбцы CSV (по именам из строки заголовка) или
+ * строковые поля верхнего уровня JSON-объектов, остальные данные остаются
+ * читаемыми. Файл читается пакетами строк, пакеты обрабатываются в пуле
+ * потоков, а результаты записываются строго в исходном порядке. Число пакетов
+ * в работе ограничено, поэтому память не зависит от размера файла.
+ *
+ * Все, кроме обработанных значений, переносится в результат без изменений:
+ * окончания строк (\n, \r\n или \r), кавычки нетронутых полей CSV и метка
+ * порядка байт UTF-8 в начале файла (она не считается частью первого поля).
+ */
+public class RecordFileCipher implements AutoCloseable {
+
+    private static final int BATCH_LINES = 4096;
+    private static final int BATCH_CHARS = 1024 * 1024;
+    private static final int BUFFER_SIZE = 1024 * 1024;
+    private static final char BYTE_ORDER_MARK = '\uFEFF';
+
+    /**
+     * Формат файла с записями
+     */
+    public enum Format {
+        CSV("CSV"),
+        JSON_LINES("JSON Lines");
+
+        private final String displayName;
+
+        Format(String displayName) {
+            this.displayName = displayName;
+        }
+
+        public String getDisplayName() { return displayName; }
+
+        /**
+         * Определяет формат по расширению файла (.csv, .jsonl, .ndjson)
+         */
+        public static Format fromFileName(String fileName) throws CryptoException {
+            String name = fileName.toLowerCase(Locale.ROOT);
+            if (name.endsWith(".csv")) {
+                return CSV;
+            }
+            if (name.endsWith(".jsonl") || name.endsWith(".ndjson")) {
+                return JSON_LINES;
+            }
+            throw new CryptoException("Неизвестный формат файла записей: " + fileName);
+        }
+    }
+
+    private final CryptoManager cryptoManager;
+    private final ForkJoinPool pool;
+
+    public RecordFileCipher(CryptoManager cryptoManager) {
+        this(cryptoManager, Runtime.getRuntime().availableProcessors());
+    }
+
+    public RecordFileCipher(CryptoManager cryptoManager, int parallelism) {
+        this.cryptoManager = cryptoManager;
+        this.pool = new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * Останавливает пул обработки пакетов
+     */
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+
+    /**
+     * Шифрует указанные поля всех записей файла
+     *
+     * @param input исходный файл
+     * @param output файл результата
+     * @param format формат записей
+     * @param fields имена столбцов CSV или полей JSON
+     * @param algorithm алгоритм шифрования
+     * @param key ключ шифрования
+     * @return количество обработанных записей
+     */
+    public long encrypt(File input, File output, Format format, Collection<String> fields,
+                        String algorithm, String key) throws CryptoException, IOException {
+        PreparedKey preparedKey = cryptoManager.prepare(algorithm, key);
+        return process(input, output, format, fields, value -> cryptoManager.encrypt(preparedKey, value));
+    }
+
+    /**
+     * Дешифрует указанные поля всех записей файла
+     *
+     * @see #encrypt(File, File, Format, Collection, String, String)
+     */
+    public long decrypt(File input, File output, Format format, Collection<String> fields,
+                        String algorithm, String key) throws CryptoException, IOException {
+        PreparedKey preparedKey = cryptoManager.prepare(algorithm, key);
+        return process(input, output, format, fields, value -> cryptoManager.decrypt(preparedKey, value));
+    }
+
+    /**
+     * Шифрует указанные поля записей из input и записывает результат в output.
+     * Потоки не закрываются.
+     */
+    public long encrypt(Reader input, Writer output, Format format, Collection<String> fields,
+                        PreparedKey key) throws CryptoException, IOException {
+        return process(input, output, format, fields, value -> cryptoManager.encrypt(key, value));
+    }
+
+    /**
+     * Дешифрует указанные поля записей из input и записывает результат в output.
+     * Потоки не закрываются.
+     */
+    public long decrypt(Reader input, Writer output, Format format, Collection<String> fields,
+                        PreparedKey key) throws CryptoException, IOException {
+        return process(input, output, format, fields, value -> cryptoManager.decrypt(key, value));
+    }
+
+    private long process(File input, File output, Format format, Collection<String> fields,
+                         FieldOperation operation) throws CryptoException, IOException {
+        boolean completed = false;
+        try (Reader reader = Files.newBufferedReader(input.toPath(), StandardCharsets.UTF_8);
+             Writer writer = Files.newBufferedWriter(output.toPath(), StandardCharsets.UTF_8)) {
+            long records = process(reader, writer, format, fields, operation);
+            completed = true;
+            return records;
+        } finally {
+            if (!completed) {
+                Files.deleteIfExists(output.toPath());
+            }
+        }
+    }
+
+    private long process(Reader input, Writer output, Format format, Collection<String> fields,
+                         FieldOperation operation) throws CryptoException, IOException {
+        LineReader reader = new LineReader(input);
+        Writer writer = output instanceof BufferedWriter ? output : new BufferedWriter(output, BUFFER_SIZE);
+
+        if (reader.skipByteOrderMark()) {
+            writer.write(BYTE_ORDER_MARK);
+        }
+
+        RecordProcessor processor;
+
+        if (format == Format.CSV) {
+            // Строка заголовка копируется как есть и задает номера столбцов
+            String header = readCsvRecord(reader);
+            if (header == null) {
+                writer.flush();
+                return 0;
+            }
+            writer.write(header);
+            processor = new CsvProcessor(header.substring(0, contentLength(header)), fields, operation);
+        } else {
+            processor = new JsonLinesProcessor(fields, operation);
+        }
+
+        // Пакеты в работе в порядке чтения: записываем голову очереди, когда она готова
+        ArrayDeque<ForkJoinTask<String>> inFlight = new ArrayDeque<>();
+        int maxInFlight = pool.getParallelism() * 2;
+        long records = 0;
+
+        try {
+            while (true) {
+                // Номер строки файла, с которой начинается пакет (запись CSV может занимать несколько строк)
+                long firstLine = reader.getLineCount() + 1;
+                List<String> batch = readBatch(reader, format);
+                if (batch.isEmpty()) {
+                    break;
+                }
+                records += batch.size();
+
+                if (pool.getParallelism() == 1) {
+                    writer.write(processor.process(batch, firstLine));
+                    continue;
+                }
+
+                inFlight.add(pool.submit(ForkJoinTask.adapt(() -> processor.process(batch, firstLine))));
+                if (inFlight.size() >= maxInFlight) {
+                    writer.write(inFlight.remove().join());
+                }
+            }
+
+            while (!inFlight.isEmpty()) {
+                writer.write(inFlight.remove().join());
+            }
+        } catch (RuntimeException e) {
+            inFlight.forEach(task -> task.cancel(true));
+
+            // Пул оборачивает исключение задачи - ищем исходную причину
+            Throwable cause = e;
+            while (cause != null && !(cause instanceof CryptoException)) {
+                cause = cause.getCause();
+            }
+            if (cause != null) {
+                throw (CryptoException) cause;
+            }
+            throw e;
+        }
+
+        writer.flush();
+        return records;
+    }
+
+    /**
+     * Читает пакет записей, ограниченный числом строк и объемом текста.
+     * Каждая запись возвращается вместе с окончанием строки.
+     */
+    private static List<String> readBatch(LineReader reader, Format format) throws IOException {
+        List<String> batch = new ArrayList<>();
+        int chars = 0;
+
+        while (batch.size() < BATCH_LINES && chars < BATCH_CHARS) {
+            String record = format == Format.CSV ? readCsvRecord(reader) : reader.readLine();
+            if (record == null) {
+                break;
+            }
+            batch.add(record);
+            chars += record.length();
+        }
+        return batch;
+    }
+
+    /**
+     * Читает запись CSV. Поле в кавычках может содержать переводы строк,
+     * тогда запись продолжается на следующих строках файла. Кавычки считаются
+     * только в новой строке, поэтому длинная запись читается за линейное время.
+     */
+    private static String readCsvRecord(LineReader reader) throws IOException {
+        String line = reader.readLine();
+        if (line == null || !hasOpenQuote(line)) {
+            return line;
+        }
+
+        StringBuilder record = new StringBuilder(line);
+        boolean open = true;
+        String next;
+        while (open && (next = reader.readLine()) != null) {
+            record.append(next);
+            open = hasOpenQuote(next) != open;
+        }
+        return record.toString();
+    }
+
+    /**
+     * Номер строки файла, с которой начинается запись index пакета
+     */
+    private static long lineOf(List<String> records, int index, long firstLine) {
+        long line = firstLine;
+        for (int i = 0; i < index; i++) {
+            String record = records.get(i);
+            for (int j = 0; j < record.length(); j++) {
+                char character = record.charAt(j);
+                boolean lineEnd = character == '\n'
+                        || character == '\r' && (j + 1 == record.length() || record.charAt(j + 1) != '\n');
+                if (lineEnd) {
+                    line++;
+                }
+            }
+        }
+        return line;
+    }
+
+    /**
+     * Длина записи без окончания строки
+     */
+    private static int contentLength(String record) {
+        int length = record.length();
+        if (length > 0 && record.charAt(length - 1) == '\n') {
+            length--;
+        }
+        if (length > 0 && record.charAt(length - 1) == '\r') {
+            length--;
+        }
+        return length;
+    }
+
+    private static boolean hasOpenQuote(CharSequence text) {
+        boolean open = false;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '"') {
+                open = !open;
+            }
+        }
+        return open;
+    }
+
+    @FunctionalInterface
+    private interface FieldOperation {
+        String apply(String value) throws CryptoException;
+    }
+
+    /**
+     * Читает строки вместе с их окончаниями, чтобы записать их в результат без изменений
+     */
+    private static final class LineReader {
+        private final Reader reader;
+        private final char[] buffer = new char[BUFFER_SIZE];
+        private int position;
+        private int limit;
+        private long lineCount;
+
+        LineReader(Reader reader) {
+            this.reader = reader;
+        }
+
+        /**
+         * Пропускает метку порядка байт в начале данных
+         *
+         * @return была ли метка
+         */
+        boolean skipByteOrderMark() throws IOException {
+            if ((position < limit || fill()) && buffer[position] == BYTE_ORDER_MARK) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Возвращает строку с окончанием \n, \r\n или \r (у последней строки его может не быть)
+         * или null в конце данных
+         */
+        String readLine() throws IOException {
+            StringBuilder line = new StringBuilder();
+            while (position < limit || fill()) {
+                char character = buffer[position++];
+                line.append(character);
+                if (character == '\n') {
+                    break;
+                }
+                if (character == '\r') {
+                    if ((position < limit || fill()) && buffer[position] == '\n') {
+                        line.append(buffer[position++]);
+                    }
+                    break;
+                }
+            }
+            if (line.length() == 0) {
+                return null;
+            }
+            lineCount++;
+            return line.toString();
+        }
+
+        /**
+         * Количество прочитанных строк файла
+         */
+        long getLineCount() {
+            return lineCount;
+        }
+
+        private boolean fill() throws IOException {
+            position = 0;
+            limit = Math.max(reader.read(buffer, 0, buffer.length), 0);
+            return limit > 0;
+        }
+    }
+
+    /**
+     * Обработчик пакета записей. Не хранит состояния между пакетами,
+     * поэтому пакеты обрабатываются параллельно.
+     */
+    private interface RecordProcessor {
+        String process(List<String> records, long firstLine) throws CryptoException;
+    }
+
+    /**
+     * Записи CSV по RFC 4180. Разделитель (запятая или точка с запятой)
+     * определяется по строке заголовка.
+     */
+    private static final class CsvProcessor implements RecordProcessor {
+        private final char delimiter;
+        private final boolean[] selected;
+        private final FieldOperation operation;
+
+        CsvProcessor(String header, Collection<String> fields, FieldOperation operation) throws CryptoException {
+            this.delimiter = header.indexOf(',') < 0 && header.indexOf(';') >= 0 ? ';' : ',';
+            this.operation = operation;
+
+            List<String> columns = new ArrayList<>();
+            parseFields(header, header.length(), delimiter, columns, new ArrayList<>());
+
+            this.selected = new boolean[columns.size()];
+            for (String field : fields) {
+                int index = columns.indexOf(field);
+                if (index < 0) {
+                    throw new CryptoException("Столбец не найден в заголовке CSV: " + field);
+                }
+                selected[index] = true;
+            }
+        }
+
+        @Override
+        public String process(List<String> records, long firstLine) throws CryptoException {
+            StringBuilder output = new StringBuilder(records.size() * 128);
+            List<String> values = new ArrayList<>(selected.length);
+            List<Integer> delimiters = new ArrayList<>(selected.length);
+
+            for (int i = 0; i < records.size(); i++) {
+                String record = records.get(i);
+                int length = contentLength(record);
+
+                if (length > 0) {
+                    values.clear();
+                    delimiters.clear();
+                    parseFields(record, length, delimiter, values, delimiters);
+
+                    for (int column = 0; column < values.size(); column++) {
+                        int start = column == 0 ? 0 : delimiters.get(column - 1) + 1;
+                        int end = column < delimiters.size() ? delimiters.get(column) : length;
+                        if (column > 0) {
+                            output.append(delimiter);
+                        }
+
+                        String value = values.get(column);
+                        if (column >= selected.length || !selected[column] || value.isEmpty()) {
+                            // Нетронутое поле копируется как было, вместе с кавычками
+                            output.append(record, start, end);
+                            continue;
+                        }
+                        try {
+                            appendField(output, operation.apply(value), delimiter);
+                        } catch (CryptoException e) {
+                            throw new CryptoException(
+                                    "Ошибка в строке " + lineOf(records, i, firstLine) + ": " + e.getMessage(), e);
+                        }
+                    }
+                }
+                output.append(record, length, record.length());
+            }
+            return output.toString();
+        }
+
+        /**
+         * Разбирает первые length символов записи на значения полей
+         * и запоминает позиции разделителей вне кавычек
+         */
+        private static void parseFields(String record, int length, char delimiter, List<String> values,
+                                        List<Integer> delimiters) {
+            StringBuilder field = new StringBuilder();
+            boolean quoted = false;
+
+            for (int i = 0; i < length; i++) {
+                char character = record.charAt(i);
+                if (quoted) {
+                    if (character != '"') {
+                        field.append(character);
+                    } else if (i + 1 < length && record.charAt(i + 1) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else if (character == '"') {
+                    quoted = true;
+                } else if (character == delimiter) {
+                    values.add(field.toString());
+                    delimiters.add(i);
+                    field.setLength(0);
+                } else {
+                    field.append(character);
+                }
+            }
+            values.add(field.toString());
+        }
+
+        private static void appendField(StringBuilder output, String value, char delimiter) {
+            boolean needsQuotes = false;
+            for (int i = 0; i < value.length() && !needsQuotes; i++) {
+                char character = value.charAt(i);
+                needsQuotes = character == delimiter || character == '"' || character == '\n' || character == '\r';
+            }
+
+            if (!needsQuotes) {
+                output.append(value);
+                return;
+            }
+
+            output.append('"');
+            for (int i = 0; i < value.length(); i++) {
+                char character = value.charAt(i);
+                if (character == '"') {
+                    output.append('"');
+                }
+                output.append(character);
+            }
+            output.append('"');
+        }
+    }
+
+    /**
+     * Записи JSON Lines: один объект на строку. Обрабатываются строковые
+     * значения полей верхнего уровня, остальной текст строки копируется без изменений.
+     */
+    private static final class JsonLinesProcessor implements RecordProcessor {
+        private final Set<String> fields;
+        private final FieldOperation operation;
+
+        JsonLinesProcessor(Collection<String> fields, FieldOperation operation) {
+            this.fields = new HashSet<>(fields);
+            this.operation = operation;
+        }
+
+        @Override
+        public String process(List<String> records, long firstLine) throws CryptoException {
+            StringBuilder output = new StringBuilder(records.size() * 128);
+            StringBuilder value = new StringBuilder();
+
+            for (int i = 0; i < records.size(); i++) {
+                String record = records.get(i);
+                int length = contentLength(record);
+                try {
+                    processLine(record.substring(0, length), output, value);
+                } catch (CryptoException e) {
+                    throw new CryptoException("Ошибка в строке " + (firstLine + i) + ": " + e.getMessage(), e);
+                }
+                output.append(record, length, record.length());
+            }
+            return output.toString();
+        }
+
+        /**
+         * Копирует строку в output, заменяя значения выбранных полей.
+         * Имя поля - строка на глубине 1, за которой следует двоеточие.
+         */
+        private void processLine(String line, StringBuilder output, StringBuilder value) throws CryptoException {
+            int depth = 0;
+            boolean expectKey = false;
+            String key = null;
+            int position = 0;
+
+            while (position < line.length()) {
+                char character = line.charAt(position);
+
+                if (character != '"') {
+                    if (character == '{' || character == '[') {
+                        depth++;
+                        expectKey = character == '{' && depth == 1;
+                    } else if (character == '}' || character == ']') {
+                        depth--;
+                    } else if (character == ',' && depth == 1) {
+                        expectKey = true;
+                    }
+                    output.append(character);
+                    position++;
+                    continue;
+                }
+
+                int end = readString(line, position, value);
+
+                if (depth == 1 && expectKey) {
+                    key = value.toString();
+                    expectKey = false;
+                    output.append(line, position, end);
+                } else if (depth == 1 && key != null && fields.contains(key)) {
+                    writeString(output, operation.apply(value.toString()));
+                    key = null;
+                } else {
+                    output.append(line, position, end);
+                    key = null;
+                }
+                position = end;
+            }
+
+            if (depth != 0) {
+                throw new CryptoException("Некорректная строка JSON");
+            }
+        }
+
+        /**
+         * Разбирает строку JSON, начинающуюся с кавычки в позиции start.
+         * Значение без экранирования записывается в value.
+         *
+         * @return позиция после закрывающей кавычки
+         */
+        private static int readString(String line, int start, StringBuilder value) throws CryptoException {
+            value.setLength(0);
+
+            for (int i = start + 1; i < line.length(); i++) {
+                char character = line.charAt(i);
+                if (character == '"') {
+                    return i + 1;
+                }
+                if (character != '\\') {
+                    value.append(character);
+                    continue;
+                }
+
+                if (++i == line.length()) {
+                    break;
+                }
+                char escaped = line.charAt(i);
+                switch (escaped) {
+                    case 'b': value.append('\b'); break;
+                    case 'f': value.append('\f'); break;
+                    case 'n': value.append('\n'); break;
+                    case 'r': value.append('\r'); break;
+                    case 't': value.append('\t'); break;
+                    case 'u':
+                        if (i + 4 >= line.length()) {
+                            throw new CryptoException("Некорректная строка JSON");
+                        }
+                        try {
+                            value.append((char) Integer.parseInt(line.substring(i + 1, i + 5), 16));
+                        } catch (NumberFormatException e) {
+                            throw new CryptoException("Некорректная строка JSON");
+                        }
+                        i += 4;
+                        break;
+                    default: value.append(escaped);
+                }
+            }
+            throw new CryptoException("Некорректная строка JSON");
+        }
+
+        private static void writeString(StringBuilder output, String value) {
+            output.append('"');
+            for (int i = 0; i < value.length(); i++) {
+                char character = value.charAt(i);
+                switch (character) {
+                    case '"': output.append("\\\""); break;
+                    case '\\': output.append("\\\\"); break;
+                    case '\n': output.append("\\n"); break;
+                    case '\r': output.append("\\r"); break;
+                    case '\t': output.append("\\t"); break;
+                    default:
+                        if (character < 0x20) {
+                            output.append(String.format("\\u%04x", (int) character));
+                        } else {
+                            output.append(character);
+                        }
+                }
+            }
+            output.append('"');
+        }
+    }
+}
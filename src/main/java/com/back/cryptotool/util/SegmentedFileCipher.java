@@ -0,0 +1,496 @@
+package com.back.cryptotool.util;
+
+import com.back.cryptotool.crypto.AesCipher;
+import com.back.cryptotool.crypto.ChaCha20Cipher;
+import com.back.cryptotool.crypto.CipherCache;
+import com.back.cryptotool.crypto.CryptoException;
+import com.back.cryptotool.crypto.DirectBufferPool;
+import com.back.cryptotool.crypto.Hkdf;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.IvParameterSpec;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.GeneralSecurityException;
+import java.security.NoSuchAlgorithmException;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.LongConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Параллельное шифрование файлов независимыми сегментами AES-GCM или
+ * ChaCha20-Poly1305. Шифр выбирается по алгоритму переданного ключа.
+ *
+ * Файл делится на сегменты фиксированного размера. Каждый сегмент шифруется
+ * отдельно своим ключом и nonce и получает собственный тег аутентификации.
+ * Ключ сегмента рабочий поток получает из ключа файла через HKDF
+ * ({@link Hkdf#chunkKey}) без общего состояния, nonce сегмента - nonce файла,
+ * объединенный по XOR с номером сегмента. AAD сегмента - переданные вызывающим
+ * данные (неизменяемые поля заголовка) и признак последнего сегмента, поэтому
+ * обнаруживаются и подмена заголовка, и обрезка файла по границе сегмента.
+ * Пустой файл тоже записывается одним последним сегментом из одного тега:
+ * иначе файл, обрезанный до заголовка, нельзя было бы отличить от пустого.
+ *
+ * Смещения сегментов во входном и выходном файле вычисляются по номеру,
+ * поэтому сегменты обрабатываются на всех ядрах и записываются сразу на свое место.
+ * Сегменты читаются в буферы в куче, переиспользуемые рабочими потоками, или
+ * ({@link #encryptDirect}) в прямые буферы из {@link DirectBufferPool}: тогда
+ * канал не копирует данные через свой временный прямой буфер.
+ * Пул рабочих потоков принадлежит экземпляру и останавливается методом {@link #close()}.
+ */
+public class SegmentedFileCipher implements AutoCloseable {
+
+    public static final int NONCE_LENGTH = 12; // 96 бит - рекомендуемая длина nonce для GCM
+    public static final int TAG_LENGTH = 16;   // 128-битный тег аутентификации
+
+    /**
+     * AEAD-шифры сегментов: оба используют nonce 96 бит и тег 128 бит.
+     * Провайдер ChaCha20-Poly1305 в JDK обрабатывает прямые буферы через временные
+     * массивы в куче на весь сегмент, поэтому для него всегда используются буферы в куче.
+     */
+    private enum Aead {
+        AES_GCM(AesCipher.Mode.GCM.getTransformation(), "AES", true),
+        CHACHA20_POLY1305("ChaCha20-Poly1305", ChaCha20Cipher.ALGORITHM, false);
+
+        private final String keyAlgorithm;
+        private final CipherCache ciphers;
+        private final boolean directBuffers;
+
+        Aead(String transformation, String keyAlgorithm, boolean directBuffers) {
+            this.keyAlgorithm = keyAlgorithm;
+            this.ciphers = new CipherCache(transformation, keyAlgorithm);
+            this.directBuffers = directBuffers;
+        }
+
+        AlgorithmParameterSpec parameters(byte[] nonce) {
+            return this == AES_GCM ? new GCMParameterSpec(TAG_LENGTH * 8, nonce) : new IvParameterSpec(nonce);
+        }
+
+        static Aead forKey(SecretKey key) throws GeneralSecurityException {
+            for (Aead aead : values()) {
+                if (aead.keyAlgorithm.equalsIgnoreCase(key.getAlgorithm())) {
+                    return aead;
+                }
+            }
+            throw new NoSuchAlgorithmException("Сегментное шифрование не поддерживает ключ " + key.getAlgorithm());
+        }
+    }
+    private static final byte[] LAST_SEGMENT = {1};
+    private static final byte[] INNER_SEGMENT = {0};
+    // Размер окна отображения в память. Отображение освобождается только сборщиком
+    // мусора, поэтому окна небольшие и каждое живет лишь до конца своей обработки
+    private static final long MAPPING_WINDOW = 64L * 1024 * 1024;
+
+    private final ForkJoinPool pool;
+
+    // Буферы сегментов в куче переиспользуются рабочими потоками
+    private final ThreadLocal<ByteBuffer[]> heapBuffers = new ThreadLocal<>();
+
+    // Прямые буферы сегментов: по два на рабочий поток (открытые и зашифрованные данные)
+    private final DirectBufferPool buffers;
+
+    public SegmentedFileCipher() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public SegmentedFileCipher(int parallelism) {
+        this.pool = new ForkJoinPool(parallelism);
+        this.buffers = new DirectBufferPool(2 * parallelism);
+    }
+
+    /**
+     * Останавливает пул рабочих потоков. Начатые файлы дорабатываются.
+     */
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+
+    /**
+     * Шифрует данные входного канала и записывает сегменты в выходной канал
+     *
+     * @param input исходный файл
+     * @param output выходной файл
+     * @param outputOffset позиция, с которой начинаются сегменты (длина заголовка)
+     * @param key ключ файла AES или ChaCha20, из которого получаются ключи сегментов
+     * @param nonce nonce файла длиной {@link #NONCE_LENGTH}
+     * @param segmentSize размер открытых данных в одном сегменте
+     * @param associatedData данные, которые аутентифицируются в каждом сегменте (поля заголовка)
+     * @param progress получает размер каждого обработанного сегмента входных данных;
+     *                 вызывается из рабочих потоков
+     */
+    public void encrypt(FileChannel input, FileChannel output, long outputOffset, SecretKey key,
+                        byte[] nonce, int segmentSize, byte[] associatedData, LongConsumer progress)
+            throws CryptoException, IOException {
+        encryptSegments(input, output, outputOffset, key, nonce, segmentSize, associatedData, progress, false);
+    }
+
+    /**
+     * Шифрует как {@link #encrypt}, но читает и пишет сегменты через прямые буферы
+     * из пула, минуя кучу Java (кроме ChaCha20-Poly1305, см. {@link Aead})
+     */
+    public void encryptDirect(FileChannel input, FileChannel output, long outputOffset, SecretKey key,
+                              byte[] nonce, int segmentSize, byte[] associatedData, LongConsumer progress)
+            throws CryptoException, IOException {
+        encryptSegments(input, output, outputOffset, key, nonce, segmentSize, associatedData, progress, true);
+    }
+
+    private void encryptSegments(FileChannel input, FileChannel output, long outputOffset, SecretKey key,
+                                 byte[] nonce, int segmentSize, byte[] associatedData, LongConsumer progress,
+                                 boolean direct)
+            throws CryptoException, IOException {
+
+        long size = input.size();
+        int segments = segmentCount(size, segmentSize);
+
+        runParallel(0, segments, index -> {
+            long start = (long) index * segmentSize;
+            int length = (int) Math.min(segmentSize, size - start);
+            long target = outputOffset + (long) index * (segmentSize + TAG_LENGTH);
+
+            Cipher cipher = initCipher(Cipher.ENCRYPT_MODE, key, associatedData, nonce, index, index == segments - 1);
+            processSegment(cipher, direct && Aead.forKey(key).directBuffers, input, start, length, output, target,
+                    segmentSize + TAG_LENGTH);
+            progress.accept(length);
+        });
+    }
+
+    /**
+     * Дешифрует сегменты входного канала начиная с inputOffset
+     *
+     * @param input зашифрованный файл
+     * @param inputOffset позиция начала сегментов (длина заголовка)
+     * @param output файл для расшифрованных данных
+     * @param key ключ файла AES или ChaCha20, из которого получаются ключи сегментов
+     * @param nonce nonce файла из заголовка
+     * @param segmentSize размер открытых данных в одном сегменте
+     * @param associatedData данные, переданные при шифровании (поля заголовка)
+     * @param progress получает размер каждого обработанного сегмента входных данных (см. {@link #encrypt})
+     */
+    public void decrypt(FileChannel input, long inputOffset, FileChannel output, SecretKey key,
+                        byte[] nonce, int segmentSize, byte[] associatedData, LongConsumer progress)
+            throws CryptoException, IOException {
+        decryptSegments(input, inputOffset, output, key, nonce, segmentSize, associatedData, progress, false);
+    }
+
+    /**
+     * Дешифрует через прямые буферы из пула (см. {@link #encryptDirect})
+     */
+    public void decryptDirect(FileChannel input, long inputOffset, FileChannel output, SecretKey key,
+                              byte[] nonce, int segmentSize, byte[] associatedData, LongConsumer progress)
+            throws CryptoException, IOException {
+        decryptSegments(input, inputOffset, output, key, nonce, segmentSize, associatedData, progress, true);
+    }
+
+    private void decryptSegments(FileChannel input, long inputOffset, FileChannel output, SecretKey key,
+                                 byte[] nonce, int segmentSize, byte[] associatedData, LongConsumer progress,
+                                 boolean direct)
+            throws CryptoException, IOException {
+
+        int encryptedSegmentSize = segmentSize + TAG_LENGTH;
+        int segments = encryptedSegmentCount(input.size() - inputOffset, segmentSize);
+
+        runParallel(0, segments, index -> {
+            long start = inputOffset + (long) index * encryptedSegmentSize;
+            int length = (int) Math.min(encryptedSegmentSize, input.size() - start);
+            long target = (long) index * segmentSize;
+
+            Cipher cipher = initCipher(Cipher.DECRYPT_MODE, key, associatedData, nonce, index, index == segments - 1);
+            processSegment(cipher, direct && Aead.forKey(key).directBuffers, input, start, length, output, target,
+                    segmentSize + TAG_LENGTH);
+            progress.accept(length);
+        });
+    }
+
+    /**
+     * Шифрует файл через отображение в память: сегменты шифруются прямо
+     * из отображенного входного файла в отображенный выходной, без копирования в кучу.
+     * Файл отображается окнами, поэтому его размер не ограничен 2 ГБ. Каждое окно
+     * выходного файла сбрасывается на диск сразу после обработки.
+     */
+    public void encryptMapped(FileChannel input, FileChannel output, long outputOffset, SecretKey key,
+                              byte[] nonce, int segmentSize, byte[] associatedData, LongConsumer progress)
+            throws CryptoException, IOException {
+
+        long size = input.size();
+        int encryptedSegmentSize = segmentSize + TAG_LENGTH;
+        int segments = segmentCount(size, segmentSize);
+        int perWindow = windowSegments(encryptedSegmentSize);
+
+        for (int first = 0; first < segments; first += perWindow) {
+            int count = Math.min(perWindow, segments - first);
+            long sourceStart = (long) first * segmentSize;
+            long sourceLength = Math.min((long) count * segmentSize, size - sourceStart);
+
+            encryptWindow(input.map(FileChannel.MapMode.READ_ONLY, sourceStart, sourceLength),
+                    output.map(FileChannel.MapMode.READ_WRITE, outputOffset + (long) first * encryptedSegmentSize,
+                            sourceLength + (long) count * TAG_LENGTH),
+                    first, count, segments, key, nonce, segmentSize, associatedData, progress);
+        }
+    }
+
+    /**
+     * Дешифрует файл через отображение в память (см. {@link #encryptMapped})
+     */
+    public void decryptMapped(FileChannel input, long inputOffset, FileChannel output, SecretKey key,
+                              byte[] nonce, int segmentSize, byte[] associatedData, LongConsumer progress)
+            throws CryptoException, IOException {
+
+        long size = input.size() - inputOffset;
+        int encryptedSegmentSize = segmentSize + TAG_LENGTH;
+        int segments = encryptedSegmentCount(size, segmentSize);
+        int perWindow = windowSegments(encryptedSegmentSize);
+
+        for (int first = 0; first < segments; first += perWindow) {
+            int count = Math.min(perWindow, segments - first);
+            long sourceStart = (long) first * encryptedSegmentSize;
+            long sourceLength = Math.min((long) count * encryptedSegmentSize, size - sourceStart);
+
+            decryptWindow(input.map(FileChannel.MapMode.READ_ONLY, inputOffset + sourceStart, sourceLength),
+                    output.map(FileChannel.MapMode.READ_WRITE, (long) first * segmentSize,
+                            sourceLength - (long) count * TAG_LENGTH),
+                    first, count, segments, key, nonce, segmentSize, associatedData, progress);
+        }
+    }
+
+    /**
+     * Шифрует сегменты одного окна и сбрасывает его на диск. Ссылки на отображения
+     * есть только у этого вызова, поэтому после него окно может быть освобождено.
+     */
+    private void encryptWindow(MappedByteBuffer source, MappedByteBuffer target, int first, int count, int segments,
+                               SecretKey key, byte[] nonce, int segmentSize, byte[] associatedData,
+                               LongConsumer progress) throws CryptoException, IOException {
+
+        int encryptedSegmentSize = segmentSize + TAG_LENGTH;
+        runParallel(first, count, index -> {
+            int local = index - first;
+            ByteBuffer plain = slice(source, local * segmentSize, segmentSize);
+            ByteBuffer encrypted = slice(target, local * encryptedSegmentSize, encryptedSegmentSize);
+
+            int length = plain.remaining();
+            initCipher(Cipher.ENCRYPT_MODE, key, associatedData, nonce, index, index == segments - 1).doFinal(plain, encrypted);
+            progress.accept(length);
+        });
+        target.force();
+    }
+
+    /**
+     * Дешифрует сегменты одного окна и сбрасывает его на диск (см. {@link #encryptWindow})
+     */
+    private void decryptWindow(MappedByteBuffer source, MappedByteBuffer target, int first, int count, int segments,
+                               SecretKey key, byte[] nonce, int segmentSize, byte[] associatedData,
+                               LongConsumer progress) throws CryptoException, IOException {
+
+        int encryptedSegmentSize = segmentSize + TAG_LENGTH;
+        runParallel(first, count, index -> {
+            int local = index - first;
+            ByteBuffer encrypted = slice(source, local * encryptedSegmentSize, encryptedSegmentSize);
+            ByteBuffer plain = slice(target, local * segmentSize, segmentSize);
+
+            int length = encrypted.remaining();
+            initCipher(Cipher.DECRYPT_MODE, key, associatedData, nonce, index, index == segments - 1).doFinal(encrypted, plain);
+            progress.accept(length);
+        });
+        target.force();
+    }
+
+    /**
+     * Возвращает размер зашифрованных данных для открытых данных указанного размера
+     */
+    public static long encryptedSize(long plainSize, int segmentSize) {
+        return plainSize + (long) segmentCount(plainSize, segmentSize) * TAG_LENGTH;
+    }
+
+    /**
+     * Считает сегменты зашифрованных данных и проверяет, что последний
+     * сегмент (у пустого файла - единственный) содержит хотя бы тег аутентификации
+     */
+    private static int encryptedSegmentCount(long size, int segmentSize) throws CryptoException {
+        int encryptedSegmentSize = segmentSize + TAG_LENGTH;
+        int segments = segmentCount(size, encryptedSegmentSize);
+
+        if (size - (long) (segments - 1) * encryptedSegmentSize < TAG_LENGTH) {
+            throw CryptoException.corruptedData();
+        }
+        return segments;
+    }
+
+    /**
+     * Сколько целых сегментов помещается в одно окно отображения
+     */
+    private static int windowSegments(int encryptedSegmentSize) {
+        return (int) Math.max(1, MAPPING_WINDOW / encryptedSegmentSize);
+    }
+
+    /**
+     * Вырезает из отображенной области сегмент, последний сегмент может быть короче
+     */
+    private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+        return buffer.slice(offset, Math.min(length, buffer.capacity() - offset));
+    }
+
+    /**
+     * Число сегментов для данных указанного размера, не меньше одного: последний
+     * сегмент есть всегда, даже пустой
+     */
+    private static int segmentCount(long size, int segmentSize) {
+        long count = Math.max(1, (size + segmentSize - 1) / segmentSize);
+        if (count > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Слишком много сегментов: " + count);
+        }
+        return (int) count;
+    }
+
+    /**
+     * Создает шифр для сегмента: nonce сегмента = nonce файла XOR номер сегмента,
+     * ключ сегмента получается из ключа файла через HKDF
+     */
+    private static Cipher initCipher(int mode, SecretKey key, byte[] associatedData, byte[] fileNonce, int index,
+                                     boolean last) throws GeneralSecurityException {
+
+        byte[] nonce = fileNonce.clone();
+        for (int i = 0; i < Long.BYTES; i++) {
+            nonce[nonce.length - 1 - i] ^= (byte) ((long) index >>> (8 * i));
+        }
+
+        Aead aead = Aead.forKey(key);
+        Cipher cipher;
+        byte[] fileKey = key.getEncoded();
+        byte[] chunkKey = deriveChunkKey(fileKey, index);
+        try {
+            cipher = aead.ciphers.initOneTime(mode, chunkKey, aead.parameters(nonce));
+        } finally {
+            Arrays.fill(fileKey, (byte) 0);
+            Arrays.fill(chunkKey, (byte) 0);
+        }
+        cipher.updateAAD(associatedData);
+        cipher.updateAAD(last ? LAST_SEGMENT : INNER_SEGMENT);
+        return cipher;
+    }
+
+    private static byte[] deriveChunkKey(byte[] fileKey, int index) throws GeneralSecurityException {
+        try {
+            return Hkdf.chunkKey(fileKey, index, fileKey.length);
+        } catch (CryptoException e) {
+            throw new GeneralSecurityException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Читает сегмент из канала в буфер, пропускает через шифр во второй буфер
+     * и записывает результат. Прямые буферы берутся из пула и возвращаются в него.
+     *
+     * @param direct использовать прямые буферы вместо буферов потока в куче
+     * @param capacity емкость буферов - размер зашифрованного сегмента
+     */
+    private void processSegment(Cipher cipher, boolean direct, FileChannel input, long start, int length,
+                                FileChannel output, long target, int capacity)
+            throws IOException, GeneralSecurityException {
+        if (!direct) {
+            ByteBuffer[] pair = heapBuffers(capacity);
+            processSegment(cipher, input, start, length, output, target, pair[0].clear(), pair[1].clear());
+            return;
+        }
+
+        ByteBuffer source = buffers.acquire(capacity);
+        ByteBuffer result = buffers.acquire(capacity);
+        try {
+            processSegment(cipher, input, start, length, output, target, source, result);
+        } finally {
+            buffers.release(source);
+            buffers.release(result);
+        }
+    }
+
+    private static void processSegment(Cipher cipher, FileChannel input, long start, int length,
+                                       FileChannel output, long target, ByteBuffer source, ByteBuffer result)
+            throws IOException, GeneralSecurityException {
+        source.limit(length);
+        readFully(input, source, start);
+        source.flip();
+
+        cipher.doFinal(source, result);
+        result.flip();
+
+        writeFully(output, result, target);
+    }
+
+    /**
+     * Возвращает пару буферов потока в куче: [0] - входные данные, [1] - результат
+     */
+    private ByteBuffer[] heapBuffers(int capacity) {
+        ByteBuffer[] pair = heapBuffers.get();
+        if (pair == null || pair[0].capacity() != capacity) {
+            pair = new ByteBuffer[]{ByteBuffer.allocate(capacity), ByteBuffer.allocate(capacity)};
+            heapBuffers.set(pair);
+        }
+        return pair;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer target, long position) throws IOException {
+        while (target.hasRemaining()) {
+            if (channel.read(target, position + target.position()) < 0) {
+                throw new IOException("Неожиданный конец файла");
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer source, long position) throws IOException {
+        while (source.hasRemaining()) {
+            channel.write(source, position + source.position());
+        }
+    }
+
+    /**
+     * Обрабатывает сегменты в пуле потоков и пробрасывает первую ошибку
+     */
+    private void runParallel(int first, int count, SegmentAction action) throws CryptoException, IOException {
+        try {
+            pool.invoke(ForkJoinTask.adapt(() -> IntStream.range(first, first + count).parallel().forEach(index -> {
+                try {
+                    action.process(index);
+                } catch (IOException | GeneralSecurityException e) {
+                    throw new SegmentException(e);
+                }
+            })));
+        } catch (RuntimeException e) {
+            // Пул может обернуть исключение повторно - ищем исходную причину
+            Throwable cause = e;
+            while (cause != null && !(cause instanceof IOException) && !(cause instanceof GeneralSecurityException)) {
+                cause = cause.getCause();
+            }
+
+            if (cause instanceof AEADBadTagException) {
+                throw CryptoException.corruptedData();
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof GeneralSecurityException) {
+                throw new CryptoException("Ошибка сегментного шифрования: " + cause.getMessage(), cause);
+            }
+            throw e;
+        }
+    }
+
+    @FunctionalInterface
+    private interface SegmentAction {
+        void process(int index) throws IOException, GeneralSecurityException;
+    }
+
+    private static class SegmentException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        SegmentException(Exception cause) {
+            super(cause.getMessage(), cause);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.back.cryptotool.crypto;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AesCipherTest {
+
+    private static final String KEY_128 = "0123456789abcdef";
+    private static final String KEY_256 = "0123456789abcdef0123456789abcdef";
+
+    @ParameterizedTest
+    @EnumSource(AesCipher.Mode.class)
+    void roundTripsBytesAndStreams(AesCipher.Mode mode) throws Exception {
+        PreparedKey key = new AesCipher(AesCipher.KeySize.AES_256, mode).prepare(KEY_256);
+
+        for (int length : new int[]{0, 1, 15, 16, 17, 8192, 20_000}) {
+            byte[] data = randomBytes(length);
+            assertArrayEquals(data, key.decrypt(key.encrypt(data)), "массив, длина " + length);
+            assertArrayEquals(data, decryptStream(key, encryptStream(key, data)), "поток, длина " + length);
+        }
+    }
+
+    @Test
+    void decryptsWithModeFromCiphertext() throws Exception {
+        // Режим записан в шифртексте, поэтому расшифровка не зависит от настройки шифра
+        byte[] data = randomBytes(100);
+        byte[] encrypted = new AesCipher(AesCipher.KeySize.AES_128, AesCipher.Mode.CTR).prepare(KEY_128).encrypt(data);
+
+        PreparedKey other = new AesCipher(AesCipher.KeySize.AES_128, AesCipher.Mode.GCM).prepare(KEY_128);
+        assertArrayEquals(data, other.decrypt(encrypted));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {0, 1, 2, 3, 0x41, 0xFF})
+    void decryptsLegacyCbcWithIvStartingWithMarker(int secondByte) throws Exception {
+        // Старый формат - IV и шифртекст CBC; IV может начинаться с первого байта сигнатуры
+        PreparedKey key = new AesCipher().prepare(KEY_128);
+        Random random = new Random(secondByte);
+
+        for (int i = 0; i < 50; i++) {
+            byte[] iv = new byte[16];
+            random.nextBytes(iv);
+            iv[0] = (byte) 0xAE;
+            iv[1] = (byte) secondByte;
+            byte[] data = randomBytes(random.nextInt(64));
+            byte[] legacy = concat(iv, rawEncrypt(AesCipher.Mode.CBC, KEY_128, iv, data));
+
+            assertArrayEquals(data, key.decrypt(legacy));
+            assertArrayEquals(data, decryptStream(key, legacy));
+        }
+    }
+
+    @Test
+    void decryptsLegacyCbcWithoutMarker() throws Exception {
+        PreparedKey key = new AesCipher().prepare(KEY_128);
+        byte[] iv = randomBytes(16);
+        iv[0] = 0x10;
+        byte[] data = "Привет мир".getBytes(StandardCharsets.UTF_8);
+        byte[] legacy = concat(iv, rawEncrypt(AesCipher.Mode.CBC, KEY_128, iv, data));
+
+        assertArrayEquals(data, key.decrypt(legacy));
+        assertArrayEquals(data, decryptStream(key, legacy));
+    }
+
+    @Test
+    void decryptsStreamWithoutReadingAhead() throws Exception {
+        // Поток после шифртекста не читается: расшифровка не буферизует данные целиком
+        PreparedKey key = new AesCipher(AesCipher.KeySize.AES_128, AesCipher.Mode.CTR).prepare(KEY_128);
+        byte[] data = randomBytes(50_000);
+        byte[] encrypted = encryptStream(key, data);
+
+        byte[] iv = randomBytes(16);
+        iv[0] = (byte) 0xAE;
+        byte[] legacy = concat(iv, rawEncrypt(AesCipher.Mode.CBC, KEY_128, iv, data));
+
+        for (byte[] ciphertext : new byte[][]{encrypted, legacy}) {
+            CountingInputStream input = new CountingInputStream(ciphertext);
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            key.decrypt(input, output);
+            assertArrayEquals(data, output.toByteArray());
+            assertTrue(input.maxChunk <= 8192, "прочитано за раз: " + input.maxChunk);
+        }
+    }
+
+    @Test
+    void gcmDetectsTampering() throws Exception {
+        PreparedKey key = new AesCipher(AesCipher.KeySize.AES_128, AesCipher.Mode.GCM).prepare(KEY_128);
+        byte[] encrypted = key.encrypt(randomBytes(64));
+        encrypted[encrypted.length - 20] ^= 1;
+
+        assertThrows(CryptoException.class, () -> key.decrypt(encrypted));
+    }
+
+    @Test
+    void rejectsKeyOfWrongLength() {
+        assertThrows(CryptoException.class, () -> new AesCipher(AesCipher.KeySize.AES_256, AesCipher.Mode.CBC)
+                .prepare(KEY_128));
+    }
+
+    @Test
+    void unwrapsWrappedKey() throws Exception {
+        AesCipher aes = new AesCipher();
+        byte[] dataKey = randomBytes(32);
+        byte[] wrapped = aes.wrapKey(KEY_128, dataKey);
+
+        assertArrayEquals(dataKey, aes.unwrapKey(KEY_128, wrapped));
+        assertThrows(CryptoException.class, () -> aes.unwrapKey("fedcba9876543210", wrapped));
+    }
+
+    private static byte[] rawEncrypt(AesCipher.Mode mode, String key, byte[] iv, byte[] data) throws Exception {
+        Cipher cipher = Cipher.getInstance(mode.getTransformation());
+        cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key.getBytes(StandardCharsets.US_ASCII), "AES"),
+                mode == AesCipher.Mode.GCM ? new GCMParameterSpec(128, iv) : new IvParameterSpec(iv));
+        return cipher.doFinal(data);
+    }
+
+    private static byte[] encryptStream(PreparedKey key, byte[] data) throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        key.encrypt(new ByteArrayInputStream(data), output);
+        return output.toByteArray();
+    }
+
+    private static byte[] decryptStream(PreparedKey key, byte[] data) throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        key.decrypt(new ByteArrayInputStream(data), output);
+        return output.toByteArray();
+    }
+
+    /**
+     * Запоминает наибольшую порцию, прочитанную за один вызов
+     */
+    private static final class CountingInputStream extends ByteArrayInputStream {
+        private int maxChunk;
+
+        CountingInputStream(byte[] data) {
+            super(data);
+        }
+
+        @Override
+        public synchronized int read(byte[] buffer, int offset, int length) {
+            int read = super.read(buffer, offset, length);
+            maxChunk = Math.max(maxChunk, read);
+            return read;
+        }
+
+        @Override
+        public synchronized byte[] readAllBytes() {
+            throw new AssertionError("поток прочитан целиком");
+        }
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        byte[] result = new byte[0];
+        for (byte[] part : parts) {
+            int offset = result.length;
+            result = Arrays.copyOf(result, offset + part.length);
+            System.arraycopy(part, 0, result, offset, part.length);
+        }
+        return result;
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,102 @@
+package com.back.cryptotool.crypto;
+
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class CipherCacheTest {
+
+    private static final String TRANSFORMATION = "AES/CTR/NoPadding";
+
+    @Test
+    void matchesUncachedCipher() throws Exception {
+        CipherCache cache = new CipherCache(TRANSFORMATION, "AES");
+        byte[] data = "Привет мир".getBytes(StandardCharsets.UTF_8);
+
+        for (int i = 0; i < 3; i++) {
+            byte[] key = key(i);
+            IvParameterSpec iv = new IvParameterSpec(key(100 + i));
+
+            Cipher expected = Cipher.getInstance(TRANSFORMATION);
+            expected.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"), iv);
+            assertArrayEquals(expected.doFinal(data), cache.init(Cipher.ENCRYPT_MODE, key, iv).doFinal(data));
+        }
+    }
+
+    @Test
+    void reusesCipherForSameKey() throws Exception {
+        CipherCache cache = new CipherCache(TRANSFORMATION, "AES");
+        Cipher first = cache.init(Cipher.ENCRYPT_MODE, key(1), new IvParameterSpec(key(2)));
+        Cipher second = cache.init(Cipher.DECRYPT_MODE, key(1).clone(), new IvParameterSpec(key(3)));
+        Cipher other = cache.init(Cipher.ENCRYPT_MODE, key(4), new IvParameterSpec(key(2)));
+
+        assertSame(first, second);
+        assertNotSame(first, other);
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedKeys() throws Exception {
+        CipherCache cache = new CipherCache(TRANSFORMATION, "AES", 2);
+        IvParameterSpec iv = new IvParameterSpec(key(0));
+        Cipher first = cache.init(Cipher.ENCRYPT_MODE, key(1), iv);
+        cache.init(Cipher.ENCRYPT_MODE, key(2), iv);
+        cache.init(Cipher.ENCRYPT_MODE, key(3), iv);
+
+        assertEquals(2, cache.size());
+        // Вытесненный ключ получает новый шифр, который работает как прежний
+        Cipher again = cache.init(Cipher.ENCRYPT_MODE, key(1), iv);
+        assertNotSame(first, again);
+        Cipher expected = Cipher.getInstance(TRANSFORMATION);
+        expected.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key(1), "AES"), iv);
+        assertArrayEquals(expected.doFinal(new byte[40]), again.doFinal(new byte[40]));
+    }
+
+    @Test
+    void keepsSeparateCiphersPerThread() throws Exception {
+        CipherCache cache = new CipherCache(TRANSFORMATION, "AES");
+        IvParameterSpec iv = new IvParameterSpec(key(0));
+        Cipher own = cache.init(Cipher.ENCRYPT_MODE, key(1), iv);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Cipher> other = executor.submit(() -> cache.init(Cipher.ENCRYPT_MODE, key(1), iv));
+            assertNotSame(own, other.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void decryptsChaCha20AgainWithSameNonce() throws Exception {
+        // Провайдер запрещает повторную инициализацию ChaCha20 с тем же ключом и nonce
+        CipherCache cache = new CipherCache("ChaCha20-Poly1305", "ChaCha20");
+        byte[] key = new byte[32];
+        IvParameterSpec nonce = new IvParameterSpec(new byte[12]);
+        byte[] encrypted = cache.init(Cipher.ENCRYPT_MODE, key, nonce).doFinal(new byte[100]);
+
+        for (int i = 0; i < 2; i++) {
+            assertArrayEquals(new byte[100], cache.init(Cipher.DECRYPT_MODE, key, nonce).doFinal(encrypted));
+            assertArrayEquals(new byte[100], cache.initOneTime(Cipher.DECRYPT_MODE, key, nonce).doFinal(encrypted));
+        }
+    }
+
+    private static byte[] key(int seed) {
+        byte[] key = new byte[16];
+        for (int i = 0; i < key.length; i++) {
+            key[i] = (byte) (seed * 31 + i);
+        }
+        return key;
+    }
+}
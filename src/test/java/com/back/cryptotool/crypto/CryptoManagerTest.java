@@ -0,0 +1,249 @@
+package com.back.cryptotool.crypto;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CryptoManagerTest {
+
+    private static final String AES_KEY = "0123456789abcdef";
+    private static final String CHACHA_KEY = "0123456789abcdef0123456789abcdef";
+    private static final String TEXT = "Привет мир hello";
+
+    // Шифртекст AES-128-CBC прежних версий: IV и данные, дважды закодированные в Base64
+    private static final String LEGACY_DOUBLE_BASE64 =
+            "RUJjZUpTd3pPa0ZJVDFaZFpHdHllUmdnUmFybXdHQmx4VmJOcjFpVVByQXI0QmpNeE9XcXBydkhvZEUxUXNWZQ==";
+
+    private CryptoManager manager;
+
+    @BeforeEach
+    void setUp() {
+        manager = new CryptoManager();
+    }
+
+    @AfterEach
+    void tearDown() {
+        manager.close();
+    }
+
+    @Test
+    void decryptsLegacyDoubleBase64() throws CryptoException {
+        assertEquals(TEXT, manager.decrypt("AES", LEGACY_DOUBLE_BASE64, AES_KEY));
+    }
+
+    @Test
+    void decryptsLegacyDoubleBase64WithMarkerIv() throws Exception {
+        Random random = new Random(3);
+        for (int i = 0; i < 100; i++) {
+            byte[] iv = new byte[16];
+            random.nextBytes(iv);
+            iv[0] = (byte) 0xAE;
+            iv[1] = (byte) (1 + i % 3);
+
+            Cipher cipher = Cipher.getInstance(AesCipher.Mode.CBC.getTransformation());
+            cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(AES_KEY.getBytes(StandardCharsets.US_ASCII), "AES"),
+                    new IvParameterSpec(iv));
+            byte[] encrypted = cipher.doFinal((TEXT + i).getBytes(StandardCharsets.UTF_8));
+
+            byte[] data = Arrays.copyOf(iv, iv.length + encrypted.length);
+            System.arraycopy(encrypted, 0, data, iv.length, encrypted.length);
+            String inner = Base64.getEncoder().encodeToString(data);
+            String legacy = Base64.getEncoder().encodeToString(inner.getBytes(StandardCharsets.US_ASCII));
+
+            assertEquals(TEXT + i, manager.decrypt("AES", legacy, AES_KEY));
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(TextCodec.class)
+    void roundTripsAesInEveryCodecAndMode(TextCodec codec) throws CryptoException {
+        for (AesCipher.Mode mode : AesCipher.Mode.values()) {
+            manager.setAesMode(mode);
+            manager.setTextCodec(codec);
+            String encrypted = manager.encrypt("AES", TEXT, AES_KEY);
+            assertTrue(encrypted.startsWith(codec.getPrefix()));
+
+            // Кодировка определяется по тексту, а не по текущей настройке
+            for (TextCodec other : TextCodec.values()) {
+                manager.setTextCodec(other);
+                assertEquals(TEXT, manager.decrypt("AES", encrypted, AES_KEY), codec + " -> " + other + ", " + mode);
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(TextCodec.class)
+    void roundTripsChaCha20(TextCodec codec) throws CryptoException {
+        manager.setTextCodec(codec);
+        String encrypted = manager.encrypt("CHACHA20", TEXT, CHACHA_KEY);
+        assertEquals(TEXT, manager.decrypt("CHACHA20", encrypted, CHACHA_KEY));
+    }
+
+    @Test
+    void decryptsCiphertextThatLooksLikeBase64() throws Exception {
+        // Шифртекст CBC без сигнатуры, все байты которого - символы Base64: после первого
+        // декодирования он похож на старый формат с двойным Base64, но расшифровывается как есть
+        Random random = new Random(5);
+        byte[] iv = base64Bytes(random, 16);
+        byte[] first = base64Bytes(random, 16);
+        byte[] second;
+        byte[] lastBlock;
+        do {
+            // Ищем второй блок, после расшифровки которого дополнение PKCS5 корректно
+            second = base64Bytes(random, 16);
+            lastBlock = xor(decryptBlock(second), first);
+        } while (lastBlock[15] != 1);
+
+        byte[] plain = Arrays.copyOf(xor(decryptBlock(first), iv), 31);
+        System.arraycopy(lastBlock, 0, plain, 16, 15);
+
+        byte[] data = Arrays.copyOf(iv, 48);
+        System.arraycopy(first, 0, data, 16, 16);
+        System.arraycopy(second, 0, data, 32, 16);
+
+        assertEquals(new String(plain, StandardCharsets.UTF_8),
+                manager.decrypt("AES", Base64.getEncoder().encodeToString(data), AES_KEY));
+    }
+
+    @Test
+    void rejectsUnprefixedZ85() throws CryptoException {
+        // Z85 всегда записывается с префиксом, текст без него читается только как Base64
+        manager.setTextCodec(TextCodec.Z85);
+        for (int i = 0; i < 20; i++) {
+            String encrypted = manager.encrypt("AES", TEXT + i, AES_KEY);
+            String unprefixed = encrypted.substring(TextCodec.Z85.getPrefix().length());
+            if (!isBase64(unprefixed)) {
+                assertThrows(CryptoException.class, () -> manager.decrypt("AES", unprefixed, AES_KEY));
+            }
+        }
+    }
+
+    @Test
+    void roundTripsClassicalCiphers() throws CryptoException {
+        assertEquals("Hello World", manager.decrypt("CAESAR", manager.encrypt("CAESAR", "Hello World", "3"), "3"));
+        assertEquals("Hello World",
+                manager.decrypt("VIGENERE", manager.encrypt("VIGENERE", "Hello World", "KEY"), "KEY"));
+    }
+
+    @Test
+    void rejectsNonceForClassicalCiphers() {
+        // Шифр Цезаря не использует вектор инициализации и не может молча его проигнорировать
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        assertThrows(CryptoException.class, () -> manager.encrypt("CAESAR",
+                new ByteArrayInputStream(new byte[1]), output, "3", new byte[12]));
+    }
+
+    @Test
+    void rejectsWrongKey() throws CryptoException {
+        manager.setAesMode(AesCipher.Mode.GCM);
+        String encrypted = manager.encrypt("AES", TEXT, AES_KEY);
+        assertThrows(CryptoException.class, () -> manager.decrypt("AES", encrypted, "fedcba9876543210"));
+    }
+
+    @Test
+    void batchesKeepOrderAndNulls() throws CryptoException {
+        // Пакет больше порога, чтобы при parallel=true он делился на части
+        List<String> values = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            values.add(i % 100 == 7 ? null : TEXT + i);
+        }
+
+        for (boolean parallel : new boolean[]{false, true}) {
+            // Шифр Цезаря детерминирован: каждое значение совпадает с одиночным шифрованием
+            List<String> caesar = manager.encryptAll("CAESAR", values, "3", parallel);
+            assertEquals(values.size(), caesar.size());
+            for (int i = 0; i < values.size(); i++) {
+                String value = values.get(i);
+                assertEquals(value == null ? null : manager.encrypt("CAESAR", value, "3"), caesar.get(i));
+            }
+
+            List<String> aes = manager.encryptAll("AES", values, AES_KEY, parallel);
+            assertNull(aes.get(7));
+            assertNotEquals(values.get(0), aes.get(0));
+            assertEquals(values, manager.decryptAll("AES", aes, AES_KEY, parallel));
+        }
+    }
+
+    @Test
+    void batchesArraysAndStreams() throws CryptoException {
+        String[] values = {TEXT, "", null, "second"};
+        String[] encrypted = manager.encryptAll("CHACHA20", values, CHACHA_KEY, true);
+        assertArrayEquals(values, manager.decryptAll("CHACHA20", encrypted, CHACHA_KEY, false));
+
+        PreparedKey key = manager.prepare("VIGENERE", "KEY");
+        List<String> fromStream = manager.encryptAll("VIGENERE", Stream.of(values), "KEY", false);
+        assertArrayEquals(manager.encryptAll(key, values, false), fromStream.toArray(new String[0]));
+        assertEquals(Arrays.asList(values), manager.decryptAll("VIGENERE", fromStream.stream(), "KEY", false));
+    }
+
+    @Test
+    void batchesReportDamagedValueIndex() throws CryptoException {
+        List<String> values = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            values.add(TEXT + i);
+        }
+
+        for (boolean parallel : new boolean[]{false, true}) {
+            List<String> encrypted = new ArrayList<>(manager.encryptAll("AES", values, AES_KEY, parallel));
+            encrypted.set(2500, "повреждено");
+
+            CryptoException e = assertThrows(CryptoException.class,
+                    () -> manager.decryptAll("AES", encrypted, AES_KEY, parallel));
+            assertTrue(e.getMessage().startsWith("Ошибка в значении №2501:"), e.getMessage());
+        }
+    }
+
+    private static byte[] base64Bytes(Random random, int length) {
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) alphabet.charAt(random.nextInt(alphabet.length()));
+        }
+        return bytes;
+    }
+
+    private static byte[] decryptBlock(byte[] block) throws Exception {
+        Cipher cipher = Cipher.getInstance("AES/ECB/NoPadding");
+        cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(AES_KEY.getBytes(StandardCharsets.US_ASCII), "AES"));
+        return cipher.doFinal(block);
+    }
+
+    private static byte[] xor(byte[] first, byte[] second) {
+        byte[] result = new byte[first.length];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = (byte) (first[i] ^ second[i]);
+        }
+        return result;
+    }
+
+    private static boolean isBase64(String text) {
+        try {
+            Base64.getDecoder().decode(text);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.back.cryptotool.crypto;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DirectBufferPoolTest {
+
+    @Test
+    void reusesBufferOfSameCapacity() {
+        DirectBufferPool pool = new DirectBufferPool(4);
+        ByteBuffer buffer = pool.acquire(1024);
+        assertTrue(buffer.isDirect());
+        assertEquals(1024, buffer.limit());
+
+        pool.release(buffer);
+        assertSame(buffer, pool.acquire(1024));
+        assertEquals(1, pool.getAllocatedCount());
+        assertEquals(2, pool.getAcquiredCount());
+    }
+
+    @Test
+    void keepsBuffersOfDifferentCapacities() {
+        // Буфер меньшей емкости не вытесняет и не подменяет буфер большей
+        DirectBufferPool pool = new DirectBufferPool(4);
+        ByteBuffer small = pool.acquire(100);
+        ByteBuffer large = pool.acquire(1000);
+        pool.release(small);
+        pool.release(large);
+
+        assertSame(large, pool.acquire(1000));
+        assertSame(small, pool.acquire(100));
+        assertNotSame(small, pool.acquire(100));
+    }
+
+    @Test
+    void zeroesReleasedBuffer() {
+        DirectBufferPool pool = new DirectBufferPool(1);
+        ByteBuffer buffer = pool.acquire(20_000);
+        while (buffer.hasRemaining()) {
+            buffer.put((byte) 0x5A);
+        }
+        buffer.flip().position(100);
+        pool.release(buffer);
+
+        ByteBuffer reused = pool.acquire(20_000);
+        assertEquals(0, reused.position());
+        assertEquals(reused.capacity(), reused.limit());
+        for (int i = 0; i < reused.capacity(); i++) {
+            assertEquals(0, reused.get(i), "байт " + i);
+        }
+    }
+
+    @Test
+    void boundsPooledBuffers() {
+        DirectBufferPool pool = new DirectBufferPool(2);
+        ByteBuffer[] buffers = {pool.acquire(64), pool.acquire(64), pool.acquire(128)};
+        for (ByteBuffer buffer : buffers) {
+            pool.release(buffer);
+        }
+        assertEquals(2, pool.getPooledCount());
+
+        pool.release(ByteBuffer.allocate(64));
+        assertEquals(2, pool.getPooledCount());
+    }
+}
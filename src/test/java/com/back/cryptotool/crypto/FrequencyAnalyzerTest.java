@@ -0,0 +1,76 @@
+package com.back.cryptotool.crypto;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FrequencyAnalyzerTest {
+
+    private static final String TEXT = "It was the best of times, it was the worst of times, it was the age of wisdom, "
+            + "it was the age of foolishness, it was the epoch of belief, it was the epoch of incredulity, "
+            + "it was the season of Light, it was the season of Darkness, it was the spring of hope, "
+            + "it was the winter of despair, we had everything before us, we had nothing before us, "
+            + "we were all going direct to Heaven, we were all going direct the other way. ";
+
+    @Test
+    void breaksCaesar() throws Exception {
+        String ciphertext = new CaesarCipher().prepare("7").encrypt(TEXT.repeat(5));
+
+        try (FrequencyAnalyzer analyzer = new FrequencyAnalyzer(2)) {
+            FrequencyAnalyzer.CaesarGuess guess = analyzer.breakCaesar(ciphertext);
+            assertEquals(7, guess.getShift());
+            assertTrue(guess.getScore(7) < guess.getScore(0));
+
+            assertEquals(0, analyzer.breakCaesar(TEXT).getShift());
+        }
+    }
+
+    @Test
+    void breaksVigenere() throws Exception {
+        String ciphertext = new VigenereCipher().prepare("LEMON").encrypt(TEXT.repeat(10));
+
+        try (FrequencyAnalyzer analyzer = new FrequencyAnalyzer(2)) {
+            FrequencyAnalyzer.VigenereGuess guess = analyzer.breakVigenere(ciphertext);
+            assertEquals("LEMON", guess.getKey());
+            assertEquals(5, guess.getKeyLength());
+        }
+    }
+
+    @Test
+    void splitsLargeTextWithoutChangingResult() throws Exception {
+        // Несколько мегабайт делятся на части, столбцы частей должны совпасть со сплошным подсчетом
+        byte[] ciphertext = new VigenereCipher().prepare("CRYPTOGRAPHY").encrypt(TEXT.repeat(8000))
+                .getBytes(StandardCharsets.UTF_8);
+
+        try (FrequencyAnalyzer single = new FrequencyAnalyzer(1);
+             FrequencyAnalyzer parallel = new FrequencyAnalyzer(4)) {
+            FrequencyAnalyzer.VigenereGuess expected = single.breakVigenere(ciphertext, 20);
+            FrequencyAnalyzer.VigenereGuess actual = parallel.breakVigenere(ciphertext, 20);
+
+            assertEquals("CRYPTOGRAPHY", expected.getKey());
+            assertEquals(expected.getKey(), actual.getKey());
+            assertEquals(expected.getCoincidence(), actual.getCoincidence(), 1e-12);
+        }
+    }
+
+    @Test
+    void rejectsTextWithoutEnoughLetters() {
+        try (FrequencyAnalyzer analyzer = new FrequencyAnalyzer(1)) {
+            assertThrows(CryptoException.class, () -> analyzer.breakCaesar("12345 !?"));
+            assertThrows(CryptoException.class, () -> analyzer.breakVigenere("Short text"));
+        }
+    }
+
+    @Test
+    void rejectsInvalidMaxKeyLength() {
+        byte[] ciphertext = TEXT.getBytes(StandardCharsets.UTF_8);
+        try (FrequencyAnalyzer analyzer = new FrequencyAnalyzer(1)) {
+            assertThrows(CryptoException.class, () -> analyzer.breakVigenere(ciphertext, 0));
+            assertThrows(CryptoException.class, () -> analyzer.breakVigenere(ciphertext, -1));
+        }
+    }
+}
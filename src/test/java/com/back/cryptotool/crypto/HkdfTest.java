@@ -0,0 +1,71 @@
+package com.back.cryptotool.crypto;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class HkdfTest {
+
+    private static final HexFormat HEX = HexFormat.of();
+
+    @Test
+    void matchesRfc5869TestCase1() throws CryptoException {
+        byte[] inputKey = new byte[22];
+        Arrays.fill(inputKey, (byte) 0x0b);
+        byte[] salt = HEX.parseHex("000102030405060708090a0b0c");
+        byte[] info = HEX.parseHex("f0f1f2f3f4f5f6f7f8f9");
+
+        byte[] prk = Hkdf.extract(salt, inputKey);
+        assertEquals("077709362c2e32df0ddc3f0dc47bba6390b6c73bb50f9c3122ec844ad7c2b3e5", HEX.formatHex(prk));
+        assertEquals("3cb25f25faacd57a90434f64d0362f2a2d2d0a90cf1a5a4c5db02d56ecc4c5bf34007208d5b887185865",
+                HEX.formatHex(Hkdf.expand(prk, info, 42)));
+    }
+
+    @Test
+    void matchesRfc5869TestCase3WithEmptySalt() throws CryptoException {
+        byte[] inputKey = new byte[22];
+        Arrays.fill(inputKey, (byte) 0x0b);
+
+        byte[] prk = Hkdf.extract(new byte[0], inputKey);
+        assertEquals("19ef24a32c717b167f33a91d6f648bdf96596776afdb6377ac434c1c293ccb04", HEX.formatHex(prk));
+        assertEquals("8da4e775a563c18f715f802a063c5a31b8a11f5c5ee1879ec3454e5f3c738d2d9d201395faa4b61a96c8",
+                HEX.formatHex(Hkdf.expand(prk, new byte[0], 42)));
+    }
+
+    @Test
+    void derivesDistinctChunkKeys() throws CryptoException {
+        byte[] fileKey = Hkdf.fileKey(new byte[32], new byte[12], 32);
+        Set<String> keys = new HashSet<>();
+        for (long index = 0; index < 1000; index++) {
+            keys.add(HEX.formatHex(Hkdf.chunkKey(fileKey, index, 32)));
+        }
+        assertEquals(1000, keys.size());
+
+        // Ключ сегмента зависит только от ключа файла и номера
+        assertArrayEquals(Hkdf.chunkKey(fileKey, 7, 32), Hkdf.chunkKey(fileKey, 7, 32));
+    }
+
+    @Test
+    void fileKeyDependsOnFileId() throws CryptoException {
+        byte[] master = new byte[32];
+        byte[] first = Hkdf.fileKey(master, new byte[12], 32);
+        byte[] otherId = new byte[12];
+        otherId[11] = 1;
+        assertFalse(Arrays.equals(first, Hkdf.fileKey(master, otherId, 32)));
+    }
+
+    @Test
+    void rejectsInvalidLength() {
+        assertThrows(IllegalArgumentException.class, () -> Hkdf.expand(new byte[32], new byte[0], 0));
+        assertThrows(IllegalArgumentException.class,
+                () -> Hkdf.expand(new byte[32], new byte[0], 255 * Hkdf.HASH_LENGTH + 1));
+    }
+}
@@ -0,0 +1,97 @@
+package com.back.cryptotool.crypto;
+
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.time.Duration;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class KeyDerivationTest {
+
+    private static final int ITERATIONS = 1_000;
+
+    @Test
+    void matchesPbkdf2() throws Exception {
+        KeyDerivation derivation = new KeyDerivation(ITERATIONS, 4, Duration.ofMinutes(1));
+        byte[] salt = new byte[KeyDerivation.SALT_LENGTH];
+
+        byte[] expected = SecretKeyFactory.getInstance(KeyDerivation.ALGORITHM)
+                .generateSecret(new PBEKeySpec("пароль".toCharArray(), salt, ITERATIONS, 256)).getEncoded();
+        assertArrayEquals(expected, derivation.derive("пароль", salt, ITERATIONS, 32));
+    }
+
+    @Test
+    void encryptionKeyCanBeDerivedAgainFromSalt() throws CryptoException {
+        KeyDerivation derivation = new KeyDerivation(ITERATIONS, 4, Duration.ofMinutes(1));
+        KeyDerivation.DerivedKey derived = derivation.deriveForEncryption("пароль", 32);
+
+        assertEquals(ITERATIONS, derived.getIterations());
+        assertEquals(KeyDerivation.SALT_LENGTH, derived.getSalt().length);
+        assertArrayEquals(derived.getKey(),
+                derivation.derive("пароль", derived.getSalt(), derived.getIterations(), 32));
+    }
+
+    @Test
+    void reusesSessionKeyForEncryption() throws CryptoException {
+        KeyDerivation derivation = new KeyDerivation(ITERATIONS, 4, Duration.ofMinutes(1));
+        KeyDerivation.DerivedKey first = derivation.deriveForEncryption("пароль", 32);
+        KeyDerivation.DerivedKey second = derivation.deriveForEncryption("пароль", 32);
+
+        // Пакет файлов с одним паролем получает ключ обертки один раз
+        assertArrayEquals(first.getSalt(), second.getSalt());
+        assertArrayEquals(first.getKey(), second.getKey());
+        assertEquals(1, derivation.getCacheSize());
+
+        KeyDerivation.DerivedKey other = derivation.deriveForEncryption("другой пароль", 32);
+        assertFalse(Arrays.equals(first.getSalt(), other.getSalt()));
+    }
+
+    @Test
+    void startsNewSessionWithFreshSalt() throws CryptoException {
+        KeyDerivation derivation = new KeyDerivation(ITERATIONS, 4, Duration.ofMinutes(1));
+        KeyDerivation.DerivedKey first = derivation.deriveForEncryption("пароль", 32);
+        derivation.clearCache();
+        KeyDerivation.DerivedKey second = derivation.deriveForEncryption("пароль", 32);
+        assertFalse(Arrays.equals(first.getSalt(), second.getSalt()));
+
+        KeyDerivation expiring = new KeyDerivation(ITERATIONS, 4, Duration.ZERO);
+        assertFalse(Arrays.equals(expiring.deriveForEncryption("пароль", 32).getSalt(),
+                expiring.deriveForEncryption("пароль", 32).getSalt()));
+    }
+
+    @Test
+    void boundsCacheSize() throws CryptoException {
+        KeyDerivation derivation = new KeyDerivation(ITERATIONS, 3, Duration.ofMinutes(1));
+        for (int i = 0; i < 10; i++) {
+            derivation.derive("пароль", new byte[]{(byte) i}, ITERATIONS, 16);
+        }
+        assertEquals(3, derivation.getCacheSize());
+
+        derivation.clearCache();
+        assertEquals(0, derivation.getCacheSize());
+    }
+
+    @Test
+    void evictsExpiredKeys() throws CryptoException {
+        KeyDerivation derivation = new KeyDerivation(ITERATIONS, 3, Duration.ZERO);
+        byte[] first = derivation.derive("пароль", new byte[1], ITERATIONS, 16);
+        derivation.evictExpired();
+        assertEquals(0, derivation.getCacheSize());
+
+        // После вытеснения ключ получается заново и совпадает с прежним
+        assertArrayEquals(first, derivation.derive("пароль", new byte[1], ITERATIONS, 16));
+    }
+
+    @Test
+    void rejectsEmptyPassword() {
+        KeyDerivation derivation = new KeyDerivation(ITERATIONS, 3, Duration.ofMinutes(1));
+        assertThrows(CryptoException.class, () -> derivation.deriveForEncryption("", 32));
+        assertThrows(CryptoException.class, () -> derivation.derive(null, new byte[1], ITERATIONS, 32));
+    }
+}
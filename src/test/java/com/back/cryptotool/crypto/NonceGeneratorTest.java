@@ -0,0 +1,110 @@
+package com.back.cryptotool.crypto;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NonceGeneratorTest {
+
+    private final NonceGenerator generator = NonceGenerator.getInstance();
+
+    @Test
+    void returnsSharedInstance() {
+        assertSame(generator, NonceGenerator.getInstance());
+    }
+
+    @Test
+    void fillsRequestsAcrossBatchBoundary() {
+        // Запрос больше пачки заполняется из нескольких пачек без нулевых промежутков
+        byte[] large = generator.nextBytes(10_000);
+        assertEquals(10_000, large.length);
+        for (int offset = 0; offset + 64 <= large.length; offset += 64) {
+            assertFalse(Arrays.equals(new byte[64], Arrays.copyOfRange(large, offset, offset + 64)),
+                    "Нулевой блок на смещении " + offset);
+        }
+
+        assertEquals(0, generator.nextBytes(0).length);
+    }
+
+    @Test
+    void countsServedBytesAndRefills() throws Exception {
+        // Счетчики общие для всех тестов, поэтому проверяем прирост в отдельном потоке с пустым буфером
+        long bytes = generator.getBytesServed();
+        long requests = generator.getRequestCount();
+        long refills = generator.getRefillCount();
+
+        Thread thread = new Thread(() -> generator.nextBytes(3 * 4096));
+        thread.start();
+        thread.join();
+
+        assertTrue(generator.getBytesServed() - bytes >= 3 * 4096);
+        assertTrue(generator.getRequestCount() - requests >= 1);
+        assertTrue(generator.getRefillCount() - refills >= 3);
+    }
+
+    @Test
+    void producesDistinctNonces() {
+        Set<String> nonces = new HashSet<>();
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(nonces.add(Arrays.toString(generator.nextBytes(12))));
+        }
+    }
+
+    @Test
+    void threadsDoNotShareBatches() throws Exception {
+        Set<String> nonces = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<?>[] futures = new Future<?>[4];
+            for (int t = 0; t < futures.length; t++) {
+                futures[t] = executor.submit(() -> {
+                    for (int i = 0; i < 5_000; i++) {
+                        assertTrue(nonces.add(Arrays.toString(generator.nextBytes(12))));
+                    }
+                });
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+        assertEquals(20_000, nonces.size());
+    }
+
+    @Test
+    void nextIntStaysInRangeAndCoversIt() {
+        int[] counts = new int[26];
+        for (int i = 0; i < 26_000; i++) {
+            counts[generator.nextInt(26)]++;
+        }
+        for (int count : counts) {
+            assertNotEquals(0, count);
+        }
+
+        assertEquals(0, generator.nextInt(1));
+        assertTrue(generator.nextInt(256) < 256);
+    }
+
+    @Test
+    void rejectsInvalidBound() {
+        for (int bound : new int[]{0, -1, 257}) {
+            assertThrows(IllegalArgumentException.class, () -> generator.nextInt(bound));
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.back.cryptotool.crypto;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Все движки сдвига должны давать побайтно тот же результат, что и скалярный.
+ * Векторный движок выбирается {@link ShiftEngine#getInstance()}, если тесты
+ * запущены с модулем jdk.incubator.vector (так настроен surefire).
+ */
+class ShiftEngineTest {
+
+    // Длины вокруг ширины векторов и остатков, а также больше порога параллельной обработки
+    private static final int[] LENGTHS = {0, 1, 7, 15, 16, 17, 31, 33, 63, 64, 65, 127, 129, 1000, 8191, 8193,
+            ParallelShiftEngine.PARALLEL_THRESHOLD + 12_345};
+    private static final int[][] KEYS = {{3}, {25}, {11, 4, 12, 14, 13}, {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12,
+            13, 14, 15, 16, 17, 18, 19, 20, 21, 22, 23, 24, 25, 0, 7, 19, 2, 8, 14, 21, 5, 3, 9, 17, 11}};
+
+    private final ShiftEngine scalar = new ScalarShiftEngine();
+    private final Random random = new Random(42);
+    private ForkJoinPool pool;
+    private List<ShiftEngine> engines;
+
+    @BeforeEach
+    void setUp() {
+        // Отдельный пул, чтобы части выполнялись параллельно и на одноядерной машине
+        pool = new ForkJoinPool(4);
+        engines = List.of(ShiftEngine.getInstance(),
+                new ParallelShiftEngine(scalar, pool),
+                new ParallelShiftEngine(ShiftEngine.getInstance(), pool));
+    }
+
+    @AfterEach
+    void tearDown() {
+        pool.shutdown();
+    }
+
+    @Test
+    void transformsLatinBytesLikeScalar() {
+        for (int length : LENGTHS) {
+            byte[] data = latinBytes(length);
+            for (int[] shifts : KEYS) {
+                ShiftKey key = new ShiftKey(shifts, Alphabet.LATIN);
+                for (int keyIndex : new int[]{0, 3}) {
+                    byte[] expected = data.clone();
+                    int expectedIndex = scalar.transform(expected, 0, length, key, keyIndex);
+
+                    for (ShiftEngine engine : engines) {
+                        byte[] actual = data.clone();
+                        assertEquals(expectedIndex, engine.transform(actual, 0, length, key, keyIndex),
+                                engine.getName() + ", длина " + length);
+                        assertArrayEquals(expected, actual, engine.getName() + ", длина " + length);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void transformsCharsLikeScalar() {
+        for (Alphabet alphabet : new Alphabet[]{Alphabet.LATIN, Alphabet.CYRILLIC}) {
+            for (int length : LENGTHS) {
+                char[] data = chars(length, alphabet);
+                for (int[] shifts : KEYS) {
+                    ShiftKey key = new ShiftKey(shifts, alphabet);
+                    char[] expected = data.clone();
+                    int expectedIndex = scalar.transform(expected, 0, length, key, 1);
+
+                    for (ShiftEngine engine : engines) {
+                        char[] actual = data.clone();
+                        String message = engine.getName() + ", " + alphabet.getName() + ", длина " + length;
+                        assertEquals(expectedIndex, engine.transform(actual, 0, length, key, 1), message);
+                        assertArrayEquals(expected, actual, message);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void countsLettersLikeScalar() {
+        for (int length : LENGTHS) {
+            byte[] bytes = latinBytes(length);
+            char[] latin = chars(length, Alphabet.LATIN);
+            char[] cyrillic = chars(length, Alphabet.CYRILLIC);
+
+            for (ShiftEngine engine : engines) {
+                // Участок со смещением проверяет и невыровненное начало
+                int from = Math.min(length, 3);
+                assertEquals(scalar.countLetters(bytes, from, length), engine.countLetters(bytes, from, length));
+                assertEquals(scalar.countLetters(latin, from, length, Alphabet.LATIN),
+                        engine.countLetters(latin, from, length, Alphabet.LATIN));
+                assertEquals(scalar.countLetters(cyrillic, from, length, Alphabet.CYRILLIC),
+                        engine.countLetters(cyrillic, from, length, Alphabet.CYRILLIC));
+            }
+        }
+    }
+
+    @Test
+    void transformsStreamsLikeScalar() throws Exception {
+        int length = ParallelShiftEngine.PARALLEL_THRESHOLD * 3;
+        byte[] latin = latinBytes(length);
+        byte[] cyrillic = new String(chars(length / 2, Alphabet.CYRILLIC)).getBytes(StandardCharsets.UTF_8);
+        ShiftKey latinKey = new ShiftKey(KEYS[2], Alphabet.LATIN);
+        ShiftKey cyrillicKey = new ShiftKey(KEYS[3], Alphabet.CYRILLIC);
+
+        byte[] expectedLatin = transform(scalar, latin, latinKey);
+        byte[] expectedCyrillic = transform(scalar, cyrillic, cyrillicKey);
+        String text = new String(chars(length, Alphabet.LATIN));
+        String expectedText = transform(scalar, text, latinKey);
+
+        for (ShiftEngine engine : engines) {
+            assertArrayEquals(expectedLatin, transform(engine, latin, latinKey), engine.getName());
+            assertArrayEquals(expectedCyrillic, transform(engine, cyrillic, cyrillicKey), engine.getName());
+            assertEquals(expectedText, transform(engine, text, latinKey), engine.getName());
+        }
+    }
+
+    /**
+     * Латинские буквы вперемешку с прочими символами ASCII и байтами UTF-8
+     */
+    private byte[] latinBytes(int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            int kind = random.nextInt(4);
+            if (kind == 0) {
+                data[i] = (byte) ('a' + random.nextInt(26));
+            } else if (kind == 1) {
+                data[i] = (byte) ('A' + random.nextInt(26));
+            } else if (kind == 2) {
+                data[i] = (byte) (' ' + random.nextInt(32));
+            } else {
+                data[i] = (byte) random.nextInt(256);
+            }
+        }
+        return data;
+    }
+
+    /**
+     * Буквы алфавита вперемешку с латиницей, знаками и символами других алфавитов
+     */
+    private char[] chars(int length, Alphabet alphabet) {
+        String letters = alphabet.getLowercase() + alphabet.getUppercase();
+        String others = " ,.!?0123456789abcXYZёЁαβ語\t\n";
+        char[] data = new char[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = random.nextInt(3) < 2
+                    ? letters.charAt(random.nextInt(letters.length()))
+                    : others.charAt(random.nextInt(others.length()));
+        }
+        return data;
+    }
+
+    private static byte[] transform(ShiftEngine engine, byte[] data, ShiftKey key) throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        engine.transform(new ByteArrayInputStream(data), output, key);
+        return output.toByteArray();
+    }
+
+    private static String transform(ShiftEngine engine, String text, ShiftKey key) throws Exception {
+        StringWriter output = new StringWriter();
+        engine.transform(new StringReader(text), output, key, 0);
+        return output.toString();
+    }
+}
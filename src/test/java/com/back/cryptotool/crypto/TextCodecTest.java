@@ -0,0 +1,50 @@
+package com.back.cryptotool.crypto;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TextCodecTest {
+
+    @ParameterizedTest
+    @EnumSource(TextCodec.class)
+    void roundTripsEveryLength(TextCodec codec) throws CryptoException {
+        Random random = new Random(1);
+        for (int length = 0; length <= 40; length++) {
+            byte[] data = new byte[length];
+            random.nextBytes(data);
+            assertArrayEquals(data, codec.decode(codec.encode(data)), "длина " + length);
+        }
+    }
+
+    @Test
+    void z85MatchesSpecificationVector() throws CryptoException {
+        // Пример из спецификации ZeroMQ RFC 32
+        byte[] data = {(byte) 0x86, 0x4F, (byte) 0xD2, 0x6F, (byte) 0xB5, 0x59, (byte) 0xF7, 0x5B};
+        assertEquals("HelloWorld", TextCodec.Z85.encode(data));
+        assertArrayEquals(data, TextCodec.Z85.decode("HelloWorld"));
+    }
+
+    @Test
+    void z85RejectsInvalidText() {
+        // Группа из одного символа не кодирует ни одного байта
+        assertThrows(CryptoException.class, () -> TextCodec.Z85.decode("HelloW"));
+        assertThrows(CryptoException.class, () -> TextCodec.Z85.decode("Hello\"orld"));
+        // Значение группы больше 2^32 - 1
+        assertThrows(CryptoException.class, () -> TextCodec.Z85.decode("#####"));
+    }
+
+    @Test
+    void detectsCodecFromText() {
+        assertEquals(TextCodec.Z85, TextCodec.forText(TextCodec.Z85.getPrefix() + "HelloWorld"));
+        assertEquals(TextCodec.BASE64_URL, TextCodec.forText("ab-_"));
+        assertEquals(TextCodec.BASE64, TextCodec.forText("ab+/"));
+        assertEquals(TextCodec.BASE64, TextCodec.forText("HelloWorld"));
+    }
+}
@@ -0,0 +1,264 @@
+package com.back.cryptotool.util;
+
+import com.back.cryptotool.crypto.Alphabet;
+import com.back.cryptotool.crypto.CryptoException;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EncryptedFileHeaderTest {
+
+    private static final int CAESAR = 1;
+    private static final int VIGENERE = 2;
+    private static final int AES = 3;
+    private static final int CHACHA20 = 4;
+    private static final int STREAM = 0;
+    private static final int SEGMENTED = 1;
+
+    private static final byte[] SALT = new byte[16];
+    private static final String LATIN = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ";
+
+    @Test
+    void writesAndReadsSegmentedHeader() throws Exception {
+        byte[] nonce = new byte[12];
+        nonce[3] = 1;
+        EncryptedFileHeader header = new EncryptedFileHeader("aes", EncryptedFileHeader.Layout.SEGMENTED, 256,
+                nonce, 1024 * 1024, new byte[40]).withKeyDerivation(SALT, 600_000);
+
+        byte[] bytes = header.toByteArray();
+        assertEquals(1, bytes[4]);
+        assertEquals(header.getLength(), bytes.length);
+        assertArrayEquals(header(AES, SEGMENTED, 256, nonce, 1024 * 1024, new byte[40], SALT, 600_000), bytes);
+
+        EncryptedFileHeader read = read(bytes);
+        assertEquals("AES", read.getAlgorithm());
+        assertEquals(EncryptedFileHeader.Layout.SEGMENTED, read.getLayout());
+        assertArrayEquals(nonce, read.getNonce());
+        assertEquals(600_000, read.getIterations());
+        assertTrue(read.isEnvelope());
+        assertTrue(read.isPasswordBased());
+        assertArrayEquals(bytes, read.toByteArray());
+    }
+
+    @Test
+    void readsStreamHeader() throws Exception {
+        byte[] bytes = header(VIGENERE, STREAM, 0, new byte[0], 8192, LATIN, new byte[0], new byte[0], 0);
+
+        EncryptedFileHeader header = read(bytes);
+        assertEquals("VIGENERE", header.getAlgorithm());
+        assertEquals(EncryptedFileHeader.Layout.STREAM, header.getLayout());
+        assertSame(Alphabet.LATIN, header.getAlphabet());
+        assertEquals(bytes.length, header.getLength());
+        assertFalse(header.isEnvelope());
+        assertFalse(header.isPasswordBased());
+    }
+
+    @Test
+    void writesAndReadsAlphabet() throws Exception {
+        Alphabet custom = Alphabet.of("Свой", "aяbю", "AЯBЮ");
+        for (Alphabet alphabet : new Alphabet[]{Alphabet.CYRILLIC, custom}) {
+            EncryptedFileHeader header = new EncryptedFileHeader("CAESAR", EncryptedFileHeader.Layout.STREAM, 0,
+                    new byte[0], 8192).withAlphabet(alphabet);
+            byte[] bytes = header.toByteArray();
+            assertEquals(header.getLength(), bytes.length);
+
+            Alphabet read = read(bytes).getAlphabet();
+            assertEquals(alphabet.getLowercase(), read.getLowercase());
+            assertEquals(alphabet.getUppercase(), read.getUppercase());
+        }
+        assertSame(Alphabet.CYRILLIC, read(new EncryptedFileHeader("CAESAR", EncryptedFileHeader.Layout.STREAM, 0,
+                new byte[0], 8192).withAlphabet(Alphabet.CYRILLIC).toByteArray()).getAlphabet());
+    }
+
+    @Test
+    void rejectsInvalidAlphabet() throws Exception {
+        // Классическому шифру алфавит нужен, AES - нет
+        assertThrows(CryptoException.class,
+                () -> read(header(CAESAR, STREAM, 0, new byte[0], 8192, "", new byte[0], new byte[0], 0)));
+        assertThrows(CryptoException.class,
+                () -> read(header(AES, SEGMENTED, 256, new byte[12], 65536, LATIN, new byte[40], SALT, 1000)));
+        // Нечетное число букв, повтор буквы, некорректный UTF-8
+        assertThrows(CryptoException.class,
+                () -> read(header(CAESAR, STREAM, 0, new byte[0], 8192, "abcAB", new byte[0], new byte[0], 0)));
+        assertThrows(CryptoException.class,
+                () -> read(header(CAESAR, STREAM, 0, new byte[0], 8192, "aaAA", new byte[0], new byte[0], 0)));
+
+        byte[] invalidUtf8 = header(CAESAR, STREAM, 0, new byte[0], 8192, "ab", new byte[0], new byte[0], 0);
+        invalidUtf8[4 + 1 + 1 + 1 + 2 + 1 + 4 + 2] = (byte) 0xC0;
+        assertThrows(CryptoException.class, () -> read(invalidUtf8));
+    }
+
+    @Test
+    void keepsLengthWhenWrappedKeyChanges() throws Exception {
+        EncryptedFileHeader header = new EncryptedFileHeader("AES", EncryptedFileHeader.Layout.SEGMENTED, 256,
+                new byte[12], 65536, new byte[40]).withKeyDerivation(SALT, 1000);
+        byte[] newSalt = SALT.clone();
+        newSalt[0] = 1;
+        EncryptedFileHeader rotated = header.withWrappedKey(256, new byte[40]).withKeyDerivation(newSalt, 2000);
+
+        assertEquals(header.getLength(), rotated.getLength());
+        assertArrayEquals(header.getAssociatedData(), rotated.getAssociatedData());
+    }
+
+    @Test
+    void associatedDataCoversFieldsUpToAlphabet() throws Exception {
+        byte[] nonce = new byte[12];
+        nonce[0] = 9;
+        EncryptedFileHeader header = new EncryptedFileHeader("CHACHA20", EncryptedFileHeader.Layout.SEGMENTED, 256,
+                nonce, 65536, new byte[40]).withKeyDerivation(SALT, 1000);
+
+        byte[] bytes = header.toByteArray();
+        byte[] associatedData = header.getAssociatedData();
+        assertArrayEquals(Arrays.copyOf(bytes, 4 + 1 + 1 + 1 + 2 + 1 + nonce.length + 4 + 2), associatedData);
+    }
+
+    @Test
+    void detectsSignatureWithoutConsumingStream() throws Exception {
+        InputStream input = new ByteArrayInputStream(
+                header(AES, SEGMENTED, 256, new byte[12], 1, new byte[40], SALT, 1000));
+        assertTrue(EncryptedFileHeader.hasHeader(input));
+        assertEquals('C', input.read());
+
+        assertFalse(EncryptedFileHeader.hasHeader(new ByteArrayInputStream("cmdHTlgr".getBytes())));
+    }
+
+    @Test
+    void rejectsInvalidChunkSize() {
+        for (int chunkSize : new int[]{0, -1, 64 * 1024 * 1024 + 1}) {
+            assertThrows(CryptoException.class,
+                    () -> read(header(AES, SEGMENTED, 256, new byte[12], chunkSize, new byte[40], SALT, 1000)));
+        }
+    }
+
+    @Test
+    void rejectsInvalidNonceLength() {
+        assertThrows(CryptoException.class,
+                () -> read(header(AES, SEGMENTED, 256, new byte[16], 65536, new byte[40], SALT, 1000)));
+        assertThrows(CryptoException.class,
+                () -> read(header(VIGENERE, STREAM, 0, new byte[12], 8192, LATIN, new byte[0], new byte[0], 0)));
+    }
+
+    @Test
+    void rejectsInvalidLayout() {
+        // AES и ChaCha20 пишутся только сегментами, классические шифры - только потоком
+        assertThrows(CryptoException.class,
+                () -> read(header(AES, STREAM, 256, new byte[12], 65536, new byte[40], SALT, 1000)));
+        assertThrows(CryptoException.class,
+                () -> read(header(VIGENERE, SEGMENTED, 0, new byte[12], 65536, LATIN, new byte[0], new byte[0], 0)));
+    }
+
+    @Test
+    void rejectsInvalidKeyMaterial() {
+        assertThrows(CryptoException.class,
+                () -> read(header(AES, SEGMENTED, 256, new byte[12], 65536, new byte[39], SALT, 1000)));
+        assertThrows(CryptoException.class,
+                () -> read(header(AES, SEGMENTED, 256, new byte[12], 65536, new byte[0], SALT, 1000)));
+        assertThrows(CryptoException.class,
+                () -> read(header(CHACHA20, SEGMENTED, 256, new byte[12], 65536, new byte[0], SALT, 1000)));
+        assertThrows(CryptoException.class,
+                () -> read(header(CHACHA20, SEGMENTED, 256, new byte[12], 65536, new byte[40], new byte[0], 0)));
+        assertThrows(CryptoException.class,
+                () -> read(header(CHACHA20, SEGMENTED, 8, new byte[12], 65536, new byte[40], SALT, 1000)));
+    }
+
+    @Test
+    void rejectsInvalidKeyDerivation() throws Exception {
+        read(header(AES, SEGMENTED, 256, new byte[12], 65536, new byte[40], SALT,
+                EncryptedFileHeader.MAX_ITERATIONS));
+
+        // Число итераций не аутентифицировано: огромное значение не должно доходить до PBKDF2
+        for (int iterations : new int[]{EncryptedFileHeader.MAX_ITERATIONS + 1, Integer.MAX_VALUE, -1}) {
+            assertThrows(CryptoException.class,
+                    () -> read(header(AES, SEGMENTED, 256, new byte[12], 65536, new byte[40], SALT, iterations)));
+        }
+        for (int saltLength : new int[]{1, 15, 17, 255}) {
+            assertThrows(CryptoException.class, () -> read(header(CHACHA20, SEGMENTED, 256, new byte[12], 65536,
+                    new byte[40], new byte[saltLength], 1000)));
+        }
+    }
+
+    @Test
+    void rejectsDamagedHeader() throws Exception {
+        byte[] bytes = header(CHACHA20, SEGMENTED, 256, new byte[12], 65536, new byte[40], SALT, 1000);
+        read(bytes);
+
+        byte[] magic = bytes.clone();
+        magic[0] = 'X';
+        assertThrows(CryptoException.class, () -> read(magic));
+
+        for (int version : new int[]{0, 2, 5}) {
+            byte[] damaged = bytes.clone();
+            damaged[4] = (byte) version;
+            assertThrows(CryptoException.class, () -> read(damaged));
+        }
+
+        byte[] algorithm = bytes.clone();
+        algorithm[5] = 9;
+        assertThrows(CryptoException.class, () -> read(algorithm));
+
+        byte[] layout = bytes.clone();
+        layout[6] = 2;
+        assertThrows(CryptoException.class, () -> read(layout));
+
+        byte[] truncated = Arrays.copyOf(bytes, bytes.length - 1);
+        assertThrows(CryptoException.class, () -> read(truncated));
+
+        byte[] iterations = header(CHACHA20, SEGMENTED, 256, new byte[12], 65536, new byte[40], SALT, 0);
+        assertThrows(CryptoException.class, () -> read(iterations));
+    }
+
+    private static EncryptedFileHeader read(byte[] bytes) throws CryptoException, IOException {
+        return EncryptedFileHeader.read(new ByteArrayInputStream(bytes));
+    }
+
+    /**
+     * Собирает заголовок AES или ChaCha20 (без алфавита) побайтно по описанию формата
+     */
+    static byte[] header(int algorithm, int layout, int keyBits, byte[] nonce, int chunkSize,
+                         byte[] wrappedKey, byte[] salt, int iterations) throws IOException {
+        return header(algorithm, layout, keyBits, nonce, chunkSize, "", wrappedKey, salt, iterations);
+    }
+
+    /**
+     * Собирает заголовок побайтно по описанию формата
+     *
+     * @param letters строчные и прописные буквы алфавита
+     */
+    static byte[] header(int algorithm, int layout, int keyBits, byte[] nonce, int chunkSize, String letters,
+                         byte[] wrappedKey, byte[] salt, int iterations) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(bytes);
+        data.writeBytes("CTEN");
+        data.writeByte(1);
+        data.writeByte(algorithm);
+        data.writeByte(layout);
+        data.writeShort(keyBits);
+        data.writeByte(nonce.length);
+        data.write(nonce);
+        data.writeInt(chunkSize);
+        byte[] alphabet = letters.getBytes(StandardCharsets.UTF_8);
+        data.writeShort(alphabet.length);
+        data.write(alphabet);
+        data.writeByte(wrappedKey.length);
+        data.write(wrappedKey);
+        data.writeByte(salt.length);
+        data.write(salt);
+        if (salt.length > 0) {
+            data.writeInt(iterations);
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,337 @@
+package com.back.cryptotool.util;
+
+import com.back.cryptotool.crypto.AesCipher;
+import com.back.cryptotool.crypto.Alphabet;
+import com.back.cryptotool.crypto.CryptoException;
+import com.back.cryptotool.crypto.CryptoManager;
+import com.back.cryptotool.crypto.Hkdf;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FileProcessorTest {
+
+    private static final String AES_KEY = "0123456789abcdef";
+    private static final int CHUNK_SIZE = 4096;
+
+    @TempDir
+    Path directory;
+
+    private CryptoManager manager;
+    private FileProcessor processor;
+
+    @BeforeEach
+    void setUp() {
+        manager = new CryptoManager();
+        processor = new FileProcessor(manager);
+    }
+
+    @AfterEach
+    void tearDown() {
+        processor.close();
+        manager.close();
+    }
+
+    @ParameterizedTest
+    @EnumSource(FileProcessor.IoStrategy.class)
+    void roundTripsPasswordFiles(FileProcessor.IoStrategy strategy) throws Exception {
+        byte[] data = randomBytes(3 * 1024 * 1024 + 17);
+
+        for (String algorithm : new String[]{"AES", "CHACHA20"}) {
+            AtomicLong processed = new AtomicLong();
+            FileProcessor.FileResult result = processor.encryptFile(write("data.bin", data), algorithm,
+                    "пароль любой длины", strategy, (done, total) -> processed.accumulateAndGet(done, Math::max));
+            File encrypted = result.getFile();
+            assertEquals(strategy, result.getIoStrategy());
+            assertEquals(data.length, processed.get());
+
+            EncryptedFileHeader header = processor.readHeader(encrypted);
+            assertEquals(algorithm, header.getAlgorithm());
+            assertTrue(header.isPasswordBased());
+
+            Files.delete(processor.restoreOriginalFileName(encrypted).toPath());
+            FileProcessor.FileResult decrypted = processor.decryptFile(encrypted, algorithm, "пароль любой длины",
+                    strategy, FileProcessor.ProgressListener.NONE);
+            assertEquals(strategy, decrypted.getIoStrategy());
+            assertArrayEquals(data, Files.readAllBytes(decrypted.getFile().toPath()), algorithm);
+            assertThrows(CryptoException.class, () -> processor.decryptFile(encrypted, algorithm, "другой пароль"));
+        }
+    }
+
+    @Test
+    void rejectsEmptyFile() throws Exception {
+        File empty = write("empty.bin", new byte[0]);
+        assertThrows(CryptoException.class, () -> processor.encryptFile(empty, "CHACHA20", "пароль"));
+    }
+
+    @Test
+    void roundTripsClassicalCiphers() throws Exception {
+        byte[] text = "Hello, World! Привет, мир!\n".repeat(1000).getBytes(StandardCharsets.UTF_8);
+
+        File caesar = processor.encryptFile(write("caesar.txt", text), "CAESAR", "3");
+        assertEquals(EncryptedFileHeader.Layout.STREAM, processor.readHeader(caesar).getLayout());
+        assertArrayEquals(text, decrypt(caesar, "CAESAR", "3"));
+
+        AtomicLong processed = new AtomicLong();
+        FileProcessor.FileResult vigenere = processor.encryptFile(write("vigenere.txt", text), "VIGENERE", "KEY",
+                FileProcessor.IoStrategy.MEMORY_MAPPED, (done, total) -> processed.set(done));
+        assertEquals(text.length, processed.get());
+        assertEquals(FileProcessor.IoStrategy.STREAMING, vigenere.getIoStrategy());
+        assertArrayEquals(text, decrypt(vigenere.getFile(), "VIGENERE", "KEY"));
+    }
+
+    @Test
+    void roundTripsArbitraryBytesWithNonLatinAlphabet() throws Exception {
+        // Текст UTF-8 вперемешку с байтами, которые не являются корректным UTF-8,
+        // и оборванная последовательность в конце файла
+        byte[] text = "Съешь же ещё этих мягких французских булок\n".getBytes(StandardCharsets.UTF_8);
+        byte[] data = concat(concat(text, randomBytes(100_000)), concat(text, new byte[]{(byte) 0xD0}));
+
+        // В смешанном алфавите буквы кодируются разным числом байт
+        Alphabet mixed = Alphabet.of("Смешанный", "aяbю", "AЯBЮ");
+        for (Alphabet alphabet : new Alphabet[]{Alphabet.CYRILLIC, mixed}) {
+            manager.setAlphabet(alphabet);
+            File encrypted = processor.encryptFile(write("data.bin", data), "CAESAR", "1");
+
+            Alphabet stored = processor.readHeader(encrypted).getAlphabet();
+            assertEquals(alphabet.getLowercase(), stored.getLowercase());
+            assertEquals(alphabet.getUppercase(), stored.getUppercase());
+            assertFalse(Arrays.equals(data, payload(encrypted)), alphabet.getName());
+
+            // Алфавит берется из заголовка, а не из текущей настройки
+            manager.setAlphabet(Alphabet.LATIN);
+            assertArrayEquals(data, decrypt(encrypted, "CAESAR", "1"), alphabet.getName());
+        }
+
+        manager.setAlphabet(Alphabet.CYRILLIC);
+        File vigenere = processor.encryptFile(write("vigenere.bin", data), "VIGENERE", "ключ");
+        assertFalse(new String(payload(vigenere), StandardCharsets.UTF_8).contains("французских"));
+        manager.setAlphabet(Alphabet.LATIN);
+        assertArrayEquals(data, decrypt(vigenere, "VIGENERE", "ключ"));
+    }
+
+    @Test
+    void detectsTruncatedFile() throws Exception {
+        File encrypted = processor.encryptFile(write("data.bin", randomBytes(3 * 1024 * 1024)), "AES", "пароль");
+        long size = Files.size(encrypted.toPath());
+        try (FileChannel channel = FileChannel.open(encrypted.toPath(), StandardOpenOption.WRITE)) {
+            channel.truncate(size - 1024 * 1024 - SegmentedFileCipher.TAG_LENGTH);
+        }
+
+        assertThrows(CryptoException.class, () -> processor.decryptFile(encrypted, "AES", "пароль"));
+        // Недописанный результат не остается на диске
+        assertFalse(directory.resolve("data.bin").toFile().exists());
+    }
+
+    @Test
+    void rotatesPasswordWithoutReencryptingData() throws Exception {
+        byte[] data = randomBytes(100_000);
+        File first = processor.encryptFile(write("first.bin", data), "AES", "старый пароль");
+        File second = processor.encryptFile(write("second.bin", data), "AES", "старый пароль");
+        byte[] body = payload(first);
+
+        assertEquals(2, processor.rotateKeys(List.of(first, second), "старый пароль", "новый пароль"));
+
+        assertArrayEquals(body, payload(first));
+        assertThrows(CryptoException.class, () -> processor.decryptFile(first, "AES", "старый пароль"));
+        assertArrayEquals(data, decrypt(first, "AES", "новый пароль"));
+        assertArrayEquals(data, decrypt(second, "AES", "новый пароль"));
+    }
+
+    @Test
+    void rotationChecksEveryFileBeforeChangingAny() throws Exception {
+        byte[] data = randomBytes(1000);
+        File first = processor.encryptFile(write("first.bin", data), "AES", "пароль один");
+        File second = processor.encryptFile(write("second.bin", data), "AES", "пароль два");
+        byte[] original = Files.readAllBytes(first.toPath());
+
+        assertThrows(CryptoException.class,
+                () -> processor.rotateKeys(List.of(first, second), "пароль один", "новый пароль"));
+        assertArrayEquals(original, Files.readAllBytes(first.toPath()));
+    }
+
+    @Test
+    void rotatesChaCha20Password() throws Exception {
+        byte[] data = randomBytes(100_000);
+        File encrypted = processor.encryptFile(write("data.bin", data), "CHACHA20", "старый пароль");
+        byte[] body = payload(encrypted);
+        long size = Files.size(encrypted.toPath());
+
+        processor.rotateKey(encrypted, "старый пароль", "новый пароль");
+
+        // Заголовок перезаписан на месте, журнал удален
+        assertEquals(size, Files.size(encrypted.toPath()));
+        assertArrayEquals(body, payload(encrypted));
+        assertFalse(journal(encrypted).exists());
+        assertArrayEquals(data, decrypt(encrypted, "CHACHA20", "новый пароль"));
+    }
+
+    @Test
+    void rotationRejectsFilesWithoutEnvelope() throws Exception {
+        File encrypted = processor.encryptFile(write("data.txt", "Hello".getBytes(StandardCharsets.UTF_8)),
+                "CAESAR", "3");
+        assertThrows(CryptoException.class, () -> processor.rotateKey(encrypted, "3", "4"));
+    }
+
+    @Test
+    void restoresHeaderAfterInterruptedRotation() throws Exception {
+        byte[] data = randomBytes(10_000);
+        File encrypted = processor.encryptFile(write("data.bin", data), "AES", "старый пароль");
+        int headerLength = processor.readHeader(encrypted).getLength();
+        byte[] original = Files.readAllBytes(encrypted.toPath());
+
+        // Сбой после записи журнала, посреди перезаписи заголовка
+        Files.write(journal(encrypted).toPath(), Arrays.copyOf(original, headerLength));
+        try (FileChannel channel = FileChannel.open(encrypted.toPath(), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[headerLength / 2]), headerLength / 4);
+        }
+
+        assertArrayEquals(data, decrypt(encrypted, "AES", "старый пароль"));
+        assertArrayEquals(original, Files.readAllBytes(encrypted.toPath()));
+        assertFalse(journal(encrypted).exists());
+    }
+
+    @Test
+    void discardsIncompleteJournal() throws Exception {
+        byte[] data = randomBytes(10_000);
+        File encrypted = processor.encryptFile(write("data.bin", data), "AES", "пароль");
+        byte[] original = Files.readAllBytes(encrypted.toPath());
+
+        // Сбой во время записи журнала: заголовок файла еще не менялся
+        Files.write(journal(encrypted).toPath(), Arrays.copyOf(original, 10));
+
+        processor.rotateKey(encrypted, "пароль", "новый пароль");
+        assertFalse(journal(encrypted).exists());
+        assertArrayEquals(data, decrypt(encrypted, "AES", "новый пароль"));
+    }
+
+    @Test
+    void decryptsFileBuiltFromSpecification() throws Exception {
+        // Ключ обертки - PBKDF2 от пароля, ключ файла - HKDF от ключа данных и nonce,
+        // AAD сегментов - неизменяемые поля заголовка
+        byte[] data = randomBytes(2 * CHUNK_SIZE + 1);
+        byte[] nonce = randomBytes(SegmentedFileCipher.NONCE_LENGTH);
+        byte[] salt = randomBytes(16);
+        byte[] dataKey = randomBytes(32);
+        byte[] passwordKey = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256")
+                .generateSecret(new PBEKeySpec("пароль".toCharArray(), salt, 1000, 256)).getEncoded();
+        byte[] wrapped = AesCipher.wrapKey(new SecretKeySpec(passwordKey, "AES"), dataKey);
+        byte[] header = EncryptedFileHeaderTest.header(3, 1, 256, nonce, CHUNK_SIZE, wrapped, salt, 1000);
+        SecretKey fileKey = new SecretKeySpec(Hkdf.fileKey(dataKey, nonce, 32), "AES");
+
+        File file = writeSegmented("aes.bin.enc", header, data, fileKey, nonce,
+                EncryptedFileHeader.read(new ByteArrayInputStream(header)).getAssociatedData());
+        assertArrayEquals(data, decrypt(file, "AES", "пароль"));
+
+        // Сегменты, не привязанные к этому заголовку, отвергаются
+        File unbound = writeSegmented("unbound.bin.enc", header, data, fileKey, nonce, new byte[0]);
+        assertThrows(CryptoException.class, () -> processor.decryptFile(unbound, "AES", "пароль"));
+    }
+
+    @Test
+    void decryptsLegacyTextFile() throws Exception {
+        // До контейнера файл хранился как Base64 содержимого, зашифрованный AES-CBC
+        // и дважды закодированный в Base64; IV может начинаться с байта 0xAE
+        byte[] data = randomBytes(3000);
+        byte[] iv = randomBytes(16);
+        iv[0] = (byte) 0xAE;
+        iv[1] = (byte) AesCipher.Mode.CTR.getId();
+
+        Cipher cipher = Cipher.getInstance(AesCipher.Mode.CBC.getTransformation());
+        cipher.init(Cipher.ENCRYPT_MODE, aesKey(AES_KEY), new IvParameterSpec(iv));
+        byte[] encrypted = concat(iv, cipher.doFinal(
+                Base64.getEncoder().encodeToString(data).getBytes(StandardCharsets.UTF_8)));
+        String text = Base64.getEncoder().encodeToString(
+                Base64.getEncoder().encodeToString(encrypted).getBytes(StandardCharsets.US_ASCII));
+
+        File file = directory.resolve("legacy.bin.enc").toFile();
+        Files.writeString(file.toPath(), text);
+
+        assertNull(processor.readHeader(file));
+        assertArrayEquals(data, decrypt(file, "AES", AES_KEY));
+    }
+
+    private File write(String name, byte[] data) throws IOException {
+        return Files.write(directory.resolve(name), data).toFile();
+    }
+
+    /**
+     * Дешифрует файл, предварительно удалив одноименный исходный файл
+     */
+    private byte[] decrypt(File encrypted, String algorithm, String key) throws Exception {
+        Files.deleteIfExists(processor.restoreOriginalFileName(encrypted).toPath());
+        File decrypted = processor.decryptFile(encrypted, algorithm, key);
+        return Files.readAllBytes(decrypted.toPath());
+    }
+
+    private File writeSegmented(String name, byte[] header, byte[] data, SecretKey key, byte[] nonce,
+                                byte[] associatedData) throws Exception {
+        Path plain = Files.write(directory.resolve("plain"), data);
+        Path target = directory.resolve(name);
+
+        try (SegmentedFileCipher cipher = new SegmentedFileCipher(2);
+             FileChannel input = FileChannel.open(plain, StandardOpenOption.READ);
+             FileChannel output = FileChannel.open(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                     StandardOpenOption.WRITE)) {
+            output.write(ByteBuffer.wrap(header), 0);
+            cipher.encrypt(input, output, header.length, key, nonce, CHUNK_SIZE, associatedData, length -> { });
+        }
+        return target.toFile();
+    }
+
+    private static File journal(File file) {
+        return new File(file.getParentFile(), file.getName() + ".journal");
+    }
+
+    private byte[] payload(File file) throws Exception {
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        return Arrays.copyOfRange(bytes, processor.readHeader(file).getLength(), bytes.length);
+    }
+
+    private static SecretKey aesKey(String key) {
+        return new SecretKeySpec(key.getBytes(StandardCharsets.US_ASCII), "AES");
+    }
+
+    private static byte[] concat(byte[] first, byte[] second) {
+        byte[] result = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+}
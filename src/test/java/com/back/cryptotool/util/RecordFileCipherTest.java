@@ -0,0 +1,134 @@
+package com.back.cryptotool.util;
+
+import com.back.cryptotool.crypto.CryptoException;
+import com.back.cryptotool.crypto.CryptoManager;
+import com.back.cryptotool.crypto.PreparedKey;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RecordFileCipherTest {
+
+    private static final String AES_KEY = "0123456789abcdef";
+
+    private CryptoManager manager;
+    private RecordFileCipher cipher;
+
+    @BeforeEach
+    void setUp() {
+        manager = new CryptoManager();
+        cipher = new RecordFileCipher(manager, 4);
+    }
+
+    @AfterEach
+    void tearDown() {
+        cipher.close();
+        manager.close();
+    }
+
+    @Test
+    void roundTripsSelectedCsvColumns() throws Exception {
+        String csv = "\uFEFFid;name;email\r\n"
+                + "1;\"Smith; John\";john@example.com\r\n"
+                + "2;\"multi\nline\";\"a\"\"b@example.com\"\r\n"
+                + "3;;c@example.com";
+        PreparedKey key = manager.prepare("AES", AES_KEY);
+
+        String encrypted = encrypt(csv, RecordFileCipher.Format.CSV, List.of("email"), key);
+        assertTrue(encrypted.startsWith("\uFEFFid;name;email\r\n1;\"Smith; John\";"));
+        assertTrue(encrypted.contains("\"multi\nline\""));
+        assertFalse(encrypted.contains("example.com"));
+
+        assertEquals(csv, decrypt(encrypted, RecordFileCipher.Format.CSV, List.of("email"), key));
+    }
+
+    @Test
+    void roundTripsJsonLinesFields() throws Exception {
+        String jsonl = "{\"id\": 1, \"name\": \"Alice\", \"nested\": {\"name\": \"keep\"}}\n"
+                + "{\"id\": 2, \"name\": \"Bob \\\"B\\\"\"}\r\n";
+        PreparedKey key = manager.prepare("AES", AES_KEY);
+
+        String encrypted = encrypt(jsonl, RecordFileCipher.Format.JSON_LINES, List.of("name"), key);
+        assertTrue(encrypted.contains("\"nested\": {\"name\": \"keep\"}"));
+        assertFalse(encrypted.contains("Alice"));
+
+        assertEquals(jsonl, decrypt(encrypted, RecordFileCipher.Format.JSON_LINES, List.of("name"), key));
+    }
+
+    @Test
+    void keepsRecordOrderAcrossBatches() throws Exception {
+        StringBuilder csv = new StringBuilder("n,value\n");
+        StringBuilder expected = new StringBuilder("n,value\n");
+        for (int i = 0; i < 20_000; i++) {
+            csv.append(i).append(",abc").append(i).append('\n');
+            expected.append(i).append(",def").append(i).append('\n');
+        }
+
+        // Шифр Цезаря детерминирован, поэтому результат можно сравнить целиком
+        PreparedKey key = manager.prepare("CAESAR", "3");
+        String encrypted = encrypt(csv.toString(), RecordFileCipher.Format.CSV, List.of("value"), key);
+        assertEquals(expected.toString(), encrypted);
+    }
+
+    @Test
+    void readsLongMultilineField() throws Exception {
+        String field = "line\n".repeat(50_000);
+        String csv = "name,note\nAlice,\"" + field + "\"\n";
+        PreparedKey key = manager.prepare("AES", AES_KEY);
+
+        String encrypted = encrypt(csv, RecordFileCipher.Format.CSV, List.of("note"), key);
+        assertNotEquals(csv, encrypted);
+        assertEquals(csv, decrypt(encrypted, RecordFileCipher.Format.CSV, List.of("note"), key));
+    }
+
+    @Test
+    void reportsPhysicalLineOfDamagedRecord() throws Exception {
+        PreparedKey key = manager.prepare("AES", AES_KEY);
+        String encrypted = encrypt("name,note\n\"Alice\nSmith\",first\r\nBob,second\n",
+                RecordFileCipher.Format.CSV, List.of("note"), key);
+
+        // Запись Alice занимает строки 2-3, поэтому Bob - на строке 4
+        String damaged = encrypted.substring(0, encrypted.lastIndexOf("Bob,")) + "Bob,damaged\n";
+        CryptoException e = assertThrows(CryptoException.class,
+                () -> decrypt(damaged, RecordFileCipher.Format.CSV, List.of("note"), key));
+        assertTrue(e.getMessage().startsWith("Ошибка в строке 4:"), e.getMessage());
+    }
+
+    @Test
+    void rejectsUnknownColumn() throws Exception {
+        PreparedKey key = manager.prepare("CAESAR", "3");
+        assertThrows(CryptoException.class,
+                () -> encrypt("a,b\n1,2\n", RecordFileCipher.Format.CSV, List.of("c"), key));
+    }
+
+    @Test
+    void detectsFormatByExtension() throws Exception {
+        assertEquals(RecordFileCipher.Format.CSV, RecordFileCipher.Format.fromFileName("DATA.CSV"));
+        assertEquals(RecordFileCipher.Format.JSON_LINES, RecordFileCipher.Format.fromFileName("log.ndjson"));
+        assertThrows(CryptoException.class, () -> RecordFileCipher.Format.fromFileName("data.txt"));
+    }
+
+    private String encrypt(String text, RecordFileCipher.Format format, List<String> fields, PreparedKey key)
+            throws Exception {
+        StringWriter output = new StringWriter();
+        cipher.encrypt(new StringReader(text), output, format, fields, key);
+        return output.toString();
+    }
+
+    private String decrypt(String text, RecordFileCipher.Format format, List<String> fields, PreparedKey key)
+            throws Exception {
+        StringWriter output = new StringWriter();
+        cipher.decrypt(new StringReader(text), output, format, fields, key);
+        return output.toString();
+    }
+}
@@ -0,0 +1,260 @@
+package com.back.cryptotool.util;
+
+import com.back.cryptotool.crypto.ChaCha20Cipher;
+import com.back.cryptotool.crypto.CryptoException;
+import com.back.cryptotool.crypto.Hkdf;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SegmentedFileCipherTest {
+
+    private static final int SEGMENT_SIZE = 1000;
+    private static final int ENCRYPTED_SEGMENT_SIZE = SEGMENT_SIZE + SegmentedFileCipher.TAG_LENGTH;
+    private static final int OFFSET = 7; // место под заголовок контейнера
+    private static final byte[] HEADER = {'C', 'T', 'E', 'N', 1, 3, 1};
+
+    // Ключи и nonce у каждого шифрования свои, данные воспроизводимы
+    private static final Random KEYS = new Random();
+
+    private static SegmentedFileCipher cipher;
+
+    @TempDir
+    Path directory;
+
+    // Сколько байт входных данных обработано по сообщениям о ходе обработки
+    private final AtomicLong processed = new AtomicLong();
+
+    @BeforeAll
+    static void createCipher() {
+        cipher = new SegmentedFileCipher(4);
+    }
+
+    @AfterAll
+    static void closeCipher() {
+        cipher.close();
+    }
+
+    /**
+     * Способ ввода-вывода: шифрование и дешифрование одним из трех вариантов методов
+     */
+    private enum Strategy {
+        HEAP, DIRECT, MAPPED;
+
+        void encrypt(FileChannel input, FileChannel output, SecretKey key, byte[] nonce, byte[] associatedData,
+                     LongConsumer progress) throws CryptoException, IOException {
+            switch (this) {
+                case HEAP -> cipher.encrypt(input, output, OFFSET, key, nonce, SEGMENT_SIZE, associatedData, progress);
+                case DIRECT -> cipher.encryptDirect(input, output, OFFSET, key, nonce, SEGMENT_SIZE, associatedData, progress);
+                case MAPPED -> cipher.encryptMapped(input, output, OFFSET, key, nonce, SEGMENT_SIZE, associatedData, progress);
+            }
+        }
+
+        void decrypt(FileChannel input, FileChannel output, SecretKey key, byte[] nonce, byte[] associatedData,
+                     LongConsumer progress) throws CryptoException, IOException {
+            switch (this) {
+                case HEAP -> cipher.decrypt(input, OFFSET, output, key, nonce, SEGMENT_SIZE, associatedData, progress);
+                case DIRECT -> cipher.decryptDirect(input, OFFSET, output, key, nonce, SEGMENT_SIZE, associatedData, progress);
+                case MAPPED -> cipher.decryptMapped(input, OFFSET, output, key, nonce, SEGMENT_SIZE, associatedData, progress);
+            }
+        }
+    }
+
+    static Stream<Arguments> configurations() {
+        List<Arguments> arguments = new ArrayList<>();
+        for (Strategy strategy : Strategy.values()) {
+            for (String algorithm : new String[]{"AES", ChaCha20Cipher.ALGORITHM}) {
+                arguments.add(Arguments.of(strategy, algorithm));
+            }
+        }
+        return arguments.stream();
+    }
+
+    @ParameterizedTest
+    @MethodSource("configurations")
+    void roundTrips(Strategy strategy, String algorithm) throws Exception {
+        SecretKey key = key(algorithm);
+
+        for (int length : new int[]{0, 1, SEGMENT_SIZE - 1, SEGMENT_SIZE, SEGMENT_SIZE + 1, 10 * SEGMENT_SIZE + 500}) {
+            // GCM не допускает повторного шифрования с тем же ключом и nonce
+            byte[] nonce = nonce();
+            byte[] data = randomBytes(length);
+            processed.set(0);
+            byte[] encrypted = encrypt(strategy, data, key, nonce, HEADER);
+            assertEquals(OFFSET + SegmentedFileCipher.encryptedSize(length, SEGMENT_SIZE), encrypted.length);
+            assertEquals(length, processed.get());
+
+            // Шифртекст не зависит от способа ввода-вывода
+            for (Strategy other : Strategy.values()) {
+                processed.set(0);
+                assertArrayEquals(data, decrypt(other, encrypted, key, nonce, HEADER),
+                        strategy + " -> " + other + ", длина " + length);
+                assertEquals(encrypted.length - OFFSET, processed.get());
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("configurations")
+    void detectsTruncationAtSegmentBoundary(Strategy strategy, String algorithm) throws Exception {
+        SecretKey key = key(algorithm);
+        byte[] nonce = nonce();
+        byte[] encrypted = encrypt(Strategy.HEAP, randomBytes(3 * SEGMENT_SIZE), key, nonce, HEADER);
+
+        byte[] truncated = Arrays.copyOf(encrypted, OFFSET + 2 * ENCRYPTED_SEGMENT_SIZE);
+        assertThrows(CryptoException.class, () -> decrypt(strategy, truncated, key, nonce, HEADER));
+
+        byte[] partial = Arrays.copyOf(encrypted, encrypted.length - 1);
+        assertThrows(CryptoException.class, () -> decrypt(strategy, partial, key, nonce, HEADER));
+
+        // Обрезка до заголовка отличается от пустого файла: у того есть последний сегмент
+        byte[] headerOnly = Arrays.copyOf(encrypted, OFFSET);
+        assertThrows(CryptoException.class, () -> decrypt(strategy, headerOnly, key, nonce, HEADER));
+    }
+
+    @ParameterizedTest
+    @MethodSource("configurations")
+    void detectsReorderedSegments(Strategy strategy, String algorithm) throws Exception {
+        SecretKey key = key(algorithm);
+        byte[] nonce = nonce();
+        byte[] encrypted = encrypt(Strategy.HEAP, randomBytes(3 * SEGMENT_SIZE), key, nonce, HEADER);
+
+        byte[] reordered = encrypted.clone();
+        System.arraycopy(encrypted, OFFSET, reordered, OFFSET + ENCRYPTED_SEGMENT_SIZE, ENCRYPTED_SEGMENT_SIZE);
+        System.arraycopy(encrypted, OFFSET + ENCRYPTED_SEGMENT_SIZE, reordered, OFFSET, ENCRYPTED_SEGMENT_SIZE);
+        assertThrows(CryptoException.class, () -> decrypt(strategy, reordered, key, nonce, HEADER));
+    }
+
+    @Test
+    void rejectsWrongNonce() throws Exception {
+        SecretKey key = key("AES");
+        byte[] encrypted = encrypt(Strategy.HEAP, randomBytes(SEGMENT_SIZE), key, nonce(), HEADER);
+        assertThrows(CryptoException.class, () -> decrypt(Strategy.HEAP, encrypted, key, new byte[12], HEADER));
+    }
+
+    @Test
+    void rejectsWrongAssociatedData() throws Exception {
+        SecretKey key = key("AES");
+        byte[] nonce = nonce();
+        byte[] encrypted = encrypt(Strategy.HEAP, randomBytes(SEGMENT_SIZE), key, nonce, HEADER);
+
+        byte[] tampered = HEADER.clone();
+        tampered[5] = 4;
+        assertThrows(CryptoException.class, () -> decrypt(Strategy.HEAP, encrypted, key, nonce, tampered));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"AES", ChaCha20Cipher.ALGORITHM})
+    void derivesSegmentKeysNonceAndAad(String algorithm) throws Exception {
+        // Сегмент i: ключ - HKDF от ключа файла и i, nonce файла XOR i в последних 8 байтах,
+        // AAD - переданные данные и признак последнего сегмента
+        SecretKey fileKey = key(algorithm);
+        byte[] nonce = nonce();
+        byte[] data = randomBytes(2 * SEGMENT_SIZE + 10);
+        byte[] encrypted = encrypt(Strategy.HEAP, data, fileKey, nonce, HEADER);
+
+        for (int index = 0; index < 3; index++) {
+            int start = OFFSET + index * ENCRYPTED_SEGMENT_SIZE;
+            int end = Math.min(start + ENCRYPTED_SEGMENT_SIZE, encrypted.length);
+
+            SecretKey chunkKey = new SecretKeySpec(Hkdf.chunkKey(fileKey.getEncoded(), index, 32), algorithm);
+            Cipher segment;
+            if (algorithm.equals("AES")) {
+                segment = Cipher.getInstance("AES/GCM/NoPadding");
+                segment.init(Cipher.DECRYPT_MODE, chunkKey, new GCMParameterSpec(128, segmentNonce(nonce, index)));
+            } else {
+                segment = Cipher.getInstance("ChaCha20-Poly1305");
+                segment.init(Cipher.DECRYPT_MODE, chunkKey, new IvParameterSpec(segmentNonce(nonce, index)));
+            }
+            segment.updateAAD(HEADER);
+            segment.updateAAD(new byte[]{(byte) (index == 2 ? 1 : 0)});
+
+            assertArrayEquals(Arrays.copyOfRange(data, index * SEGMENT_SIZE, Math.min((index + 1) * SEGMENT_SIZE,
+                    data.length)), segment.doFinal(encrypted, start, end - start), algorithm + ", сегмент " + index);
+        }
+    }
+
+    private byte[] encrypt(Strategy strategy, byte[] data, SecretKey key, byte[] nonce, byte[] associatedData)
+            throws Exception {
+        Path input = Files.write(directory.resolve("plain"), data);
+        Path output = directory.resolve("encrypted");
+        Files.deleteIfExists(output);
+
+        try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                     StandardOpenOption.WRITE)) {
+            out.write(ByteBuffer.allocate(OFFSET), 0);
+            strategy.encrypt(in, out, key, nonce, associatedData, processed::addAndGet);
+        }
+        return Files.readAllBytes(output);
+    }
+
+    private byte[] decrypt(Strategy strategy, byte[] encrypted, SecretKey key, byte[] nonce, byte[] associatedData)
+            throws Exception {
+        Path input = Files.write(directory.resolve("encrypted-input"), encrypted);
+        Path output = directory.resolve("decrypted");
+        Files.deleteIfExists(output);
+
+        try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                     StandardOpenOption.WRITE)) {
+            strategy.decrypt(in, out, key, nonce, associatedData, processed::addAndGet);
+        }
+        return Files.readAllBytes(output);
+    }
+
+    private static byte[] segmentNonce(byte[] fileNonce, long index) {
+        byte[] nonce = fileNonce.clone();
+        for (int i = 0; i < Long.BYTES; i++) {
+            nonce[nonce.length - 1 - i] ^= (byte) (index >>> (8 * i));
+        }
+        return nonce;
+    }
+
+    private static SecretKey key(String algorithm) {
+        byte[] key = new byte[32];
+        KEYS.nextBytes(key);
+        return new SecretKeySpec(key, algorithm);
+    }
+
+    private static byte[] nonce() {
+        byte[] nonce = new byte[SegmentedFileCipher.NONCE_LENGTH];
+        KEYS.nextBytes(nonce);
+        nonce[11] = (byte) 0xFE; // XOR с номером сегмента меняет младшие байты
+        return nonce;
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+}